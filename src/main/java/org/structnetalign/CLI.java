@@ -14,6 +14,9 @@
 package org.structnetalign;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -25,7 +28,15 @@ import org.apache.commons.cli.ParseException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.biojava.bio.structure.align.ce.AbstractUserArgumentProcessor;
+import org.structnetalign.util.IndexedFastaSequenceSource;
+import org.structnetalign.util.SequenceSourceFactory;
 import org.structnetalign.weight.AtomCacheFactory;
+import org.structnetalign.weight.CoordinateStore;
+import org.structnetalign.weight.PrecomputedAlignmentTable;
+import org.structnetalign.weight.ScopBucketPairGenerator;
+import org.structnetalign.weight.ShardWorker;
+import org.structnetalign.weight.ShardedWeightManager;
+import org.structnetalign.weight.SimpleWeightCreator;
 
 /**
  * A command-line interface for Struct-NA's main component.
@@ -40,6 +51,12 @@ public class CLI {
 
 	private static final String NEWLINE = "\n";
 
+	/**
+	 * Options that only the weighting in this process uses, so they can't be combined with {@code workers}.
+	 */
+	private static final String[] NOT_FOR_WORKERS = new String[] { "minhash_threshold", "ce_neighbours",
+			"precomputed_alignments", "weight_cache", "ca_store", "previous_homology", "previous_input" };
+
 	public static void main(String[] args) {
 
 		Options options = getOptions();
@@ -52,39 +69,102 @@ public class CLI {
 			return;
 		}
 		
-		runPipeline(cmd);
+		runPipeline(cmd, options);
 		
 	}
 
-	private static void runPipeline(CommandLine cmd) {
-		String pdbDir = cmd.getOptionValue("pdb_dir");
+	private static void runPipeline(CommandLine cmd, Options options) {
+		if (cmd.hasOption("workers")) {
+			for (String option : NOT_FOR_WORKERS) {
+				if (cmd.hasOption(option)) {
+					printUsage(option + " can't be used with workers", options);
+					return;
+				}
+			}
+		}
 		File input = new File(cmd.getOptionValue("input"));
 		File output = new File(cmd.getOptionValue("output"));
-		int nCores = cmd.hasOption("cores")? Integer.parseInt(cmd.getOptionValue("cores")) : PipelineManager.N_CORES;
-		int xi = cmd.hasOption("xi")? Integer.parseInt(cmd.getOptionValue("xi")) : PipelineManager.XI;
-		double tau = cmd.hasOption("tau")? Double.parseDouble(cmd.getOptionValue("tau")) : PipelineManager.TAU;
-		double zeta = cmd.hasOption("zeta")? Double.parseDouble(cmd.getOptionValue("zeta")) : PipelineManager.ZETA;
-		boolean report = cmd.hasOption("report");
-		boolean writeSteps = cmd.hasOption("write_steps");
-		boolean noCross = cmd.hasOption("no_cross");
-		boolean noMerge = cmd.hasOption("no_merge");
-		runPipeline(pdbDir, nCores, input, output, tau, zeta, xi, noCross, noMerge, writeSteps, report);
-	}
-	private static void runPipeline(String pdbDir, int nCores, File input, File output, double tau, double zeta, int xi, boolean noCross, boolean noMerge, boolean writeSteps, boolean report) {
+		File previousHomology = cmd.hasOption("previous_homology")? new File(cmd.getOptionValue("previous_homology")) : null;
+		File previousInput = cmd.hasOption("previous_input")? new File(cmd.getOptionValue("previous_input")) : null;
+		if ((previousHomology == null) != (previousInput == null)) {
+			printUsage("previous_homology and previous_input must be given together", options);
+			return;
+		}
+		String pdbDir = cmd.getOptionValue("pdb_dir");
 		if (pdbDir != null) {
 			System.setProperty(AbstractUserArgumentProcessor.PDB_DIR, pdbDir);
 			AtomCacheFactory.setCache(pdbDir);
 		}
+		File fasta = cmd.hasOption("fasta")? new File(cmd.getOptionValue("fasta")) : null;
+		if (fasta != null) {
+			try {
+				SequenceSourceFactory.setSource(new IndexedFastaSequenceSource(fasta));
+			} catch (IOException e) {
+				printError(e);
+				return;
+			}
+		}
+		int nCores = cmd.hasOption("cores")? Integer.parseInt(cmd.getOptionValue("cores")) : PipelineManager.N_CORES;
+		boolean scopBuckets = cmd.hasOption("scop_buckets");
 		PipelineManager man = new PipelineManager();
-		man.setXi(xi);
 		man.setNCores(nCores);
-		man.setTau(tau);
-		man.setZeta(zeta);
-		man.setReport(report);
-		man.setWriteSteps(writeSteps);
-		man.setNoCross(noCross);
-		man.setNoMerge(noMerge);
-		man.run(input, output);
+		man.setXi(cmd.hasOption("xi")? Integer.parseInt(cmd.getOptionValue("xi")) : PipelineManager.XI);
+		man.setTau(cmd.hasOption("tau")? Double.parseDouble(cmd.getOptionValue("tau")) : PipelineManager.TAU);
+		man.setZeta(cmd.hasOption("zeta")? Double.parseDouble(cmd.getOptionValue("zeta")) : PipelineManager.ZETA);
+		man.setReport(cmd.hasOption("report"));
+		man.setWriteSteps(cmd.hasOption("write_steps"));
+		man.setNoCross(cmd.hasOption("no_cross"));
+		man.setNoMerge(cmd.hasOption("no_merge"));
+		if (cmd.hasOption("workers")) {
+			int nWorkers = Integer.parseInt(cmd.getOptionValue("workers"));
+			List<String> jvmArgs = new ArrayList<>();
+			if (pdbDir != null) jvmArgs.add("-D" + AbstractUserArgumentProcessor.PDB_DIR + "=" + pdbDir);
+			if (fasta != null) jvmArgs.add("-D" + ShardWorker.FASTA + "=" + fasta.getAbsolutePath());
+			ShardedWeightManager weightManager = new ShardedWeightManager(new ShardedWeightManager.ProcessLauncher(
+					SimpleWeightCreator.class, Math.max(1, nCores / nWorkers), jvmArgs), nWorkers);
+			if (scopBuckets) weightManager.setPairGenerator(new ScopBucketPairGenerator());
+			man.setWeightManager(weightManager);
+		}
+		if (scopBuckets) man.setPairGenerator(new ScopBucketPairGenerator());
+		if (cmd.hasOption("weight_cache")) man.setWeightCacheFile(new File(cmd.getOptionValue("weight_cache")));
+		man.setPrevious(previousHomology, previousInput);
+		if (cmd.hasOption("graphml_homology")) man.setHomologyFile(new File(cmd.getOptionValue("graphml_homology")));
+		PrecomputedAlignmentTable precomputedAlignments = null;
+		CoordinateStore coordinateStore = null;
+		try {
+			if (cmd.hasOption("precomputed_alignments")) {
+				precomputedAlignments = new PrecomputedAlignmentTable(new File(cmd.getOptionValue("precomputed_alignments")));
+			}
+			if (cmd.hasOption("ca_store")) {
+				coordinateStore = new CoordinateStore(new File(cmd.getOptionValue("ca_store")));
+				AtomCacheFactory.setCoordinateStore(coordinateStore);
+			}
+			if (cmd.hasOption("minhash_threshold") || cmd.hasOption("ce_neighbours") || precomputedAlignments != null) {
+				SimpleWeightCreator phi = new SimpleWeightCreator();
+				if (cmd.hasOption("minhash_threshold")) phi.setMinHashThreshold(Double.parseDouble(cmd.getOptionValue("minhash_threshold")));
+				if (cmd.hasOption("ce_neighbours")) phi.setStructureNeighbours(Integer.parseInt(cmd.getOptionValue("ce_neighbours")));
+				phi.setPrecomputedAlignments(precomputedAlignments);
+				man.setPhi(phi);
+			}
+			man.run(input, output);
+		} catch (IOException e) {
+			printError(e);
+		} finally {
+			if (precomputedAlignments != null) {
+				try {
+					precomputedAlignments.close();
+				} catch (IOException e) {
+					printError(e);
+				}
+			}
+			if (coordinateStore != null) {
+				try {
+					coordinateStore.close();
+				} catch (IOException e) {
+					printError(e);
+				}
+			}
+		}
 	}
 
 	/**
@@ -144,9 +224,39 @@ public class CLI {
 		options.addOption(OptionBuilder.hasArg(false)
 				.withDescription("Output a GraphML file for each step.").isRequired(false)
 				.create("write_steps"));
+		options.addOption(OptionBuilder.hasArg(false)
+				.withDescription("Only weight pairs of interactors whose SCOP domains share a fold, plus every pair involving an interactor with no SCOP domain.").isRequired(false)
+				.create("scop_buckets"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("A file in which to keep weights across runs. Weights already in the file are not recalculated. The file is created if it doesn't exist.").isRequired(false)
+				.create("weight_cache"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("Only align the sequences of two interactors if the estimated Jaccard similarity of their 3-mers is at least this value. Sequence similarity is estimated quickly using MinHash. By default every pair is aligned.").isRequired(false)
+				.create("minhash_threshold"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("Only align the structures of two interactors with CE if either is among the other's this many nearest neighbours by a quickly computed structural descriptor (a histogram of CA-CA distances). By default every pair is aligned.").isRequired(false)
+				.create("ce_neighbours"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("A local FASTA file (such as a UniProt release) to read sequences from instead of downloading them from UniProt. An index is written next to it on first use.").isRequired(false)
+				.create("fasta"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("A table of precomputed alignment scores, written by " + PrecomputedAlignmentTable.class.getSimpleName() + " from tabular alignment results. Scores in the table are used before anything else is tried.").isRequired(false)
+				.create("precomputed_alignments"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("A store of C-alpha coordinates, written by " + CoordinateStore.class.getSimpleName() + " for the chains the input maps to. Structures in the store are read from it instead of from pdb_dir.").isRequired(false)
+				.create("ca_store"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("The weighted homology GraphML file (hom_weighted.graphml.xml from write_steps) of a previous run on an earlier version of the network. Only pairs involving interactors whose UniProt Ids are new are weighted; other weights are copied. Requires previous_input, and tau should be no lower than in the previous run.").isRequired(false)
+				.create("previous_homology"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("The input PSI-MI25 XML file of the previous run given by previous_homology.").isRequired(false)
+				.create("previous_input"));
 		options.addOption(OptionBuilder.hasArg(true)
 				.withDescription("Skip the weighting process and use the specified GraphML file to indicate homology instead.").isRequired(false)
 				.create("graphml_homology"));
+		options.addOption(OptionBuilder.hasArg(true)
+				.withDescription("Weight in this many separate worker processes, each with its own share of the cores. Pairs are sent to the workers in tiles over a local socket. The workers use the default weighting options apart from pdb_dir and fasta, so this can't be combined with minhash_threshold, ce_neighbours, precomputed_alignments, weight_cache, ca_store, previous_homology, or previous_input.").isRequired(false)
+				.create("workers"));
 		return options;
 	}
 
@@ -15,6 +15,7 @@
 package org.structnetalign;
 
 import java.io.File;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
@@ -41,8 +42,12 @@ import org.structnetalign.util.IdentifierMapping;
 import org.structnetalign.util.IdentifierMappingFactory;
 import org.structnetalign.util.InteractionUpdate;
 import org.structnetalign.util.NetworkUtils;
+import org.structnetalign.weight.CandidatePairGenerator;
+import org.structnetalign.weight.IncrementalWeightManager;
 import org.structnetalign.weight.SimpleWeightCreator;
 import org.structnetalign.weight.SmarterWeightManager;
+import org.structnetalign.weight.ThresholdedWeightManager;
+import org.structnetalign.weight.WeightCache;
 import org.structnetalign.weight.WeightCreator;
 import org.structnetalign.weight.WeightManager;
 
@@ -72,15 +77,20 @@ public class PipelineManager {
 	private static final Logger logger = LogManager.getLogger("org.structnetalign");
 
 	private CrossingManager crossingManager;
+	private File homologyFile;
 	private MergeManager mergeManager;
 
 	private int nCores;
 	private boolean noCross;
 	private boolean noMerge;
+	private CandidatePairGenerator pairGenerator;
 	private WeightCreator phi;
+	private File previousHomologyFile;
+	private File previousInputFile;
 	private boolean report = false;
 	private double tau = TAU;
 
+	private File weightCacheFile;
 	private WeightManager weightManager;
 	private boolean writeSteps = false;
 	private Integer xi; // depends on CrossingManager
@@ -143,9 +153,30 @@ public class PipelineManager {
 			UndirectedGraph<Integer, InteractionEdge> interaction = GraphInteractionAdaptor.toGraph(entrySet);
 			graph = new CleverGraph(interaction);
 
-			// assign weights
-			Map<Integer, String> uniProtIds = NetworkUtils.getUniProtIds(entrySet);
-			weightManager.assignWeights(graph, uniProtIds);
+			if (homologyFile != null) {
+				// use the given weights instead
+				loadHomology(graph);
+			} else {
+				// assign weights
+				Map<Integer, String> uniProtIds = NetworkUtils.getUniProtIds(entrySet);
+				WeightCache cache = openWeightCache();
+				try {
+					WeightManager manager = getIncrementalWeightManager();
+					if (manager instanceof ThresholdedWeightManager) {
+						// edges below tau are about to be removed anyway
+						((ThresholdedWeightManager) manager).setThreshold(tau);
+					}
+					manager.assignWeights(graph, uniProtIds);
+				} finally {
+					if (cache != null) {
+						try {
+							cache.close();
+						} catch (IOException e) {
+							logger.warn("Couldn't close weight cache " + weightCacheFile, e);
+						}
+					}
+				}
+			}
 		}
 		System.gc();
 
@@ -234,6 +265,15 @@ public class PipelineManager {
 		this.crossingManager = crossingManager;
 	}
 
+	/**
+	 * @param homologyFile
+	 *            A weighted homology graph, as GraphML, to use instead of running the weighting process; null (the
+	 *            default) to weight
+	 */
+	public void setHomologyFile(File homologyFile) {
+		this.homologyFile = homologyFile;
+	}
+
 	public void setMergeManager(MergeManager mergeManager) {
 		this.mergeManager = mergeManager;
 	}
@@ -250,6 +290,28 @@ public class PipelineManager {
 		this.noMerge = noMerge;
 	}
 
+	/**
+	 * @param pairGenerator
+	 *            Decides which pairs of vertices are weighted. Ignored if a WeightManager has been set.
+	 */
+	public void setPairGenerator(CandidatePairGenerator pairGenerator) {
+		this.pairGenerator = pairGenerator;
+	}
+
+	/**
+	 * Only weights pairs involving interactors that are new since a previous run, and copies the other weights from
+	 * that run; see {@link IncrementalWeightManager}. Only used with a {@link SmarterWeightManager}.
+	 * 
+	 * @param previousHomologyFile
+	 *            The weighted homology graph from the previous run, as GraphML; null to weight everything
+	 * @param previousInputFile
+	 *            The input MIF25 network of the previous run
+	 */
+	public void setPrevious(File previousHomologyFile, File previousInputFile) {
+		this.previousHomologyFile = previousHomologyFile;
+		this.previousInputFile = previousInputFile;
+	}
+
 	public void setPhi(WeightCreator phi) {
 		this.phi = phi;
 	}
@@ -260,12 +322,21 @@ public class PipelineManager {
 
 	/**
 	 * @param tau
-	 *            The minimum threshold to apply to homology edges before doing crossing.
+	 *            The minimum threshold to apply to homology edges before doing crossing. A
+	 *            {@link ThresholdedWeightManager} is given it too, so that it can skip weights that can't reach it.
 	 */
 	public void setTau(double tau) {
 		this.tau = tau;
 	}
 
+	/**
+	 * @param weightCacheFile
+	 *            A file to persist weights in across runs; only used with a {@link SmarterWeightManager}
+	 */
+	public void setWeightCacheFile(File weightCacheFile) {
+		this.weightCacheFile = weightCacheFile;
+	}
+
 	public void setWeightManager(WeightManager weightManager) {
 		this.weightManager = weightManager;
 	}
@@ -300,6 +371,7 @@ public class PipelineManager {
 			if (xi == null) xi = XI;
 			if (phi == null) phi = new SimpleWeightCreator();
 			SmarterWeightManager weightManager = new SmarterWeightManager(phi, nCores);
+			if (pairGenerator != null) weightManager.setPairGenerator(pairGenerator);
 			this.weightManager = weightManager;
 		}
 		if (crossingManager == null) {
@@ -310,6 +382,71 @@ public class PipelineManager {
 		}
 	}
 
+	/**
+	 * Adds the edges of the homology graph in {@link #homologyFile} to {@code graph}.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If the homology graph has a vertex that isn't in the input network
+	 */
+	void loadHomology(CleverGraph graph) {
+		UndirectedGraph<Integer, HomologyEdge> homology = GraphMLAdaptor.readHomologyGraph(homologyFile);
+		List<Integer> unknown = new ArrayList<>();
+		for (int v : homology.getVertices()) {
+			if (!graph.containsVertex(v)) unknown.add(v);
+		}
+		if (!unknown.isEmpty()) {
+			throw new IllegalArgumentException("The homology graph " + homologyFile + " has " + unknown.size()
+					+ " vertices that aren't in the input network, such as "
+					+ unknown.subList(0, Math.min(unknown.size(), 10)) + "; is it from a different network?");
+		}
+		for (HomologyEdge edge : homology.getEdges()) {
+			graph.addHomologies(edge, homology.getEndpoints(edge));
+		}
+		logger.info("Loaded " + graph.getHomologyCount() + " homology edges from " + homologyFile
+				+ " instead of weighting");
+		if (ReportGenerator.getInstance() != null) {
+			ReportGenerator.getInstance().putInWeighted("manager", "loaded from " + homologyFile.getName());
+		}
+	}
+
+	/**
+	 * @return An {@link IncrementalWeightManager} around the WeightManager if there is a previous run, or else the
+	 *         WeightManager itself
+	 */
+	private WeightManager getIncrementalWeightManager() {
+		if (previousHomologyFile == null) return weightManager;
+		if (!(weightManager instanceof SmarterWeightManager)) {
+			logger.warn("Ignoring the previous run because " + weightManager.getClass().getSimpleName()
+					+ " can't weight incrementally");
+			return weightManager;
+		}
+		UndirectedGraph<Integer, HomologyEdge> previousHomology = GraphMLAdaptor.readHomologyGraph(previousHomologyFile);
+		Map<Integer, String> previousUniProtIds = NetworkUtils.getUniProtIds(NetworkUtils.readNetwork(previousInputFile));
+		return new IncrementalWeightManager((SmarterWeightManager) weightManager, previousHomology, previousUniProtIds);
+	}
+
+	/**
+	 * Opens the weight cache, if there is one, and hands it to the WeightManager.
+	 * 
+	 * @return The cache, which the caller must close, or null
+	 */
+	private WeightCache openWeightCache() {
+		if (weightCacheFile == null) return null;
+		if (!(weightManager instanceof SmarterWeightManager)) {
+			logger.warn("Ignoring the weight cache because " + weightManager.getClass().getSimpleName()
+					+ " doesn't support one");
+			return null;
+		}
+		WeightCache cache;
+		try {
+			cache = new WeightCache(weightCacheFile);
+		} catch (IOException e) {
+			throw new RuntimeException("Couldn't open weight cache " + weightCacheFile, e);
+		}
+		((SmarterWeightManager) weightManager).setCache(cache);
+		return cache;
+	}
+
 	private void putMerges(List<MergeUpdate> merges, EntrySet entrySet) {
 		Map<Integer, String> uniProtIds = NetworkUtils.getUniProtIds(entrySet);
 		final IdentifierMapping mapping = IdentifierMappingFactory.getMapping();
@@ -35,6 +35,8 @@ public class BasicScop {
 
 	private static final Logger logger = LogManager.getLogger("org.structnetalign");
 
+	private static String scopVersion;
+
 	static {
 		Properties props = new Properties();
 		ClassLoader loader = Thread.currentThread().getContextClassLoader();
@@ -44,7 +46,7 @@ public class BasicScop {
 		} catch (IOException e) {
 			throw new RuntimeException("Couldn't open databases property file", e);
 		}
-		String scopVersion = props.getProperty("scop_version");
+		scopVersion = props.getProperty("scop_version");
 		logger.info("Setting SCOP to " + scopVersion);
 		ScopFactory.setScopDatabase(scopVersion);
 	}
@@ -53,4 +55,11 @@ public class BasicScop {
 		return ScopFactory.getSCOP();
 	}
 
+	/**
+	 * @return The SCOP version set from {@code databases.properties}
+	 */
+	public static String getScopVersion() {
+		return scopVersion;
+	}
+
 }
@@ -0,0 +1,35 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.util;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link SequenceSource} that can get many sequences more cheaply together than one at a time, for example with one
+ * request to a remote service.
+ * @author dmyersturnbull
+ */
+public interface BatchSequenceSource extends SequenceSource {
+
+	/**
+	 * @return A map of each Id that the source has to its sequence; Ids it doesn't have are left out
+	 * @throws IOException
+	 *             If the source couldn't be read
+	 */
+	Map<String, String> getSequences(Collection<String> uniProtIds) throws IOException;
+
+}
@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A small HTTP client shared by everything that downloads, so that connections to one host are reused instead of
+ * opened per request. It relies on the JDK's keep-alive cache, which only reuses a connection whose response was read
+ * to the end and closed; {@link #get(String, int)} always does that, even for error responses. It also limits the number
+ * of concurrent requests to each host to {@code maxConnections}, and asks for gzip.
+ * <p>
+ * The JDK keeps at most {@code http.maxConnections} idle connections per host. Unless that system property is already
+ * set, loading this class sets it to {@link #DEFAULT_MAX_CONNECTIONS}; this only has an effect if it happens before the
+ * first HTTP connection of the JVM.
+ * 
+ * @author dmyersturnbull
+ * @see HttpClientFactory
+ */
+public class HttpClient {
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 32;
+
+	public static final int DEFAULT_TIMEOUT = 10 * 1000;
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	static {
+		if (System.getProperty("http.maxConnections") == null) {
+			System.setProperty("http.maxConnections", String.valueOf(DEFAULT_MAX_CONNECTIONS));
+		}
+	}
+
+	private final ConcurrentMap<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+	private final int maxConnections;
+
+	private final int timeout;
+
+	public HttpClient() {
+		this(DEFAULT_MAX_CONNECTIONS, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * @param maxConnections
+	 *            The maximum number of concurrent requests to one host
+	 * @param timeout
+	 *            The default connect and read timeout, in milliseconds
+	 */
+	public HttpClient(int maxConnections, int timeout) {
+		this.maxConnections = maxConnections;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @see #get(String, int)
+	 */
+	public String get(String url) throws IOException {
+		return get(url, timeout);
+	}
+
+	/**
+	 * Downloads {@code url} as UTF-8 text, waiting if {@code maxConnections} requests to its host are already running.
+	 * 
+	 * @throws IOException
+	 *             If the request failed, including with a status other than 2xx
+	 */
+	public String get(String url, int timeout) throws IOException {
+		URL u = new URL(url);
+		Semaphore permits = permitsOf(u);
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for a connection to " + u.getHost(), e);
+		}
+		try {
+			URLConnection conn = u.openConnection();
+			conn.setConnectTimeout(timeout);
+			conn.setReadTimeout(timeout);
+			conn.setRequestProperty("Accept-Encoding", "gzip");
+			logger.trace("Requesting " + url);
+			if (conn instanceof HttpURLConnection) {
+				HttpURLConnection http = (HttpURLConnection) conn;
+				int status = http.getResponseCode();
+				if (status < 200 || status >= 300) {
+					InputStream error = http.getErrorStream();
+					if (error != null) {
+						try (InputStream is = error) {
+							readFully(is); // so that the connection can be reused
+						}
+					}
+					throw new IOException("Got HTTP status " + status + " for " + url);
+				}
+			}
+			try (InputStream is = conn.getInputStream()) {
+				byte[] bytes = readFully("gzip".equalsIgnoreCase(conn.getContentEncoding()) ? new GZIPInputStream(is) : is);
+				return new String(bytes, StandardCharsets.UTF_8);
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public int getTimeout() {
+		return timeout;
+	}
+
+	private Semaphore permitsOf(URL url) {
+		String host = url.getHost() + ":" + url.getPort();
+		Semaphore permits = hosts.get(host);
+		if (permits == null) {
+			Semaphore created = new Semaphore(maxConnections);
+			permits = hosts.putIfAbsent(host, created);
+			if (permits == null) permits = created;
+		}
+		return permits;
+	}
+
+	private static byte[] readFully(InputStream is) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = is.read(buffer)) != -1) {
+			baos.write(buffer, 0, n);
+		}
+		return baos.toByteArray();
+	}
+
+}
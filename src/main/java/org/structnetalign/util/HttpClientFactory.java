@@ -0,0 +1,33 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.util;
+
+/**
+ * A simple factory for the shared {@link HttpClient}.
+ * @author dmyersturnbull
+ */
+public class HttpClientFactory {
+
+	private static HttpClient client = new HttpClient();
+
+	public static HttpClient getClient() {
+		return client;
+	}
+
+	public static void setClient(HttpClient client) {
+		HttpClientFactory.client = client;
+	}
+
+}
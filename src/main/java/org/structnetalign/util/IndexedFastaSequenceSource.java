@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A {@link SequenceSource} that reads sequences from a local FASTA file, such as a UniProt release. The file is
+ * memory-mapped, and an index of the byte offset and length of each sequence is kept in a file next to it (with the
+ * extension {@link #INDEX_EXTENSION}). The index is built on first use, and rebuilt whenever the FASTA file is newer
+ * than it.
+ * <p>
+ * UniProt-style headers ({@code >sp|P69905|HBA_HUMAN ...}) are indexed by accession; other headers are indexed by
+ * their first word. Instances are thread-safe.
+ * @author dmyersturnbull
+ */
+public class IndexedFastaSequenceSource implements SequenceSource, Closeable {
+
+	public static final String INDEX_EXTENSION = ".idx";
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	/**
+	 * A MappedByteBuffer can't be larger than {@link Integer#MAX_VALUE}, so larger files are mapped in segments.
+	 */
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	private final RandomAccessFile file;
+
+	private final Map<String, long[]> index;
+
+	private final MappedByteBuffer[] segments;
+
+	/**
+	 * Scans {@code fasta} once.
+	 * 
+	 * @return A map from each Id to the byte offset and byte length of its sequence (including line breaks)
+	 */
+	public static Map<String, long[]> buildIndex(File fasta) throws IOException {
+		Map<String, long[]> index = new HashMap<>();
+		try (InputStream is = new BufferedInputStream(new FileInputStream(fasta))) {
+			long position = 0;
+			String id = null;
+			long start = 0;
+			boolean lineStart = true;
+			StringBuilder header = null;
+			int c;
+			while ((c = is.read()) != -1) {
+				position++;
+				if (header != null) {
+					if (c == '\n') {
+						if (id != null) index.put(id, new long[] { start, position - header.length() - 2 - start });
+						id = parseId(header.toString());
+						start = position;
+						header = null;
+					} else {
+						header.append((char) c);
+					}
+				} else if (lineStart && c == '>') {
+					header = new StringBuilder();
+				}
+				lineStart = c == '\n';
+			}
+			if (id != null) index.put(id, new long[] { start, position - start });
+		}
+		return index;
+	}
+
+	/**
+	 * @return The accession of a UniProt-style header, or else its first word
+	 */
+	static String parseId(String header) {
+		header = header.trim();
+		int space = header.indexOf(' ');
+		String word = space < 0 ? header : header.substring(0, space);
+		String[] parts = word.split("\\|");
+		if (parts.length >= 2 && (parts[0].equals("sp") || parts[0].equals("tr"))) return parts[1];
+		return word;
+	}
+
+	private static Map<String, long[]> readIndex(File indexFile) throws IOException {
+		Map<String, long[]> index = new HashMap<>();
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile),
+				StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] parts = line.split("\t");
+				if (parts.length != 3) throw new IOException("Malformed line in FASTA index " + indexFile + ": " + line);
+				index.put(parts[0], new long[] { Long.parseLong(parts[1]), Long.parseLong(parts[2]) });
+			}
+		}
+		return index;
+	}
+
+	private static void writeIndex(Map<String, long[]> index, File indexFile) throws IOException {
+		try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile),
+				StandardCharsets.UTF_8))) {
+			for (Map.Entry<String, long[]> entry : index.entrySet()) {
+				bw.write(entry.getKey() + "\t" + entry.getValue()[0] + "\t" + entry.getValue()[1]);
+				bw.newLine();
+			}
+		}
+	}
+
+	public IndexedFastaSequenceSource(File fasta) throws IOException {
+		this(fasta, new File(fasta.getPath() + INDEX_EXTENSION));
+	}
+
+	public IndexedFastaSequenceSource(File fasta, File indexFile) throws IOException {
+		if (indexFile.exists() && indexFile.lastModified() >= fasta.lastModified()) {
+			index = readIndex(indexFile);
+		} else {
+			logger.info("Indexing FASTA file " + fasta);
+			index = buildIndex(fasta);
+			writeIndex(index, indexFile);
+			logger.info("Indexed " + index.size() + " sequences in " + fasta);
+		}
+		file = new RandomAccessFile(fasta, "r");
+		FileChannel channel = file.getChannel();
+		long size = channel.size();
+		segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+		for (int i = 0; i < segments.length; i++) {
+			long offset = i * SEGMENT_SIZE;
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, size - offset));
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	public boolean contains(String uniProtId) {
+		return index.containsKey(uniProtId);
+	}
+
+	@Override
+	public String getSequence(String uniProtId) {
+		long[] entry = index.get(uniProtId);
+		if (entry == null) return null;
+		StringBuilder sb = new StringBuilder((int) entry[1]);
+		for (long position = entry[0]; position < entry[0] + entry[1]; position++) {
+			// absolute gets don't touch the buffer's position, so this is safe across threads
+			byte c = segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+			if (c > ' ') sb.append((char) c);
+		}
+		return sb.toString();
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+}
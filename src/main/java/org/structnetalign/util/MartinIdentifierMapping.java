@@ -17,10 +17,21 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.biojava.bio.structure.scop.ScopDatabase;
 import org.biojava.bio.structure.scop.ScopDomain;
 
@@ -28,13 +39,45 @@ import org.biojava.bio.structure.scop.ScopDomain;
  * Uses the chain-level mapping from Andrew C.R. Martin at <a href="http://www.bioinf.org.uk/pdbsws/">the Martin Lab</a>.
  * See <a href="http://bioinformatics.oxfordjournals.org/content/21/23/4297.long">the paper</a> for more.
  * Perhaps the simplest mapping, but multi-chain domains are a problem.
+ * <p>
+ * SCOP domains are indexed as soon as the mapping is created, in the background and in parallel over PDB entries, so
+ * {@link #uniProtToScop(String)} is a map lookup once the index is ready (and waits for it until then).
  * @author dmyersturnbull
  *
  */
 public class MartinIdentifierMapping implements IdentifierMapping {
 
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	/**
+	 * Daemon threads so that an unfinished index never keeps the JVM alive.
+	 */
+	private static final ThreadFactory DAEMON_FACTORY = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = Executors.defaultThreadFactory().newThread(r);
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
 	private Map<String,String> pdbIds;
 	private Map<String,Character> chainIds;
+	private Future<Map<String,String>> scopIds;
+
+	/**
+	 * @return The Id of the first domain in {@code domains} on {@code chain}, or null
+	 */
+	private static String findScopId(List<ScopDomain> domains, char chain) {
+		if (domains == null) return null;
+		for (ScopDomain domain : domains) {
+			List<String> ranges = domain.getRanges();
+			if (ranges.get(0).charAt(0) == chain) {
+				return domain.getScopId();
+			}
+		}
+		return null;
+	}
 
 	MartinIdentifierMapping() {
 		try {
@@ -60,6 +103,56 @@ public class MartinIdentifierMapping implements IdentifierMapping {
 		} catch (IOException e) {
 			throw new IllegalStateException("Couldn't initialize " + MartinIdentifierMapping.class.getSimpleName()); // fatal
 		}
+		FutureTask<Map<String,String>> task = new FutureTask<>(new Callable<Map<String,String>>() {
+			@Override
+			public Map<String, String> call() throws Exception {
+				return indexScop();
+			}
+		});
+		DAEMON_FACTORY.newThread(task).start();
+		scopIds = task;
+	}
+
+	/**
+	 * Looks up the domains of each PDB entry once, and the SCOP Id of every UniProt Id on it.
+	 */
+	private Map<String,String> indexScop() throws InterruptedException, ExecutionException {
+		final Map<String,List<String>> byPdb = new HashMap<>();
+		for (String uniProtId : chainIds.keySet()) {
+			String pdb = pdbIds.get(uniProtId);
+			List<String> list = byPdb.get(pdb);
+			if (list == null) {
+				list = new ArrayList<>(1);
+				byPdb.put(pdb, list);
+			}
+			list.add(uniProtId);
+		}
+		final ScopDatabase scop = BasicScop.getScop();
+		if (!byPdb.isEmpty()) scop.getDomainsForPDB(byPdb.keySet().iterator().next()); // install files before going parallel
+		final Map<String,String> index = new ConcurrentHashMap<>();
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), DAEMON_FACTORY);
+		try {
+			List<Future<?>> futures = new ArrayList<>(byPdb.size());
+			for (final Map.Entry<String,List<String>> entry : byPdb.entrySet()) {
+				futures.add(pool.submit(new Runnable() {
+					@Override
+					public void run() {
+						List<ScopDomain> domains = scop.getDomainsForPDB(entry.getKey());
+						for (String uniProtId : entry.getValue()) {
+							String scopId = findScopId(domains, chainIds.get(uniProtId));
+							if (scopId != null) index.put(uniProtId, scopId);
+						}
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		logger.info("Indexed SCOP domains for " + index.size() + " of " + chainIds.size() + " UniProt Ids");
+		return index;
 	}
 
 	@Override
@@ -70,18 +163,17 @@ public class MartinIdentifierMapping implements IdentifierMapping {
 
 	@Override
 	public String uniProtToScop(String uniProtId) {
-		final String pdb = pdbIds.get(uniProtId);
 		if (chainIds.get(uniProtId) == null) return null;
-		final char chain = chainIds.get(uniProtId);
-		ScopDatabase scop = BasicScop.getScop();
-		List<ScopDomain> domains = scop.getDomainsForPDB(pdb);
-		for (ScopDomain domain : domains) {
-			List<String> ranges = domain.getRanges();
-			if (ranges.get(0).charAt(0) == chain) {
-				return domain.getScopId();
-			}
+		try {
+			return scopIds.get().get(uniProtId);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for the SCOP index", e);
+		} catch (ExecutionException e) {
+			// fall back to looking it up directly
+			logger.debug("SCOP index failed; looking up " + uniProtId + " directly", e.getCause());
+			return findScopId(BasicScop.getScop().getDomainsForPDB(pdbIds.get(uniProtId)), chainIds.get(uniProtId));
 		}
-		return null;
 	}
 
 	public int size() {
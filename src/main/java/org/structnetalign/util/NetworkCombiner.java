@@ -16,8 +16,6 @@ package org.structnetalign.util;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -37,8 +35,6 @@ import org.biojava.bio.structure.Atom;
 import org.biojava.bio.structure.StructureException;
 import org.biojava.bio.structure.align.ce.AbstractUserArgumentProcessor;
 import org.biojava.bio.structure.align.util.AtomCache;
-import org.biojava3.core.sequence.ProteinSequence;
-import org.biojava3.core.sequence.io.FastaReaderHelper;
 import org.structnetalign.weight.AtomCacheFactory;
 
 import psidev.psi.mi.xml.model.Entry;
@@ -64,8 +60,6 @@ public class NetworkCombiner {
 
 	private static Random random = new Random();
 
-	private static final String URL = "http://www.uniprot.org/uniprot/%s.fasta";
-
 	private double probability = 0.05;
 
 	private boolean requireFasta = false;
@@ -104,6 +98,15 @@ public class NetworkCombiner {
 			AtomCacheFactory.setCache(pdbDir);
 		}
 
+		if (cmd.hasOption("fasta")) {
+			try {
+				SequenceSourceFactory.setSource(new IndexedFastaSequenceSource(new File(cmd.getOptionValue("fasta"))));
+			} catch (IOException e) {
+				printError(e);
+				return;
+			}
+		}
+
 		boolean removeLonely = cmd.hasOption("remove_lonely");
 		boolean requirePdb = cmd.hasOption("require_pdb");
 		boolean requireScop = cmd.hasOption("require_scop");
@@ -168,17 +171,16 @@ public class NetworkCombiner {
 				.withDescription(
 						"The directory containing cached PDB files. Defaults to the AtomCache default, which is probably in your system's temporary directory (e.g. /tmp). It is okay if this is an empty directory, but the directory must exist.")
 				.isRequired(false).create("pdb_dir"));
+		options.addOption(OptionBuilder
+				.hasArg(true)
+				.withDescription(
+						"A local FASTA file (such as a UniProt release) to read sequences from instead of downloading them from UniProt. An index is written next to it on first use.")
+				.isRequired(false).create("fasta"));
 		options.addOption(OptionBuilder.hasArg(true).withDescription("Required. The output PSI-MI25 XML file.")
 				.isRequired(true).create("output"));
 		return options;
 	}
 
-	private static ProteinSequence getSequenceForId(String uniProtId) throws Exception {
-		try (InputStream stream = new URL(String.format(URL, uniProtId)).openStream()) {
-			return FastaReaderHelper.readFastaProteinSequence(stream).get(uniProtId); // why does this throw Exception?
-		}
-	}
-
 	/**
 	 * @see #printError(Exception)
 	 */
@@ -321,8 +323,8 @@ public class NetworkCombiner {
 
 		if (requireFasta) {
 			try {
-				ProteinSequence seq = getSequenceForId(uniProtId);
-				if (seq == null || seq.getLength() == 0) {
+				String seq = SequenceSourceFactory.getSource().getSequence(uniProtId);
+				if (seq == null || seq.isEmpty()) {
 					throw new Exception("Protein sequence is empty");
 				}
 			} catch (Exception e) {
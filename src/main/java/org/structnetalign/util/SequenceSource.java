@@ -0,0 +1,33 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.util;
+
+import java.io.IOException;
+
+/**
+ * A source of protein sequences by UniProt Id.
+ * @author dmyersturnbull
+ * @see SequenceSourceFactory
+ */
+public interface SequenceSource {
+
+	/**
+	 * @return The amino acid sequence of {@code uniProtId} as one-letter codes, or null if the source doesn't have it
+	 * @throws IOException
+	 *             If the source couldn't be read
+	 */
+	String getSequence(String uniProtId) throws IOException;
+
+}
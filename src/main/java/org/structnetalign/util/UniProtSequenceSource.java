@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link SequenceSource} that downloads FASTA sequences from the {@code uniprot_url} in {@code databases.properties},
+ * through the shared {@link HttpClientFactory HTTP client}. Each sequence is downloaded at most once per instance.
+ * {@link #getSequences(Collection)} asks for up to {@link #BATCH_SIZE} sequences per request from the
+ * {@code uniprot_batch_url}.
+ * @author dmyersturnbull
+ */
+public class UniProtSequenceSource implements BatchSequenceSource {
+
+	public static final int BATCH_SIZE = 100;
+
+	private static String BATCH_URL;
+
+	private static String URL;
+
+	private final String batchUrl;
+
+	private final ConcurrentMap<String, String> sequences = new ConcurrentHashMap<>();
+
+	private final String url;
+
+	static {
+		Properties props = new Properties();
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		InputStream stream = loader.getResourceAsStream("databases.properties");
+		try {
+			props.load(stream);
+		} catch (IOException e) {
+			throw new RuntimeException("Couldn't open databases property file", e);
+		}
+		URL = props.getProperty("uniprot_url");
+		BATCH_URL = props.getProperty("uniprot_batch_url");
+	}
+
+	/**
+	 * @return A map of the Id of each record in {@code fasta} to its sequence
+	 * @see IndexedFastaSequenceSource#parseId(String)
+	 */
+	static Map<String, String> parseFasta(String fasta) {
+		Map<String, String> records = new HashMap<>();
+		String id = null;
+		StringBuilder sb = new StringBuilder();
+		for (String line : fasta.split("\r?\n")) {
+			if (line.startsWith(">")) {
+				if (id != null && sb.length() > 0) records.put(id, sb.toString());
+				id = IndexedFastaSequenceSource.parseId(line.substring(1));
+				sb.setLength(0);
+				continue;
+			}
+			sb.append(line.trim());
+		}
+		if (id != null && sb.length() > 0) records.put(id, sb.toString());
+		return records;
+	}
+
+	public UniProtSequenceSource() {
+		this(URL, BATCH_URL);
+	}
+
+	/**
+	 * @param url
+	 *            A format string that gives the URL of one sequence from its Id
+	 * @param batchUrl
+	 *            A format string that gives the URL of several sequences from their Ids separated by commas; null to
+	 *            download sequences one at a time
+	 */
+	public UniProtSequenceSource(String url, String batchUrl) {
+		this.url = url;
+		this.batchUrl = batchUrl;
+	}
+
+	@Override
+	public String getSequence(String uniProtId) throws IOException {
+		String sequence = sequences.get(uniProtId);
+		if (sequence != null) return sequence;
+		sequence = download(uniProtId);
+		if (sequence != null) sequences.putIfAbsent(uniProtId, sequence);
+		return sequence;
+	}
+
+	/**
+	 * Downloads every sequence not already downloaded, in batches.
+	 */
+	@Override
+	public Map<String, String> getSequences(Collection<String> uniProtIds) throws IOException {
+		Map<String, String> found = new HashMap<>();
+		Set<String> missing = new LinkedHashSet<>();
+		for (String uniProtId : uniProtIds) {
+			String sequence = sequences.get(uniProtId);
+			if (sequence != null) {
+				found.put(uniProtId, sequence);
+			} else {
+				missing.add(uniProtId);
+			}
+		}
+		if (batchUrl == null) {
+			for (String uniProtId : missing) {
+				String sequence = getSequence(uniProtId);
+				if (sequence != null) found.put(uniProtId, sequence);
+			}
+			return found;
+		}
+		List<String> batch = new ArrayList<>(BATCH_SIZE);
+		for (String uniProtId : missing) {
+			batch.add(uniProtId);
+			if (batch.size() == BATCH_SIZE) {
+				downloadBatch(batch, found);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) downloadBatch(batch, found);
+		return found;
+	}
+
+	private String download(String uniProtId) throws IOException {
+		Map<String, String> records = parseFasta(HttpClientFactory.getClient().get(String.format(url, uniProtId)));
+		String sequence = records.get(uniProtId);
+		if (sequence == null && !records.isEmpty()) sequence = records.values().iterator().next(); // only one record
+		return sequence;
+	}
+
+	private void downloadBatch(List<String> batch, Map<String, String> found) throws IOException {
+		StringBuilder ids = new StringBuilder();
+		for (String uniProtId : batch) {
+			if (ids.length() > 0) ids.append(',');
+			ids.append(uniProtId);
+		}
+		Map<String, String> records = parseFasta(HttpClientFactory.getClient().get(String.format(batchUrl, ids)));
+		for (String uniProtId : batch) {
+			String sequence = records.get(uniProtId);
+			if (sequence == null) continue;
+			sequences.putIfAbsent(uniProtId, sequence);
+			found.put(uniProtId, sequence);
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * A {@link CandidatePairGenerator} that generates every pair of distinct vertices. This is the exhaustive behavior of
+ * the original weighting process.
+ * 
+ * @author dmyersturnbull
+ */
+public class AllPairsGenerator implements CandidatePairGenerator {
+
+	private static class AllPairsIterator implements Iterator<Pair<Integer>> {
+
+		private final int[] vertices;
+		private int i = 0;
+		private int j = 1;
+
+		public AllPairsIterator(int[] vertices) {
+			this.vertices = vertices;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return i < vertices.length - 1;
+		}
+
+		@Override
+		public Pair<Integer> next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			Pair<Integer> pair = new Pair<Integer>(vertices[i], vertices[j]);
+			j++;
+			if (j == vertices.length) {
+				i++;
+				j = i + 1;
+			}
+			return pair;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	static int[] sorted(Collection<Integer> vertices) {
+		int[] array = new int[vertices.size()];
+		int i = 0;
+		for (int vertex : vertices) {
+			array[i++] = vertex;
+		}
+		Arrays.sort(array);
+		return array;
+	}
+
+	@Override
+	public Iterator<Pair<Integer>> generate(Collection<Integer> vertices, Map<Integer, String> uniProtIds) {
+		return new AllPairsIterator(sorted(vertices));
+	}
+
+}
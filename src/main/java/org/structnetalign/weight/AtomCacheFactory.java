@@ -13,22 +13,42 @@
  */
 package org.structnetalign.weight;
 
+import java.io.IOException;
+
+import org.biojava.bio.structure.Atom;
+import org.biojava.bio.structure.StructureException;
 import org.biojava.bio.structure.align.util.AtomCache;
 
 /**
- * A factory that maintains an AtomCache for getting <a href="http://pdb.org">Protein Data Bank</a> structures.
+ * A factory that maintains an AtomCache for getting <a href="http://pdb.org">Protein Data Bank</a> structures, and a
+ * {@link StructureCache} in front of it.
  * @author dmyersturnbull
  *
  */
 public class AtomCacheFactory {
 
 	private static AtomCache cache;
-	
+
+	private static CoordinateStore coordinateStore;
+
+	private static StructureCache structureCache = new StructureCache(StructureCache.DEFAULT_MAX_ATOMS);
+
 	public static AtomCache getCache() {
 		if (cache == null) setCache();
 		return cache;
 	}
 
+	/**
+	 * @return The store set with {@link #setCoordinateStore(CoordinateStore)}, or null
+	 */
+	public static CoordinateStore getCoordinateStore() {
+		return coordinateStore;
+	}
+
+	public static StructureCache getStructureCache() {
+		return structureCache;
+	}
+
 	public static void setCache() {
 		setCache(new AtomCache());
 	}
@@ -38,6 +58,26 @@ public class AtomCacheFactory {
 	
 	public static void setCache(AtomCache cache) {
 		AtomCacheFactory.cache = cache;
+		structureCache.clear(); // the new cache might have different files
+	}
+
+	/**
+	 * Reads chains from {@code store} where it has them, and from the {@link AtomCache} otherwise, by replacing the
+	 * {@link StructureCache} with one that does so. The caller still owns the store and must close it.
+	 */
+	public static void setCoordinateStore(final CoordinateStore store) {
+		coordinateStore = store;
+		structureCache = new StructureCache(new StructureCache.Loader() {
+			@Override
+			public Atom[] load(String pdbIdAndChain) throws IOException, StructureException {
+				Atom[] ca = store.getAtoms(pdbIdAndChain);
+				return ca != null ? ca : getCache().getAtoms(pdbIdAndChain);
+			}
+		}, CoordinateStore.DEFAULT_MAX_CACHED_ATOMS);
+	}
+
+	public static void setStructureCache(StructureCache structureCache) {
+		AtomCacheFactory.structureCache = structureCache;
 	}
 	
 }
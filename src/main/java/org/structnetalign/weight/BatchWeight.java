@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+/**
+ * A {@link Weight} that can also score one query vertex against a block of targets at once, so that work depending
+ * only on the query (fetching and encoding its sequence, loading its structure, resolving its lineage) is done once per
+ * block instead of once per pair. A {@link SmarterWeightManager} groups pairs into blocks for any weight that
+ * implements this.
+ * <p>
+ * A block is run by whichever instance was created for its first pair, so instances of one class from one
+ * {@link WeightCreator} must be interchangeable apart from their Ids.
+ * 
+ * @author dmyersturnbull
+ */
+public interface BatchWeight extends Weight {
+
+	/**
+	 * @param v
+	 *            The PSI-MI XML Id of the query vertex
+	 * @param targets
+	 *            The PSI-MI XML Ids of the target vertices
+	 * @param targetUniProtIds
+	 *            The UniProt Ids of the target vertices, in the same order
+	 * @return The weight of {@code v} against each target, in the same order, or {@link Double#NaN} for each target
+	 *         that couldn't be weighted
+	 * @throws WeightException
+	 *             If no target could be weighted because of the query
+	 */
+	double[] assignWeights(int v, String uniProtId, int[] targets, String[] targetUniProtIds) throws Exception;
+
+}
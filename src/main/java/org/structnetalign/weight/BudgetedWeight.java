@@ -0,0 +1,32 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+/**
+ * A {@link Weight} that should give up after a fixed time. A {@link SmarterWeightManager} cancels (and interrupts) a
+ * job that runs over its budget, and reports it to {@link WeightCreator#nextWeight} as a failure so that another
+ * weight can run instead. Implementations should check {@link Thread#isInterrupted()} between long steps; a job that
+ * doesn't stop keeps running on its own thread, and the manager starts another thread in its place.
+ * 
+ * @author dmyersturnbull
+ */
+public interface BudgetedWeight extends Weight {
+
+	/**
+	 * @return The maximum number of milliseconds one pair may take, or 0 for no limit
+	 */
+	long getTimeBudget();
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * Something that decides which pairs of vertices a {@link WeightManager} should attempt to weight. Pairs that are not
+ * generated are assumed to have no detectable homology.
+ * 
+ * @author dmyersturnbull
+ */
+public interface CandidatePairGenerator {
+
+	/**
+	 * Returns the candidate pairs lazily. Each unordered pair is returned at most once, with the smaller vertex first.
+	 * 
+	 * @param vertices
+	 *            The PSI-MI XML Ids of the vertices to pair
+	 * @param uniProtIds
+	 *            A map of each vertex to its UniProt Id
+	 */
+	Iterator<Pair<Integer>> generate(Collection<Integer> vertices, Map<Integer, String> uniProtIds);
+
+}
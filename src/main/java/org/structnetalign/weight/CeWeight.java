@@ -18,6 +18,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.biojava.bio.structure.Atom;
 import org.biojava.bio.structure.StructureException;
 import org.biojava.bio.structure.align.StructureAlignment;
@@ -26,16 +28,18 @@ import org.biojava.bio.structure.align.ce.CeParameters;
 import org.biojava.bio.structure.align.ce.ConfigStrucAligParams;
 import org.biojava.bio.structure.align.model.AFPChain;
 import org.biojava.bio.structure.align.util.AFPChainScorer;
-import org.biojava.bio.structure.align.util.AtomCache;
 import org.structnetalign.util.IdentifierMappingFactory;
+import org.structnetalign.util.NetworkUtils;
 
 /**
  * A {@link Weight} that uses the <a href="http://www.ncbi.nlm.nih.gov/pubmed/9796821">Combinatorial Extension</a>
- * structural alignment method of Shindyalov and Bourne.
+ * structural alignment method of Shindyalov and Bourne. Structures can be {@link #fetch() fetched} before the
+ * alignment, separately.
  * 
  * @author dmyersturnbull
  */
-public class CeWeight implements AlignmentWeight {
+public class CeWeight implements AlignmentWeight, BatchWeight, BudgetedWeight, FetchingWeight, FingerprintedWeight,
+		KeyedWeight {
 
 	/**
 	 * A factory that instantiates a new StructureAlignment for each new alignment. Useful for concurrency: use
@@ -66,14 +70,26 @@ public class CeWeight implements AlignmentWeight {
 		public abstract StructureAlignment getAlgorithm();
 	}
 
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
 	private static Double GAP_EXTEND;
 	private static Double GAP_OPEN;
 	private static Integer MAX_GAP_SIZE;
 
 	private static Double SEQUENCE_WEIGHT = 2.0;
 
+	private static long TIME_BUDGET;
+
+	private static boolean USE_PRIMITIVE_TM_SCORER;
+
 	private AlgorithmGiver algorithm;
 
+	private Atom[] atoms1;
+
+	private Atom[] atoms2;
+
+	private boolean isDefaultAlgorithm;
+
 	private String pdbIdAndChain1;
 
 	private String pdbIdAndChain2;
@@ -109,6 +125,11 @@ public class CeWeight implements AlignmentWeight {
 		if (maxGapSize != null) {
 			MAX_GAP_SIZE = Integer.parseInt(maxGapSize);
 		}
+		String timeBudget = props.getProperty("time_budget");
+		if (timeBudget != null) {
+			TIME_BUDGET = Long.parseLong(timeBudget);
+		}
+		USE_PRIMITIVE_TM_SCORER = "primitive".equals(props.getProperty("tm_scorer"));
 	}
 
 	/**
@@ -126,6 +147,7 @@ public class CeWeight implements AlignmentWeight {
 
 	public CeWeight() {
 		this(AlgorithmGiver.getDefault());
+		isDefaultAlgorithm = true;
 	}
 
 	public CeWeight(final AlgorithmGiver algorithm) {
@@ -138,25 +160,99 @@ public class CeWeight implements AlignmentWeight {
 		return call().getWeight();
 	}
 
+	/**
+	 * Maps and loads the query structure once for the whole block.
+	 */
 	@Override
-	public WeightResult call() throws Exception {
-		final AtomCache cache = AtomCacheFactory.getCache();
-		Atom[] ca1, ca2;
+	public double[] assignWeights(int v, String uniProtId, int[] targets, String[] targetUniProtIds) throws Exception {
+		v1 = v;
+		uniProtId1 = uniProtId;
+		pdbIdAndChain1 = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId);
+		if (pdbIdAndChain1 == null) throw new WeightException("Could not find PDB Id for " + uniProtId, v, targets[0],
+				uniProtId, targetUniProtIds[0], true, true);
+		final StructureCache cache = AtomCacheFactory.getStructureCache();
+		Atom[] ca1;
 		try {
 			ca1 = cache.getAtoms(pdbIdAndChain1);
+		} catch (IOException | StructureException e) {
+			throw new WeightException("Could not parse structure for PDB entry " + pdbIdAndChain1 + " for "
+					+ uniProtId, e, v, targets[0], uniProtId, targetUniProtIds[0], true, true);
+		}
+		double[] weights = new double[targets.length];
+		for (int i = 0; i < targets.length; i++) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedException("Cancelled aligning " + pdbIdAndChain1 + " against a block");
+			}
+			weights[i] = Double.NaN;
+			v2 = targets[i];
+			uniProtId2 = targetUniProtIds[i];
+			pdbIdAndChain2 = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId2);
+			if (pdbIdAndChain2 == null) continue;
+			try {
+				AFPChain afpChain = align(ca1, cache.getAtoms(pdbIdAndChain2));
+				if (afpChain != null && afpChain.getTMScore() != -1) weights[i] = afpChain.getTMScore();
+			} catch (IOException | StructureException | RuntimeException e) {
+				logger.debug("Could not align " + pdbIdAndChain1 + " against " + pdbIdAndChain2, e);
+			}
+		}
+		return weights;
+	}
+
+	@Override
+	public void fetch() throws WeightException {
+		final StructureCache cache = AtomCacheFactory.getStructureCache();
+		try {
+			atoms1 = cache.getAtoms(pdbIdAndChain1);
 		} catch (IOException | StructureException e) {
 			throw new WeightException("Could not parse structure for PDB entry " + pdbIdAndChain1 + " for "
 					+ uniProtId1, e, v1, v2, uniProtId1, uniProtId2, true, true);
 		}
 		try {
-			ca2 = cache.getAtoms(pdbIdAndChain2);
+			atoms2 = cache.getAtoms(pdbIdAndChain2);
 		} catch (IOException | StructureException e) {
 			throw new WeightException("Could not parse structure for PDB entry " + pdbIdAndChain2 + " for "
 					+ uniProtId2, e, v1, v2, uniProtId1, uniProtId2, true, true);
 		}
+	}
+
+	/**
+	 * Loads each structure into the {@link AtomCacheFactory#getStructureCache() structure cache}.
+	 */
+	@Override
+	public void fetchAll(String uniProtId, String[] targetUniProtIds) {
+		warm(uniProtId);
+		for (String id : targetUniProtIds) {
+			warm(id);
+		}
+	}
+
+	/**
+	 * @return A fingerprint of the CE parameters and TM-scorer, or null if a custom {@link AlgorithmGiver} is used
+	 */
+	@Override
+	public String getParameterFingerprint() {
+		if (!isDefaultAlgorithm) return null; // we can't know what it does
+		String fingerprint = NetworkUtils.hash(String.valueOf(SEQUENCE_WEIGHT), String.valueOf(GAP_OPEN),
+				String.valueOf(GAP_EXTEND), String.valueOf(MAX_GAP_SIZE));
+		if (USE_PRIMITIVE_TM_SCORER) fingerprint = NetworkUtils.hash(fingerprint, "primitive"); // not yet checked
+		return fingerprint;
+	}
+
+	/**
+	 * @return The two PDB chains, since the alignment depends only on them
+	 */
+	@Override
+	public String getResultKey() {
+		if (pdbIdAndChain1 == null || pdbIdAndChain2 == null) return null;
+		return pdbIdAndChain1 + "\t" + pdbIdAndChain2;
+	}
+
+	@Override
+	public WeightResult call() throws Exception {
+		if (atoms1 == null || atoms2 == null) fetch();
 		AFPChain afpChain;
 		try {
-			afpChain = align(ca1, ca2);
+			afpChain = align(atoms1, atoms2);
 		} catch (IOException | StructureException e) {
 			throw new WeightException("Could not align " + pdbIdAndChain1 + " against " + pdbIdAndChain2, e, v1, v2,
 					uniProtId1, uniProtId2, true, true);
@@ -166,6 +262,14 @@ public class CeWeight implements AlignmentWeight {
 		return new WeightResult(afpChain.getTMScore(), v1, v2, uniProtId1, uniProtId2, this.getClass());
 	}
 
+	/**
+	 * @return The {@code time_budget} from {@code ce_weights.properties}, in milliseconds
+	 */
+	@Override
+	public long getTimeBudget() {
+		return TIME_BUDGET;
+	}
+
 	@Override
 	public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
 
@@ -173,6 +277,8 @@ public class CeWeight implements AlignmentWeight {
 		this.v2 = v2;
 		this.uniProtId1 = uniProtId1;
 		this.uniProtId2 = uniProtId2;
+		atoms1 = null;
+		atoms2 = null;
 
 		pdbIdAndChain1 = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId1);
 		if (pdbIdAndChain1 == null) throw new WeightException("Could not find PDB Id for " + uniProtId1, v1, v2,
@@ -183,13 +289,24 @@ public class CeWeight implements AlignmentWeight {
 
 	}
 
+	private static void warm(String uniProtId) {
+		String pdbIdAndChain = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId);
+		if (pdbIdAndChain == null) return;
+		try {
+			AtomCacheFactory.getStructureCache().getAtoms(pdbIdAndChain);
+		} catch (IOException | StructureException | RuntimeException e) {
+			logger.debug("Could not fetch structure " + pdbIdAndChain + " for " + uniProtId, e);
+		}
+	}
+
 	private AFPChain align(Atom[] ca1, Atom[] ca2) throws StructureException, IOException {
 		if (!sanityCheckPreAlign(ca1, ca2)) throw new IllegalArgumentException("Can't align using same structure.");
 		AFPChain afpChain = algorithm.getAlgorithm().align(ca1, ca2);
 		if (afpChain == null) return null;
 		afpChain.setName1(pdbIdAndChain1);
 		afpChain.setName2(pdbIdAndChain2);
-		double realTmScore = AFPChainScorer.getTMScore(afpChain, ca1, ca2);
+		double realTmScore = USE_PRIMITIVE_TM_SCORER ? PrimitiveTmScorer.getTMScore(afpChain, ca1, ca2)
+				: AFPChainScorer.getTMScore(afpChain, ca1, ca2);
 		afpChain.setTMScore(realTmScore);
 		return afpChain;
 	}
@@ -0,0 +1,433 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.biojava.bio.structure.AminoAcidImpl;
+import org.biojava.bio.structure.Atom;
+import org.biojava.bio.structure.AtomImpl;
+import org.biojava.bio.structure.Chain;
+import org.biojava.bio.structure.ChainImpl;
+import org.biojava.bio.structure.Element;
+import org.biojava.bio.structure.Group;
+import org.biojava.bio.structure.ResidueNumber;
+import org.biojava.bio.structure.Structure;
+import org.biojava.bio.structure.StructureException;
+import org.biojava.bio.structure.StructureImpl;
+import org.biojava.bio.structure.StructureTools;
+import org.structnetalign.util.IdentifierMappingFactory;
+import org.structnetalign.util.NetworkUtils;
+
+/**
+ * A read-only store of the C-alpha coordinates and residue types of many PDB chains, written ahead of time by a
+ * {@link Builder} (see {@link #main(String[])}) and memory-mapped when opened. Reading a chain is a binary search and a
+ * copy out of the mapping, with no parsing, and the coordinates stay off the heap until they're read. Reads are
+ * thread-safe.
+ * <p>
+ * {@link #getCoordinates(String)} reads packed coordinates without making any objects, but CE and FATCAT only take
+ * {@link Atom Atoms}, so for them {@link #getAtoms(String)} still builds a structure, a chain, and an amino acid and an
+ * atom per residue on every load. An alignment therefore takes as much memory as one from an
+ * {@link org.biojava.bio.structure.align.util.AtomCache AtomCache}. The only memory saved is in the
+ * {@link StructureCache} in front of a store, which can keep a {@link #DEFAULT_MAX_CACHED_ATOMS smaller budget} because
+ * a miss costs a copy rather than a parse.
+ * <p>
+ * The file is a header of five ints (a magic number, the version, the number of chains, the total number of atoms, and
+ * the length in bytes of the Id block), the sorted chain Ids as given to {@link StructureCache#getAtoms(String)} (each
+ * an unsigned short length and its UTF-8 bytes), the index of the first atom of each chain as ints (plus the total, to
+ * end the last chain), the x, y, and z of every atom as floats, the PDB residue number of each atom as an int, the
+ * one-letter code of each atom's residue as a byte, and then each residue's insertion code as a byte (0 for none).
+ * 
+ * @author dmyersturnbull
+ * @see AtomCacheFactory#setCoordinateStore(CoordinateStore)
+ */
+public class CoordinateStore implements Closeable {
+
+	/**
+	 * Collects chains and writes them as a store. A chain added twice keeps its last coordinates.
+	 */
+	public static class Builder {
+
+		private final Map<String, float[]> coordinates = new TreeMap<>();
+
+		private final Map<String, byte[]> insertionCodes = new HashMap<>();
+
+		private final Map<String, int[]> residueNumbers = new HashMap<>();
+
+		private final Map<String, byte[]> residues = new HashMap<>();
+
+		/**
+		 * Adds the coordinates, residue types, and residue numbers of CA atoms.
+		 */
+		public void add(String pdbIdAndChain, Atom[] ca) {
+			float[] myCoordinates = new float[3 * ca.length];
+			byte[] myResidues = new byte[ca.length];
+			int[] myResidueNumbers = new int[ca.length];
+			byte[] myInsertionCodes = new byte[ca.length];
+			for (int i = 0; i < ca.length; i++) {
+				myCoordinates[3 * i] = (float) ca[i].getX();
+				myCoordinates[3 * i + 1] = (float) ca[i].getY();
+				myCoordinates[3 * i + 2] = (float) ca[i].getZ();
+				Group group = ca[i].getGroup();
+				Character code = group == null ? null : StructureTools.get1LetterCode(group.getPDBName());
+				myResidues[i] = (byte) (code == null ? UNKNOWN : code);
+				ResidueNumber number = group == null ? null : group.getResidueNumber();
+				if (number == null || number.getSeqNum() == null) throw new IllegalArgumentException("Atom " + i
+						+ " of " + pdbIdAndChain + " has no residue number");
+				myResidueNumbers[i] = number.getSeqNum();
+				if (number.getInsCode() != null) myInsertionCodes[i] = (byte) number.getInsCode().charValue();
+			}
+			add(pdbIdAndChain, myCoordinates, myResidues, myResidueNumbers, myInsertionCodes);
+		}
+
+		/**
+		 * Adds atoms numbered from 1 without insertion codes.
+		 * 
+		 * @see #add(String, float[], byte[], int[], byte[])
+		 */
+		public void add(String pdbIdAndChain, float[] coordinates, byte[] residues) {
+			int[] myResidueNumbers = new int[residues.length];
+			for (int i = 0; i < residues.length; i++) {
+				myResidueNumbers[i] = i + 1;
+			}
+			add(pdbIdAndChain, coordinates, residues, myResidueNumbers, new byte[residues.length]);
+		}
+
+		/**
+		 * @param coordinates
+		 *            The x, y, and z of each atom in turn
+		 * @param residues
+		 *            The one-letter code of the residue of each atom, in ASCII
+		 * @param residueNumbers
+		 *            The PDB residue number of each atom
+		 * @param insertionCodes
+		 *            The insertion code of the residue of each atom, in ASCII, or 0 for none
+		 */
+		public void add(String pdbIdAndChain, float[] coordinates, byte[] residues, int[] residueNumbers,
+				byte[] insertionCodes) {
+			if (coordinates.length != 3 * residues.length || residueNumbers.length != residues.length
+					|| insertionCodes.length != residues.length) throw new IllegalArgumentException("There are "
+					+ coordinates.length + " coordinates, " + residueNumbers.length + " residue numbers, and "
+					+ insertionCodes.length + " insertion codes for " + residues.length + " residues of "
+					+ pdbIdAndChain);
+			this.coordinates.put(pdbIdAndChain, coordinates);
+			this.residues.put(pdbIdAndChain, residues);
+			this.residueNumbers.put(pdbIdAndChain, residueNumbers);
+			this.insertionCodes.put(pdbIdAndChain, insertionCodes);
+		}
+
+		/**
+		 * Loads each chain from {@link AtomCacheFactory#getCache()} and adds it. Chains that can't be loaded are
+		 * skipped.
+		 * 
+		 * @return The number of chains added
+		 */
+		public int addAll(Collection<String> pdbIdsAndChains) {
+			int nAdded = 0;
+			for (String pdbIdAndChain : pdbIdsAndChains) {
+				try {
+					add(pdbIdAndChain, AtomCacheFactory.getCache().getAtoms(pdbIdAndChain));
+					nAdded++;
+				} catch (IOException | StructureException | RuntimeException e) {
+					logger.warn("Couldn't load structure " + pdbIdAndChain + "; not including it", e);
+				}
+			}
+			return nAdded;
+		}
+
+		/**
+		 * Writes the store to {@code file}, replacing it.
+		 */
+		public void write(File file) throws IOException {
+			long nAtoms = 0;
+			int idBytes = 0;
+			byte[][] encoded = new byte[coordinates.size()][];
+			int i = 0;
+			for (Map.Entry<String, float[]> entry : coordinates.entrySet()) {
+				encoded[i] = entry.getKey().getBytes(UTF_8);
+				idBytes += 2 + encoded[i].length;
+				nAtoms += entry.getValue().length / 3;
+				i++;
+			}
+			if (16 * nAtoms > Integer.MAX_VALUE) throw new IOException("Can't write " + nAtoms
+					+ " atoms to one store");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(coordinates.size());
+				out.writeInt((int) nAtoms);
+				out.writeInt(idBytes);
+				for (byte[] id : encoded) {
+					out.writeShort(id.length);
+					out.write(id);
+				}
+				int offset = 0;
+				for (float[] chain : coordinates.values()) {
+					out.writeInt(offset);
+					offset += chain.length / 3;
+				}
+				out.writeInt(offset);
+				for (float[] chain : coordinates.values()) {
+					for (float x : chain) {
+						out.writeFloat(x);
+					}
+				}
+				for (String pdbIdAndChain : coordinates.keySet()) {
+					for (int number : residueNumbers.get(pdbIdAndChain)) {
+						out.writeInt(number);
+					}
+				}
+				for (String pdbIdAndChain : coordinates.keySet()) {
+					out.write(residues.get(pdbIdAndChain));
+				}
+				for (String pdbIdAndChain : coordinates.keySet()) {
+					out.write(insertionCodes.get(pdbIdAndChain));
+				}
+			}
+			logger.info("Wrote " + nAtoms + " C-alpha atoms of " + coordinates.size() + " chains to " + file);
+		}
+
+	}
+
+	/**
+	 * Atoms made from a store are cheap to make again, so a {@link StructureCache} in front of one needs to keep fewer.
+	 * This is a tenth of {@link StructureCache#DEFAULT_MAX_ATOMS}, and is all of the heap a store saves.
+	 */
+	public static final long DEFAULT_MAX_CACHED_ATOMS = 100000;
+
+	private static final int HEADER_LENGTH = 20;
+
+	private static final int MAGIC = 0x534e4341; // SNCA
+
+	private static final Map<Character, String> THREE_LETTER_CODES = new HashMap<>();
+
+	private static final char UNKNOWN = 'X';
+
+	private static final int VERSION = 2; // 1 had no residue numbers
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private final FileChannel channel;
+
+	private final FloatBuffer coordinates;
+
+	private final File file;
+
+	private final String[] ids;
+
+	private final ByteBuffer insertionCodes;
+
+	private final IntBuffer offsets;
+
+	private final IntBuffer residueNumbers;
+
+	private final ByteBuffer residues;
+
+	static {
+		String[] codes = { "ALA", "ARG", "ASN", "ASP", "CYS", "GLN", "GLU", "GLY", "HIS", "ILE", "LEU", "LYS", "MET",
+				"PHE", "PRO", "SER", "THR", "TRP", "TYR", "VAL" };
+		for (String code : codes) {
+			THREE_LETTER_CODES.put(StructureTools.get1LetterCode(code), code);
+		}
+	}
+
+	/**
+	 * Writes a store of every chain that the UniProt Ids in the networks map to.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: " + CoordinateStore.class.getSimpleName() + " output-file network-file...");
+			System.err.println("Structures are read from the directory in the PDB_DIR system property.");
+			return;
+		}
+		Set<String> pdbIdsAndChains = new TreeSet<>();
+		for (int i = 1; i < args.length; i++) {
+			for (String uniProtId : NetworkUtils.getUniProtIds(NetworkUtils.readNetwork(new File(args[i]))).values()) {
+				if (uniProtId == null) continue;
+				String pdbIdAndChain = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId);
+				if (pdbIdAndChain != null) pdbIdsAndChains.add(pdbIdAndChain);
+			}
+		}
+		logger.info("Loading " + pdbIdsAndChains.size() + " chains");
+		Builder builder = new Builder();
+		builder.addAll(pdbIdsAndChains);
+		builder.write(new File(args[0]));
+	}
+
+	/**
+	 * Opens and maps a store written by a {@link Builder}.
+	 */
+	@SuppressWarnings("resource")
+	public CoordinateStore(File file) throws IOException {
+		this.file = file;
+		channel = new RandomAccessFile(file, "r").getChannel();
+		try {
+			if (channel.size() < HEADER_LENGTH) throw new IOException(file + " is not a coordinate store");
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_LENGTH);
+			if (header.getInt() != MAGIC) throw new IOException(file + " is not a coordinate store");
+			int version = header.getInt();
+			if (version != VERSION) throw new IOException(file + " has version " + version + ", not " + VERSION
+					+ "; write it again with " + CoordinateStore.class.getSimpleName());
+			int nChains = header.getInt();
+			int nAtoms = header.getInt();
+			int idBytes = header.getInt();
+			long offsetStart = HEADER_LENGTH + idBytes;
+			long coordinateStart = offsetStart + 4L * (nChains + 1);
+			long numberStart = coordinateStart + 12L * nAtoms;
+			long residueStart = numberStart + 4L * nAtoms;
+			long insertionStart = residueStart + nAtoms;
+			if (channel.size() != insertionStart + nAtoms) throw new IOException(file + " is truncated");
+			ByteBuffer idBlock = channel.map(MapMode.READ_ONLY, HEADER_LENGTH, idBytes);
+			ids = new String[nChains];
+			for (int i = 0; i < nChains; i++) {
+				byte[] id = new byte[idBlock.getShort() & 0xffff];
+				idBlock.get(id);
+				ids[i] = new String(id, UTF_8);
+			}
+			offsets = channel.map(MapMode.READ_ONLY, offsetStart, 4L * (nChains + 1)).asIntBuffer();
+			coordinates = channel.map(MapMode.READ_ONLY, coordinateStart, 12L * nAtoms).asFloatBuffer();
+			residueNumbers = channel.map(MapMode.READ_ONLY, numberStart, 4L * nAtoms).asIntBuffer();
+			residues = channel.map(MapMode.READ_ONLY, residueStart, nAtoms);
+			insertionCodes = channel.map(MapMode.READ_ONLY, insertionStart, nAtoms);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		logger.info("Opened coordinate store " + file + " with " + getNAtoms() + " C-alpha atoms of " + size()
+				+ " chains");
+	}
+
+	/**
+	 * Closes the file. The mapping itself is released when the store is garbage-collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	public boolean contains(String pdbIdAndChain) {
+		return Arrays.binarySearch(ids, pdbIdAndChain) >= 0;
+	}
+
+	/**
+	 * Makes CA atoms from the store, each in an amino acid of the right type, in one chain of one structure. Only the
+	 * coordinates, residue types, and PDB residue numbers and insertion codes are known, but the residue numbers are
+	 * enough for an alignment that names its residues, such as FATCAT's XML, to find them.
+	 * 
+	 * @return The atoms, or null if the chain isn't in the store
+	 */
+	public Atom[] getAtoms(String pdbIdAndChain) {
+		int index = Arrays.binarySearch(ids, pdbIdAndChain);
+		if (index < 0) return null;
+		int from = offsets.get(index);
+		int length = offsets.get(index + 1) - from;
+		int dot = pdbIdAndChain.lastIndexOf('.');
+		String chainId = dot < 0 ? "A" : pdbIdAndChain.substring(dot + 1);
+		Structure structure = new StructureImpl();
+		structure.setPDBCode(dot < 0 ? pdbIdAndChain : pdbIdAndChain.substring(0, dot));
+		Chain chain = new ChainImpl();
+		chain.setChainID(chainId);
+		chain.setParent(structure);
+		structure.addChain(chain);
+		Atom[] ca = new Atom[length];
+		for (int i = 0; i < length; i++) {
+			char code = (char) residues.get(from + i);
+			AminoAcidImpl group = new AminoAcidImpl();
+			group.setAminoType(code);
+			String name = THREE_LETTER_CODES.get(code);
+			group.setPDBName(name != null ? name : "UNK");
+			byte insertionCode = insertionCodes.get(from + i);
+			group.setResidueNumber(new ResidueNumber(chainId, residueNumbers.get(from + i),
+					insertionCode == 0 ? null : (char) insertionCode));
+			group.setChain(chain);
+			chain.addGroup(group);
+			Atom atom = new AtomImpl();
+			atom.setName("CA");
+			atom.setFullName(" CA ");
+			atom.setElement(Element.C);
+			atom.setCoords(new double[] { coordinates.get(3 * (from + i)), coordinates.get(3 * (from + i) + 1),
+					coordinates.get(3 * (from + i) + 2) });
+			atom.setGroup(group);
+			group.addAtom(atom);
+			ca[i] = atom;
+		}
+		return ca;
+	}
+
+	/**
+	 * @return The x, y, and z of each CA atom in turn, or null if the chain isn't in the store
+	 */
+	public double[] getCoordinates(String pdbIdAndChain) {
+		int index = Arrays.binarySearch(ids, pdbIdAndChain);
+		if (index < 0) return null;
+		int from = 3 * offsets.get(index);
+		double[] xyz = new double[3 * offsets.get(index + 1) - from];
+		for (int i = 0; i < xyz.length; i++) {
+			xyz[i] = coordinates.get(from + i); // absolute, so concurrent readers don't interfere
+		}
+		return xyz;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return The number of CA atoms in the chain, or -1 if it isn't in the store
+	 */
+	public int getLength(String pdbIdAndChain) {
+		int index = Arrays.binarySearch(ids, pdbIdAndChain);
+		if (index < 0) return -1;
+		return offsets.get(index + 1) - offsets.get(index);
+	}
+
+	/**
+	 * @return The total number of CA atoms
+	 */
+	public int getNAtoms() {
+		return residues.limit();
+	}
+
+	/**
+	 * @return The number of chains
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+}
@@ -0,0 +1,34 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+/**
+ * Something (normally a {@link WeightCreator}) that can guess how much work a {@link Weight} will take for a pair, from
+ * what it knows about the two proteins (sequence lengths, numbers of C-alpha atoms). A {@link SmarterWeightManager}
+ * multiplies this by how long each unit of work has taken each Weight class so far, and starts the most expensive jobs
+ * first.
+ * 
+ * @author dmyersturnbull
+ */
+public interface CostEstimator {
+
+	/**
+	 * @return The relative amount of work {@code weight} will do for the pair, in units that are comparable between
+	 *         pairs for one Weight class (for example the product of the two lengths for an alignment); need not be
+	 *         comparable between classes
+	 */
+	double estimateWork(Weight weight, String uniProtIdA, String uniProtIdB);
+
+}
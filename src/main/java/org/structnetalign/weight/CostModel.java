@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estimates how long weighting jobs will take, as a {@link CostEstimator work estimate} times the time each unit of
+ * work has taken for the job's {@link Weight} class so far (an exponentially weighted mean, updated as jobs finish).
+ * {@link #LONGEST_FIRST} orders a thread pool's queue so that the most expensive jobs start first, which keeps one long
+ * job from starting last and holding up the end of a run.
+ * 
+ * @author dmyersturnbull
+ */
+class CostModel {
+
+	/**
+	 * A task with an estimated cost.
+	 */
+	interface Costed {
+
+		/**
+		 * @return The estimated run time, in nanoseconds
+		 */
+		double getCost();
+
+		/**
+		 * @return Breaks ties between equal costs; lower runs first
+		 */
+		long getOrder();
+	}
+
+	/**
+	 * The nanoseconds per unit of work assumed for a class that hasn't finished any job yet.
+	 */
+	public static final double DEFAULT_RATE = 1.0;
+
+	/**
+	 * Orders {@link Costed} tasks by decreasing cost, then in the order they were created; any other task goes last.
+	 */
+	public static final Comparator<Runnable> LONGEST_FIRST = new Comparator<Runnable>() {
+		@Override
+		public int compare(Runnable o1, Runnable o2) {
+			double cost1 = o1 instanceof Costed ? ((Costed) o1).getCost() : 0;
+			double cost2 = o2 instanceof Costed ? ((Costed) o2).getCost() : 0;
+			if (cost1 != cost2) return cost1 > cost2 ? -1 : 1;
+			long order1 = o1 instanceof Costed ? ((Costed) o1).getOrder() : Long.MAX_VALUE;
+			long order2 = o2 instanceof Costed ? ((Costed) o2).getOrder() : Long.MAX_VALUE;
+			return order1 < order2 ? -1 : order1 == order2 ? 0 : 1;
+		}
+	};
+
+	/**
+	 * The weight of each new timing in the mean.
+	 */
+	public static final double SMOOTHING = 0.2;
+
+	private final AtomicLong order = new AtomicLong();
+
+	private final ConcurrentMap<Class<?>, AtomicLong> rates = new ConcurrentHashMap<>();
+
+	/**
+	 * @return The estimated number of nanoseconds to do {@code work} units of work with a Weight of class
+	 *         {@code weightClass}
+	 */
+	public double estimate(Class<?> weightClass, double work) {
+		return work * getRate(weightClass);
+	}
+
+	/**
+	 * @return The mean nanoseconds per unit of work for {@code weightClass}
+	 */
+	public double getRate(Class<?> weightClass) {
+		AtomicLong rate = rates.get(weightClass);
+		return rate == null ? DEFAULT_RATE : Double.longBitsToDouble(rate.get());
+	}
+
+	/**
+	 * @return A number to break ties between jobs of equal cost, increasing with each call
+	 */
+	public long nextOrder() {
+		return order.getAndIncrement();
+	}
+
+	/**
+	 * Updates the mean rate of {@code weightClass} with a job that did {@code work} units in {@code nanos}.
+	 */
+	public void record(Class<?> weightClass, double work, long nanos) {
+		if (weightClass == null || work <= 0) return;
+		double observed = nanos / work;
+		AtomicLong rate = rates.get(weightClass);
+		if (rate == null) {
+			rate = rates.putIfAbsent(weightClass, new AtomicLong(Double.doubleToRawLongBits(observed)));
+			if (rate == null) return;
+		}
+		while (true) {
+			long bits = rate.get();
+			double mean = Double.longBitsToDouble(bits);
+			double updated = mean + SMOOTHING * (observed - mean);
+			if (rate.compareAndSet(bits, Double.doubleToRawLongBits(updated))) return;
+		}
+	}
+
+}
@@ -0,0 +1,259 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * An index of fixed-length structural descriptors (see {@link #describe(double[])}) that finds, for every structure,
+ * its nearest neighbours in descriptor space. The descriptor is only a coarse summary of a fold, so these are
+ * approximate structural neighbours. Two structures are a candidate pair if either is among the
+ * other's {@code k} nearest neighbours, or if their descriptors are within a distance bound. Search uses a <a
+ * href="http://en.wikipedia.org/wiki/Vantage-point_tree">vantage-point tree</a>, so building the candidate set takes
+ * roughly O(n log n) distance computations rather than O(n<sup>2</sup>).
+ * <p>
+ * Ids that were never {@link #add(String, double[]) added} can't be ruled out, so
+ * {@link #isCandidate(String, String)} returns true for them.
+ * 
+ * @author dmyersturnbull
+ */
+public class DescriptorIndex {
+
+	/**
+	 * The width in Angstroms of each bin of the distance histogram.
+	 */
+	public static final double BIN_WIDTH = 2.0;
+
+	/**
+	 * The number of bins in the distance histogram; distances beyond the last bin are counted in it.
+	 */
+	public static final int N_BINS = 20;
+
+	private static class Node {
+		int point;
+		double radius;
+		Node inside;
+		Node outside;
+	}
+
+	private Set<String> candidates;
+
+	private final List<double[]> descriptors = new ArrayList<>();
+
+	private final List<String> ids = new ArrayList<>();
+
+	private final Map<String, Integer> indices = new HashMap<>();
+
+	private final int k;
+
+	private final Double maxDistance;
+
+	private Node root;
+
+	/**
+	 * Computes a descriptor from CA coordinates: the normalized histogram of all pairwise CA-CA distances.
+	 * 
+	 * @param coordinates
+	 *            x, y, and z of each atom in turn
+	 */
+	public static double[] describe(double[] coordinates) {
+		double[] histogram = new double[N_BINS];
+		int n = coordinates.length / 3;
+		if (n < 2) return histogram;
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				double dx = coordinates[3 * i] - coordinates[3 * j];
+				double dy = coordinates[3 * i + 1] - coordinates[3 * j + 1];
+				double dz = coordinates[3 * i + 2] - coordinates[3 * j + 2];
+				int bin = (int) (Math.sqrt(dx * dx + dy * dy + dz * dz) / BIN_WIDTH);
+				histogram[Math.min(bin, N_BINS - 1)]++;
+			}
+		}
+		double nPairs = (double) n * (n - 1) / 2;
+		for (int i = 0; i < N_BINS; i++) {
+			histogram[i] /= nPairs;
+		}
+		return histogram;
+	}
+
+	private static double distance(double[] a, double[] b) {
+		double sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			double d = a[i] - b[i];
+			sum += d * d;
+		}
+		return Math.sqrt(sum);
+	}
+
+	private static String pairKey(String a, String b) {
+		return a.compareTo(b) < 0 ? a + "\t" + b : b + "\t" + a;
+	}
+
+	/**
+	 * @param k
+	 *            The number of nearest neighbours of each structure that are candidates
+	 * @param maxDistance
+	 *            Structures whose descriptors are within this distance are also candidates; null for no bound
+	 */
+	public DescriptorIndex(int k, Double maxDistance) {
+		this.k = k;
+		this.maxDistance = maxDistance;
+	}
+
+	/**
+	 * Adds a descriptor. Must be called before {@link #build()}.
+	 */
+	public void add(String id, double[] descriptor) {
+		if (candidates != null) throw new IllegalStateException("The index has already been built");
+		if (indices.containsKey(id)) return;
+		indices.put(id, ids.size());
+		ids.add(id);
+		descriptors.add(descriptor);
+	}
+
+	/**
+	 * Builds the tree and finds the candidate pairs.
+	 */
+	public void build() {
+		List<Integer> points = new ArrayList<>(ids.size());
+		for (int i = 0; i < ids.size(); i++) {
+			points.add(i);
+		}
+		root = build(points, new Random(0));
+		candidates = new HashSet<>();
+		for (int i = 0; i < ids.size(); i++) {
+			for (int neighbour : nearest(descriptors.get(i), k + 1)) { // +1 for itself
+				if (neighbour != i) candidates.add(pairKey(ids.get(i), ids.get(neighbour)));
+			}
+			if (maxDistance != null) {
+				List<Integer> within = new ArrayList<>();
+				within(root, descriptors.get(i), maxDistance, within);
+				for (int neighbour : within) {
+					if (neighbour != i) candidates.add(pairKey(ids.get(i), ids.get(neighbour)));
+				}
+			}
+		}
+	}
+
+	public int getCandidateCount() {
+		if (candidates == null) throw new IllegalStateException("The index hasn't been built");
+		return candidates.size();
+	}
+
+	/**
+	 * @return Whether {@code a} and {@code b} could be structurally similar enough to be worth aligning
+	 */
+	public boolean isCandidate(String a, String b) {
+		if (candidates == null) throw new IllegalStateException("The index hasn't been built");
+		if (a.equals(b)) return true;
+		if (!indices.containsKey(a) || !indices.containsKey(b)) return true;
+		return candidates.contains(pairKey(a, b));
+	}
+
+	/**
+	 * @return The Ids of the {@code n} nearest indexed descriptors to {@code descriptor}, nearest first
+	 */
+	public List<String> nearestIds(double[] descriptor, int n) {
+		if (candidates == null) throw new IllegalStateException("The index hasn't been built");
+		List<Integer> nearest = nearest(descriptor, n);
+		List<String> list = new ArrayList<>(nearest.size());
+		for (int i : nearest) {
+			list.add(ids.get(i));
+		}
+		return list;
+	}
+
+	public int size() {
+		return ids.size();
+	}
+
+	private Node build(List<Integer> points, Random random) {
+		if (points.isEmpty()) return null;
+		Node node = new Node();
+		node.point = points.remove(random.nextInt(points.size()));
+		if (points.isEmpty()) return node;
+		final double[] vantage = descriptors.get(node.point);
+		double[] distances = new double[points.size()];
+		for (int i = 0; i < points.size(); i++) {
+			distances[i] = distance(vantage, descriptors.get(points.get(i)));
+		}
+		double[] sorted = distances.clone();
+		Arrays.sort(sorted);
+		node.radius = sorted[sorted.length / 2];
+		List<Integer> inside = new ArrayList<>(points.size() / 2 + 1);
+		List<Integer> outside = new ArrayList<>(points.size() / 2 + 1);
+		for (int i = 0; i < points.size(); i++) {
+			if (distances[i] < node.radius) {
+				inside.add(points.get(i));
+			} else {
+				outside.add(points.get(i));
+			}
+		}
+		node.inside = build(inside, random);
+		node.outside = build(outside, random);
+		return node;
+	}
+
+	private List<Integer> nearest(final double[] query, int n) {
+		// a max-heap of the best n so far
+		PriorityQueue<double[]> heap = new PriorityQueue<>(n + 1, new Comparator<double[]>() {
+			@Override
+			public int compare(double[] o1, double[] o2) {
+				return Double.compare(o2[0], o1[0]);
+			}
+		});
+		nearest(root, query, n, heap);
+		List<Integer> list = new ArrayList<>(heap.size());
+		while (!heap.isEmpty()) {
+			list.add(0, (int) heap.poll()[1]);
+		}
+		return list;
+	}
+
+	private void nearest(Node node, double[] query, int n, PriorityQueue<double[]> heap) {
+		if (node == null) return;
+		double d = distance(query, descriptors.get(node.point));
+		if (heap.size() < n) {
+			heap.add(new double[] { d, node.point });
+		} else if (d < heap.peek()[0]) {
+			heap.poll();
+			heap.add(new double[] { d, node.point });
+		}
+		Node first = d < node.radius ? node.inside : node.outside;
+		Node second = d < node.radius ? node.outside : node.inside;
+		nearest(first, query, n, heap);
+		// the other side can only help if the ball around the query crosses the boundary
+		double tau = heap.size() < n ? Double.POSITIVE_INFINITY : heap.peek()[0];
+		if (Math.abs(d - node.radius) <= tau) nearest(second, query, n, heap);
+	}
+
+	private void within(Node node, double[] query, double bound, List<Integer> results) {
+		if (node == null) return;
+		double d = distance(query, descriptors.get(node.point));
+		if (d <= bound) results.add(node.point);
+		if (d - bound < node.radius) within(node.inside, query, bound, results);
+		if (d + bound >= node.radius) within(node.outside, query, bound, results);
+	}
+
+}
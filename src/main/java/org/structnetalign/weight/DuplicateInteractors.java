@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * Groups the vertices of a network by UniProt Id, so that each pair of UniProt Ids can be weighted once. The smallest
+ * vertex with each UniProt Id represents it; {@link #pairs(CandidatePairGenerator)} pairs only representatives, and
+ * {@link HomologyAccumulator#addTo(org.structnetalign.CleverGraph, int, Map)} fans each result out to every copy.
+ * Vertices without a UniProt Id are each their own representative.
+ * 
+ * @author dmyersturnbull
+ */
+class DuplicateInteractors {
+
+	private final Map<Integer, int[]> copies = new HashMap<>();
+
+	private final List<Integer> representatives;
+
+	private final Map<Integer, String> uniProtIds;
+
+	public DuplicateInteractors(Collection<Integer> vertices, Map<Integer, String> uniProtIds) {
+		this.uniProtIds = uniProtIds;
+		representatives = new ArrayList<>(vertices.size());
+		Map<String, List<Integer>> byId = new HashMap<>();
+		for (int v : AllPairsGenerator.sorted(vertices)) {
+			String uniProtId = uniProtIds.get(v);
+			if (uniProtId == null) {
+				representatives.add(v);
+				continue;
+			}
+			List<Integer> list = byId.get(uniProtId);
+			if (list == null) {
+				list = new ArrayList<>(1);
+				byId.put(uniProtId, list);
+				representatives.add(v);
+			}
+			list.add(v);
+		}
+		for (List<Integer> list : byId.values()) {
+			if (list.size() < 2) continue;
+			int[] array = new int[list.size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = list.get(i);
+			}
+			for (int v : array) {
+				copies.put(v, array);
+			}
+		}
+	}
+
+	/**
+	 * @return A map from each vertex whose UniProt Id is shared to every vertex with that Id, in increasing order; the
+	 *         vertices of one Id share one array
+	 */
+	public Map<Integer, int[]> getCopies() {
+		return copies;
+	}
+
+	/**
+	 * @return The smallest vertex with each UniProt Id, in increasing order
+	 */
+	public List<Integer> getRepresentatives() {
+		return representatives;
+	}
+
+	/**
+	 * Generates the pairs of representatives that {@code generator} accepts, followed by the
+	 * {@link #sameIdPairs(CandidatePairGenerator) pairs of copies}.
+	 */
+	public Iterator<Pair<Integer>> pairs(CandidatePairGenerator generator) {
+		final Iterator<Pair<Integer>> distinct = generator.generate(representatives, uniProtIds);
+		final Iterator<Pair<Integer>> same = sameIdPairs(generator).iterator();
+		return new Iterator<Pair<Integer>>() {
+			@Override
+			public boolean hasNext() {
+				return distinct.hasNext() || same.hasNext();
+			}
+
+			@Override
+			public Pair<Integer> next() {
+				if (distinct.hasNext()) return distinct.next();
+				if (same.hasNext()) return same.next();
+				throw new NoSuchElementException();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * @return The pair of the first two copies of each shared UniProt Id, if {@code generator} accepts it; weighting
+	 *         that pair weights the Id against itself, for every pair of its copies
+	 */
+	public List<Pair<Integer>> sameIdPairs(CandidatePairGenerator generator) {
+		List<Pair<Integer>> pairs = new ArrayList<>();
+		for (int v : representatives) {
+			int[] array = copies.get(v);
+			if (array == null) continue;
+			Iterator<Pair<Integer>> iter = generator.generate(Arrays.asList(array[0], array[1]), uniProtIds);
+			while (iter.hasNext()) {
+				pairs.add(iter.next());
+			}
+		}
+		return pairs;
+	}
+
+	/**
+	 * @return The number of representatives
+	 */
+	public int size() {
+		return representatives.size();
+	}
+
+}
@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+/**
+ * A {@link Weight} that spends much of its time waiting on the network or disk, and can do that waiting separately from
+ * its computation. A {@link SmarterWeightManager} calls {@link #fetch()} or {@link #fetchAll(String, String[])} on a
+ * large pool of I/O threads, then runs the Weight on its pool of {@code nCores} compute threads, so that compute
+ * threads are never blocked on a download.
+ * 
+ * @author dmyersturnbull
+ */
+public interface FetchingWeight extends Weight {
+
+	/**
+	 * Loads everything {@link #call()} needs for the pair set by {@link #setIds(int, int, String, String)}, so that
+	 * {@link #call()} only computes.
+	 * 
+	 * @throws WeightException
+	 *             If the pair can't be weighted because something couldn't be loaded
+	 */
+	void fetch() throws WeightException;
+
+	/**
+	 * Warms whatever caches {@link BatchWeight#assignWeights(int, String, int[], String[])} will read for a block. Ids
+	 * that can't be loaded are skipped; the block will fail on them itself.
+	 */
+	void fetchAll(String uniProtId, String[] targetUniProtIds);
+
+}
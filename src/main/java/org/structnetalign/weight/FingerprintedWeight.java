@@ -0,0 +1,31 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+/**
+ * A {@link Weight} whose result depends only on the two UniProt Ids and on a set of static parameters. Such a Weight
+ * can be reused across runs by a {@link WeightCache}.
+ * 
+ * @author dmyersturnbull
+ */
+public interface FingerprintedWeight extends Weight {
+
+	/**
+	 * @return A string that changes whenever a parameter that affects the result changes, or null if the result
+	 *         should not be cached
+	 */
+	String getParameterFingerprint();
+
+}
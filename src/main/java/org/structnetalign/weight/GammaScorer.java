@@ -43,9 +43,34 @@ public class GammaScorer {
 		this.lambda = lambda;
 	}
 
-	public double score(SequencePair<ProteinSequence, AminoAcidCompound> pair, double score) {
+	/**
+	 * @param score
+	 *            The fractional identity of an alignment
+	 */
+	public double score(double score) {
 		GammaDistribution dist = new GammaDistribution(alpha, lambda);
 		return dist.density(score + beta);
 	}
 
+	/**
+	 * @return The greatest score that any fractional identity, from 0 to 1, can get
+	 */
+	public double getMaxScore() {
+		return getMaxScore(1);
+	}
+
+	/**
+	 * @return The greatest score that any fractional identity from 0 to {@code maxIdentity} can get
+	 */
+	public double getMaxScore(double maxIdentity) {
+		// the density rises to the mode and falls after it (or only falls, for a shape below 1)
+		double mode = alpha >= 1 ? (alpha - 1) * lambda : 0;
+		double x = Math.min(Math.max(mode, beta), maxIdentity + beta);
+		return new GammaDistribution(alpha, lambda).density(x);
+	}
+
+	public double score(SequencePair<ProteinSequence, AminoAcidCompound> pair, double score) {
+		return score(score);
+	}
+
 }
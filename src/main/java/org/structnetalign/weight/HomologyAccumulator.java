@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.structnetalign.CleverGraph;
+import org.structnetalign.HomologyEdge;
+
+/**
+ * Combines weights for pairs of vertices by noisy-OR (<em>w + p - wp</em>) as they arrive from any number of threads,
+ * so that homology edges can be added to a {@link CleverGraph} in one pass at the end. Pairs are keyed by their two
+ * vertices packed into a long, regardless of order, and spread over stripes so that threads rarely touch the same
+ * map. Each weight is updated by compare-and-set; because noisy-OR is commutative and associative, the order of
+ * updates doesn't matter.
+ * 
+ * @author dmyersturnbull
+ */
+class HomologyAccumulator {
+
+	public static final int DEFAULT_STRIPES = 64;
+
+	private final int mask;
+
+	private final ConcurrentMap<Long, AtomicLong>[] stripes;
+
+	/**
+	 * Packs two vertices into a key that is the same for (a, b) and (b, a).
+	 */
+	static long pack(int a, int b) {
+		int lo = Math.min(a, b);
+		int hi = Math.max(a, b);
+		return (long) lo << 32 | hi & 0xffffffffL;
+	}
+
+	static int unpackFirst(long key) {
+		return (int) (key >>> 32);
+	}
+
+	static int unpackSecond(long key) {
+		return (int) key;
+	}
+
+	public HomologyAccumulator() {
+		this(DEFAULT_STRIPES);
+	}
+
+	/**
+	 * @param nStripes
+	 *            Rounded up to a power of 2
+	 */
+	@SuppressWarnings("unchecked")
+	public HomologyAccumulator(int nStripes) {
+		int n = 1;
+		while (n < nStripes) n <<= 1;
+		mask = n - 1;
+		stripes = new ConcurrentMap[n];
+		for (int i = 0; i < n; i++) {
+			stripes[i] = new ConcurrentHashMap<>();
+		}
+	}
+
+	/**
+	 * Combines {@code prob} into the weight of (a, b). Does nothing if {@code prob} is 0, so no edge is created for it.
+	 */
+	public void add(int a, int b, double prob) {
+		if (prob == 0) return;
+		long key = pack(a, b);
+		ConcurrentMap<Long, AtomicLong> stripe = stripeOf(key);
+		AtomicLong cell = stripe.get(key);
+		if (cell == null) {
+			cell = stripe.putIfAbsent(key, new AtomicLong(Double.doubleToRawLongBits(prob)));
+			if (cell == null) return;
+		}
+		while (true) {
+			long bits = cell.get();
+			double w = Double.longBitsToDouble(bits);
+			// (a+b-ab) + c - c*(a+b-ab) = a + b + c - ab - ac - bc + abc
+			if (cell.compareAndSet(bits, Double.doubleToRawLongBits(w + prob - w * prob))) return;
+		}
+	}
+
+	/**
+	 * Adds an edge to the homology graph for every pair with a weight, in order of the packed keys so that edge Ids
+	 * don't depend on thread scheduling. Pairs that already have an edge are combined into it instead.
+	 * 
+	 * @param firstId
+	 *            The Id of the first edge to create
+	 * @return The number of edges created
+	 */
+	public int addTo(CleverGraph graph, int firstId) {
+		return addTo(graph, firstId, Collections.<Integer, int[]> emptyMap());
+	}
+
+	/**
+	 * Like {@link #addTo(CleverGraph, int)}, but adds the weight of (a, b) to every pair of a copy of {@code a} and a copy
+	 * of {@code b}. If {@code a} and {@code b} are copies of each other, it's added to every pair of their copies.
+	 * 
+	 * @param copies
+	 *            A map from vertices to their copies (including themselves), as from
+	 *            {@link DuplicateInteractors#getCopies()}; a vertex that isn't in it is its only copy
+	 */
+	public int addTo(CleverGraph graph, int firstId, Map<Integer, int[]> copies) {
+		long[] keys = new long[size()];
+		int i = 0;
+		for (ConcurrentMap<Long, AtomicLong> stripe : stripes) {
+			for (Long key : stripe.keySet()) {
+				if (i == keys.length) keys = Arrays.copyOf(keys, keys.length * 2 + 1); // someone is still adding
+				keys[i++] = key;
+			}
+		}
+		keys = Arrays.copyOf(keys, i);
+		Arrays.sort(keys);
+		int id = firstId;
+		for (long key : keys) {
+			int a = unpackFirst(key);
+			int b = unpackSecond(key);
+			double prob = Double.longBitsToDouble(stripeOf(key).get(key).get());
+			int[] copiesA = copies.get(a);
+			int[] copiesB = copies.get(b);
+			if (copiesA == null) copiesA = new int[] { a };
+			if (copiesB == null) copiesB = new int[] { b };
+			for (int x = 0; x < copiesA.length; x++) {
+				// each pair of copies of one Id only once
+				for (int y = copiesA == copiesB ? x + 1 : 0; y < copiesB.length; y++) {
+					id = add(graph, id, copiesA[x], copiesB[y], prob);
+				}
+			}
+		}
+		return id - firstId;
+	}
+
+	/**
+	 * @return The combined weight of (a, b), or 0 if it has none
+	 */
+	public double get(int a, int b) {
+		long key = pack(a, b);
+		AtomicLong cell = stripeOf(key).get(key);
+		return cell == null ? 0 : Double.longBitsToDouble(cell.get());
+	}
+
+	/**
+	 * @return The number of pairs with a nonzero weight
+	 */
+	public int size() {
+		int size = 0;
+		for (Map<Long, AtomicLong> stripe : stripes) {
+			size += stripe.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return The Id of the next edge to create
+	 */
+	private static int add(CleverGraph graph, int id, int a, int b, double prob) {
+		HomologyEdge existing = graph.getHomology().findEdge(a, b);
+		if (existing != null) {
+			existing.setWeight(existing.getWeight() + prob - existing.getWeight() * prob);
+			return id;
+		}
+		graph.addHomologies(new HomologyEdge(id, prob), Arrays.asList(a, b));
+		return id + 1;
+	}
+
+	private ConcurrentMap<Long, AtomicLong> stripeOf(long key) {
+		int h = (int) (key ^ key >>> 32) * 0x9E3779B9;
+		return stripes[(h ^ h >>> 16) & mask];
+	}
+
+}
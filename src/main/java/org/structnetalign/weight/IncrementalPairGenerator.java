@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * A {@link CandidatePairGenerator} that only generates pairs involving at least one <em>new</em> vertex: one whose
+ * UniProt Id isn't in a set of Ids that were already weighted in a previous run. With the default exhaustive
+ * behavior, this takes time proportional to the number of new vertices times the number of vertices, rather than to
+ * the square of the number of vertices. If another generator is given, its pairs are filtered instead.
+ * 
+ * @author dmyersturnbull
+ * @see IncrementalWeightManager
+ */
+public class IncrementalPairGenerator implements CandidatePairGenerator {
+
+	/**
+	 * Pairs each new vertex with every vertex that isn't new, and with every new vertex after it.
+	 */
+	private static class NewPairsIterator implements Iterator<Pair<Integer>> {
+
+		private int i = 0;
+		private final boolean[] isNew;
+		private int j = -1;
+		private final int[] newVertices;
+		private final int[] vertices;
+
+		public NewPairsIterator(int[] newVertices, int[] vertices, boolean[] isNew) {
+			this.newVertices = newVertices;
+			this.vertices = vertices;
+			this.isNew = isNew;
+			advance();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return i < newVertices.length;
+		}
+
+		@Override
+		public Pair<Integer> next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			int a = newVertices[i];
+			int b = vertices[j];
+			advance();
+			return a < b ? new Pair<Integer>(a, b) : new Pair<Integer>(b, a);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private void advance() {
+			while (i < newVertices.length) {
+				j++;
+				if (j == vertices.length) {
+					i++;
+					j = -1;
+					continue;
+				}
+				// a pair of new vertices is generated from the smaller one only
+				if (!isNew[j] || vertices[j] > newVertices[i]) return;
+			}
+		}
+	}
+
+	/**
+	 * Filters pairs from another generator.
+	 */
+	private static class FilterIterator implements Iterator<Pair<Integer>> {
+
+		private final Iterator<Pair<Integer>> iter;
+		private Pair<Integer> next;
+		private final Map<Integer, String> uniProtIds;
+		private final Set<String> known;
+
+		public FilterIterator(Iterator<Pair<Integer>> iter, Map<Integer, String> uniProtIds, Set<String> known) {
+			this.iter = iter;
+			this.uniProtIds = uniProtIds;
+			this.known = known;
+			advance();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Pair<Integer> next() {
+			if (next == null) throw new NoSuchElementException();
+			Pair<Integer> pair = next;
+			advance();
+			return pair;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private void advance() {
+			next = null;
+			while (iter.hasNext()) {
+				Pair<Integer> pair = iter.next();
+				if (isNew(uniProtIds.get(pair.getFirst()), known) || isNew(uniProtIds.get(pair.getSecond()), known)) {
+					next = pair;
+					return;
+				}
+			}
+		}
+	}
+
+	private final CandidatePairGenerator base;
+
+	private final Set<String> known;
+
+	private static boolean isNew(String uniProtId, Set<String> known) {
+		return uniProtId != null && !known.contains(uniProtId);
+	}
+
+	/**
+	 * Generates every pair involving a new vertex.
+	 * 
+	 * @param known
+	 *            The UniProt Ids that were already weighted; vertices without a UniProt Id are never new, since they
+	 *            can't be weighted anyway
+	 */
+	public IncrementalPairGenerator(Set<String> known) {
+		this(known, null);
+	}
+
+	/**
+	 * @param base
+	 *            The generator whose pairs to filter, or null (or an {@link AllPairsGenerator}) for every pair
+	 */
+	public IncrementalPairGenerator(Set<String> known, CandidatePairGenerator base) {
+		this.known = known;
+		this.base = base;
+	}
+
+	@Override
+	public Iterator<Pair<Integer>> generate(Collection<Integer> vertices, Map<Integer, String> uniProtIds) {
+		if (base != null && !(base instanceof AllPairsGenerator)) {
+			return new FilterIterator(base.generate(vertices, uniProtIds), uniProtIds, known);
+		}
+		int[] sorted = AllPairsGenerator.sorted(vertices);
+		boolean[] isNew = new boolean[sorted.length];
+		int[] newVertices = new int[sorted.length];
+		int nNew = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (isNew(uniProtIds.get(sorted[i]), known)) {
+				isNew[i] = true;
+				newVertices[nNew++] = sorted[i];
+			}
+		}
+		return new NewPairsIterator(Arrays.copyOf(newVertices, nNew), sorted, isNew);
+	}
+
+}
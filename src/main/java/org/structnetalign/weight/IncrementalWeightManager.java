@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.structnetalign.CleverGraph;
+import org.structnetalign.HomologyEdge;
+
+import edu.uci.ics.jung.graph.UndirectedGraph;
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * A {@link WeightManager} that updates the homology graph from a previous run instead of weighting every pair again.
+ * Weights depend only on UniProt Ids, so an edge of the previous graph is copied to every pair of vertices that have
+ * the same two UniProt Ids now; only pairs involving a vertex whose UniProt Id is new (or changed) are weighted, by a
+ * {@link SmarterWeightManager} with an {@link IncrementalPairGenerator}. Interactors that were removed simply aren't
+ * in the graph any more, so their edges are dropped.
+ * <p>
+ * The previous graph should be the weighted homology graph, before crossing, such as the
+ * {@code hom_weighted.graphml.xml} written with {@link org.structnetalign.PipelineManager#setWriteSteps(boolean)}.
+ * Since that graph was trimmed with tau, tau shouldn't be lowered between the runs.
+ * 
+ * @author dmyersturnbull
+ */
+public class IncrementalWeightManager implements ThresholdedWeightManager {
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private final SmarterWeightManager manager;
+
+	private final UndirectedGraph<Integer, HomologyEdge> previousHomology;
+
+	private final Map<Integer, String> previousUniProtIds;
+
+	/**
+	 * @param manager
+	 *            Weights the new pairs, using its own pair generator to decide which of them to try
+	 * @param previousHomology
+	 *            The weighted homology graph from the previous run
+	 * @param previousUniProtIds
+	 *            A map of each vertex in the previous run's network to its UniProt Id
+	 */
+	public IncrementalWeightManager(SmarterWeightManager manager,
+			UndirectedGraph<Integer, HomologyEdge> previousHomology, Map<Integer, String> previousUniProtIds) {
+		this.manager = manager;
+		this.previousHomology = previousHomology;
+		this.previousUniProtIds = previousUniProtIds;
+	}
+
+	@Override
+	public void assignWeights(CleverGraph graph, Map<Integer, String> uniProtIds) {
+
+		Set<String> known = new HashSet<>(previousUniProtIds.values());
+		known.remove(null);
+		int nReused = copyPrevious(graph, uniProtIds, known);
+
+		int nNew = 0;
+		for (int v : graph.getVertices()) {
+			String uniProtId = uniProtIds.get(v);
+			if (uniProtId != null && !known.contains(uniProtId)) nNew++;
+		}
+		logger.info("Reused " + nReused + " homology edges from the previous run; weighting pairs involving " + nNew
+				+ " new interactors out of " + graph.getVertexCount());
+
+		CandidatePairGenerator pairGenerator = manager.getPairGenerator();
+		manager.setPairGenerator(new IncrementalPairGenerator(known, pairGenerator));
+		try {
+			manager.assignWeights(graph, uniProtIds);
+		} finally {
+			manager.setPairGenerator(pairGenerator);
+		}
+	}
+
+	/**
+	 * Sets the threshold of the {@link SmarterWeightManager}; the previous run's edges are copied regardless.
+	 */
+	@Override
+	public void setThreshold(double threshold) {
+		manager.setThreshold(threshold);
+	}
+
+	/**
+	 * Copies each edge of the previous graph to every pair of current vertices with the same UniProt Ids.
+	 * 
+	 * @return The number of edges added
+	 */
+	private int copyPrevious(CleverGraph graph, Map<Integer, String> uniProtIds, Set<String> known) {
+
+		Map<String, List<Integer>> verticesByUniProtId = new HashMap<>();
+		for (int v : graph.getVertices()) {
+			String uniProtId = uniProtIds.get(v);
+			if (uniProtId == null || !known.contains(uniProtId)) continue;
+			List<Integer> list = verticesByUniProtId.get(uniProtId);
+			if (list == null) {
+				list = new ArrayList<>(1);
+				verticesByUniProtId.put(uniProtId, list);
+			}
+			list.add(v);
+		}
+
+		Set<String> done = new HashSet<>(); // degenerate vertices give the same pair of UniProt Ids more than once
+		int id = graph.getHomologyCount();
+		int nAdded = 0;
+		for (HomologyEdge edge : previousHomology.getEdges()) {
+			Pair<Integer> ends = previousHomology.getEndpoints(edge);
+			String uniProtIdA = previousUniProtIds.get(ends.getFirst());
+			String uniProtIdB = previousUniProtIds.get(ends.getSecond());
+			if (uniProtIdA == null || uniProtIdB == null) continue;
+			String key = uniProtIdA.compareTo(uniProtIdB) < 0 ? uniProtIdA + "\t" + uniProtIdB : uniProtIdB + "\t"
+					+ uniProtIdA;
+			if (!done.add(key)) continue;
+			List<Integer> as = verticesByUniProtId.get(uniProtIdA);
+			List<Integer> bs = verticesByUniProtId.get(uniProtIdB);
+			if (as == null || bs == null) continue; // removed
+			for (int a : as) {
+				for (int b : bs) {
+					if (a == b || graph.getHomology().findEdge(a, b) != null) continue;
+					graph.addHomologies(new HomologyEdge(id++, edge.getWeight()), Arrays.asList(a, b));
+					nAdded++;
+				}
+			}
+		}
+		return nAdded;
+	}
+
+}
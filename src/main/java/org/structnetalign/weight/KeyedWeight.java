@@ -0,0 +1,33 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+/**
+ * A {@link Weight} whose result depends only on something coarser than the two UniProt Ids, such as the two PDB chains
+ * they map to. {@link SmarterWeightManager} computes each key once per run, per Weight class, and reuses the result for
+ * every other pair with the same key.
+ * 
+ * @author dmyersturnbull
+ */
+public interface KeyedWeight extends Weight {
+
+	/**
+	 * Must be called after {@link #setIds(int, int, String, String)}.
+	 * 
+	 * @return A string that is equal for any two pairs this Weight gives the same result for, or null if it isn't known
+	 */
+	String getResultKey();
+
+}
@@ -0,0 +1,324 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory index of <a href="http://en.wikipedia.org/wiki/MinHash">MinHash</a> signatures over the k-mers of
+ * protein sequences, with a locality-sensitive hashing (banding) step to find candidate pairs. Two sequences are a
+ * candidate pair if they share every row of at least one band <em>and</em> the fraction of equal signature entries
+ * (an estimate of the Jaccard similarity of their k-mer sets) is at least a threshold.
+ * <p>
+ * A pair at the threshold only collides in a band with probability {@code 1 - (1 - t^r)^b} for b bands of r rows, so
+ * unless the bands are given explicitly, they're chosen from the threshold to make that at least {@link #TARGET_RECALL}.
+ * If no banding of at most {@link #MAX_SIGNATURE_LENGTH} entries gets there (at very low thresholds), or the given
+ * bands don't, the banding step is skipped and the estimate is checked for every pair instead.
+ * <p>
+ * Ids that were never {@link #add(String, String) added}, or whose sequences are too short to contain a k-mer, can't be
+ * ruled out, so {@link #isCandidate(String, String)} returns true for them.
+ * 
+ * @author dmyersturnbull
+ */
+public class MinHashIndex {
+
+	public static final int DEFAULT_K = 3;
+
+	/**
+	 * The longest signature {@link #MinHashIndex(double)} will use to reach {@link #TARGET_RECALL}.
+	 */
+	public static final int MAX_SIGNATURE_LENGTH = 128;
+
+	/**
+	 * The shortest signature {@link #MinHashIndex(double)} will use, so that the estimates are reasonably precise.
+	 */
+	public static final int MIN_SIGNATURE_LENGTH = 64;
+
+	/**
+	 * The minimum probability that a pair whose similarity is exactly the threshold collides in some band.
+	 */
+	public static final double TARGET_RECALL = 0.99;
+
+	private Set<String> candidates;
+
+	private final boolean isExhaustive;
+
+	private final int k;
+
+	private final int nBands;
+
+	private final int nRows;
+
+	private final long[] seeds;
+
+	private final Map<String, Integer> lengths = new HashMap<>();
+
+	private final Map<String, int[]> signatures = new HashMap<>();
+
+	private final double threshold;
+
+	/**
+	 * A 64-bit finalizer (from MurmurHash3); good enough to make each seed behave like an independent hash function.
+	 */
+	private static long mix(long x) {
+		x ^= x >>> 33;
+		x *= 0xff51afd7ed558ccdL;
+		x ^= x >>> 33;
+		x *= 0xc4ceb9fe1a85ec53L;
+		x ^= x >>> 33;
+		return x;
+	}
+
+	/**
+	 * @return The number of bands needed for a pair at {@code threshold} to collide with probability
+	 *         {@link #TARGET_RECALL}, using {@code nRows} rows per band
+	 */
+	private static int nBandsNeeded(double threshold, int nRows) {
+		double p = Math.pow(threshold, nRows);
+		if (p >= 1) return 1;
+		double nBands = Math.ceil(Math.log(1 - TARGET_RECALL) / Math.log1p(-p));
+		return p > 0 && nBands < Integer.MAX_VALUE ? (int) nBands : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Chooses the most rows per band (so the fewest pairs that collide by chance) that can reach
+	 * {@link #TARGET_RECALL} at {@code threshold} within {@link #MAX_SIGNATURE_LENGTH}, and then enough bands for that
+	 * and for {@link #MIN_SIGNATURE_LENGTH}.
+	 * 
+	 * @return The number of bands and the number of rows per band; if the recall can't be reached, a single band of
+	 *         {@link #MIN_SIGNATURE_LENGTH} rows, for which every pair is checked
+	 */
+	static int[] chooseBanding(double threshold) {
+		for (int nRows = MAX_SIGNATURE_LENGTH; nRows >= 1; nRows--) {
+			int nBands = nBandsNeeded(threshold, nRows);
+			if ((long) nBands * nRows <= MAX_SIGNATURE_LENGTH) {
+				nBands = Math.max(nBands, (MIN_SIGNATURE_LENGTH + nRows - 1) / nRows);
+				return new int[] { nBands, nRows };
+			}
+		}
+		return new int[] { 1, MIN_SIGNATURE_LENGTH };
+	}
+
+	private static String pairKey(String a, String b) {
+		return a.compareTo(b) < 0 ? a + "\t" + b : b + "\t" + a;
+	}
+
+	/**
+	 * Chooses the bands from the threshold.
+	 */
+	public MinHashIndex(double threshold) {
+		this(threshold, DEFAULT_K, chooseBanding(threshold));
+	}
+
+	private MinHashIndex(double threshold, int k, int[] banding) {
+		this(threshold, k, banding[0], banding[1]);
+	}
+
+	/**
+	 * @param threshold
+	 *            The minimum estimated Jaccard similarity of a candidate pair
+	 * @param k
+	 *            The length of each k-mer
+	 * @param nBands
+	 *            The number of LSH bands; the signature length is {@code nBands * nRows}
+	 * @param nRows
+	 *            The number of signature entries per band
+	 */
+	public MinHashIndex(double threshold, int k, int nBands, int nRows) {
+		if (k < 1 || nBands < 1 || nRows < 1) throw new IllegalArgumentException("k, nBands, and nRows must be positive");
+		this.threshold = threshold;
+		this.k = k;
+		this.nBands = nBands;
+		this.nRows = nRows;
+		isExhaustive = getRecall(threshold) < TARGET_RECALL;
+		seeds = new long[nBands * nRows];
+		for (int i = 0; i < seeds.length; i++) {
+			seeds[i] = mix(0x9e3779b97f4a7c15L * (i + 1));
+		}
+	}
+
+	/**
+	 * Adds a sequence to the index. Must be called before {@link #build()}.
+	 */
+	public void add(String id, String sequence) {
+		if (candidates != null) throw new IllegalStateException("The index has already been built");
+		int[] signature = signature(sequence);
+		if (signature == null) return;
+		signatures.put(id, signature);
+		lengths.put(id, sequence.length());
+	}
+
+	/**
+	 * Runs the banding step (or compares every pair) and finds the candidate pairs.
+	 */
+	public void build() {
+		candidates = new HashSet<>();
+		if (isExhaustive) {
+			List<String> ids = new ArrayList<>(signatures.keySet());
+			for (int i = 0; i < ids.size(); i++) {
+				int[] signature = signatures.get(ids.get(i));
+				for (int j = i + 1; j < ids.size(); j++) {
+					if (estimateJaccard(signature, signatures.get(ids.get(j))) >= threshold) {
+						candidates.add(pairKey(ids.get(i), ids.get(j)));
+					}
+				}
+			}
+			return;
+		}
+		for (int band = 0; band < nBands; band++) {
+			Map<Long, List<String>> buckets = new HashMap<>();
+			for (Map.Entry<String, int[]> entry : signatures.entrySet()) {
+				long hash = band;
+				int[] signature = entry.getValue();
+				for (int row = band * nRows; row < (band + 1) * nRows; row++) {
+					hash = mix(hash * 31 + signature[row]);
+				}
+				List<String> bucket = buckets.get(hash);
+				if (bucket == null) {
+					bucket = new ArrayList<>(2);
+					buckets.put(hash, bucket);
+				}
+				bucket.add(entry.getKey());
+			}
+			for (List<String> bucket : buckets.values()) {
+				for (int i = 0; i < bucket.size(); i++) {
+					for (int j = i + 1; j < bucket.size(); j++) {
+						String a = bucket.get(i);
+						String b = bucket.get(j);
+						String key = pairKey(a, b);
+						if (candidates.contains(key)) continue;
+						if (estimateJaccard(signatures.get(a), signatures.get(b)) >= threshold) {
+							candidates.add(key);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The estimated Jaccard similarity of the k-mer sets of {@code a} and {@code b}, or null if either isn't
+	 *         indexed
+	 */
+	public Double estimateJaccard(String a, String b) {
+		int[] sa = signatures.get(a);
+		int[] sb = signatures.get(b);
+		if (sa == null || sb == null) return null;
+		return estimateJaccard(sa, sb);
+	}
+
+	/**
+	 * Bounds the fractional identity of any alignment of {@code a} and {@code b} by the q-gram lemma: an alignment of
+	 * length L with identity p leaves at least {@code L - k + 1 - k(1 - p)L} windows of k identical columns, each a
+	 * k-mer the two sequences share. The Jaccard estimate is first raised by three standard errors. Repeated k-mers
+	 * count once in the sets, so the bound can be too low for low-complexity sequences.
+	 * 
+	 * @return The bound, or null if either isn't indexed
+	 */
+	public Double estimateMaxIdentity(String a, String b) {
+		int[] sa = signatures.get(a);
+		int[] sb = signatures.get(b);
+		if (sa == null || sb == null) return null;
+		double jaccard = estimateJaccard(sa, sb);
+		// the binomial error, floored at that of one hash so that an estimate of 0 still gets some slack
+		double error = Math.sqrt(Math.max(jaccard * (1 - jaccard), 1.0 / sa.length) / sa.length);
+		jaccard = Math.min(1, jaccard + 3 * error);
+		int lengthA = lengths.get(a);
+		int lengthB = lengths.get(b);
+		double shared = jaccard * (lengthA + lengthB - 2 * (k - 1)) / (1 + jaccard);
+		double maxIdentity = 1 - (1 - (shared + k - 1) / Math.max(lengthA, lengthB)) / k;
+		return Math.max(0, Math.min(1, maxIdentity));
+	}
+
+	public int getCandidateCount() {
+		if (candidates == null) throw new IllegalStateException("The index hasn't been built");
+		return candidates.size();
+	}
+
+	public int getNBands() {
+		return nBands;
+	}
+
+	public int getNRows() {
+		return nRows;
+	}
+
+	/**
+	 * @return The probability that a pair with Jaccard similarity {@code similarity} collides in at least one band
+	 */
+	public double getRecall(double similarity) {
+		return 1 - Math.pow(1 - Math.pow(similarity, nRows), nBands);
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * @return Whether {@code a} and {@code b} could be similar enough to be worth aligning
+	 */
+	public boolean isCandidate(String a, String b) {
+		if (candidates == null) throw new IllegalStateException("The index hasn't been built");
+		if (a.equals(b)) return true;
+		if (!signatures.containsKey(a) || !signatures.containsKey(b)) return true;
+		return candidates.contains(pairKey(a, b));
+	}
+
+	/**
+	 * @return Whether the estimate is checked for every pair, rather than for pairs that collide in a band
+	 */
+	public boolean isExhaustive() {
+		return isExhaustive;
+	}
+
+	public int size() {
+		return signatures.size();
+	}
+
+	private double estimateJaccard(int[] sa, int[] sb) {
+		int nEqual = 0;
+		for (int i = 0; i < sa.length; i++) {
+			if (sa[i] == sb[i]) nEqual++;
+		}
+		return (double) nEqual / (double) sa.length;
+	}
+
+	/**
+	 * @return The MinHash signature of the k-mers of {@code sequence}, or null if it is shorter than k
+	 */
+	private int[] signature(String sequence) {
+		if (sequence.length() < k) return null;
+		int[] signature = new int[seeds.length];
+		Arrays.fill(signature, Integer.MAX_VALUE);
+		for (int i = 0; i + k <= sequence.length(); i++) {
+			long shingle = 0;
+			for (int j = i; j < i + k; j++) {
+				shingle = shingle * 31 + Character.toUpperCase(sequence.charAt(j));
+			}
+			for (int h = 0; h < seeds.length; h++) {
+				int value = (int) mix(shingle ^ seeds[h]);
+				if (value < signature[h]) signature[h] = value;
+			}
+		}
+		return signature;
+	}
+
+}
@@ -16,7 +16,9 @@ package org.structnetalign.weight;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.logging.log4j.LogManager;
@@ -31,16 +33,37 @@ import org.biojava3.alignment.template.SequencePair;
 import org.biojava3.alignment.template.SubstitutionMatrix;
 import org.biojava3.core.sequence.ProteinSequence;
 import org.biojava3.core.sequence.compound.AminoAcidCompound;
-import org.biojava3.core.sequence.io.FastaReaderHelper;
+import org.structnetalign.util.BatchSequenceSource;
+import org.structnetalign.util.NetworkUtils;
+import org.structnetalign.util.SequenceSource;
+import org.structnetalign.util.SequenceSourceFactory;
 
 /**
  * A {@link Weight} that uses the <a href="http://linkinghub.elsevier.com/retrieve/pii/0022-2836(70)90057-4">global
  * sequence alignment</a> algorithm of Needleman and Wunsch and a {@link GammaScorer gamma distribution} for scoring.
+ * By default alignments use BioJava's {@link NeedlemanWunsch}; set {@code engine=primitive} in
+ * {@code nw_weights.properties} to use the much faster {@link PrimitiveNeedlemanWunsch} instead, which is meant to give
+ * the same fractional identity. Pairs whose length product exceeds {@code max_traceback_cells} are always aligned in
+ * linear space by {@link PrimitiveNeedlemanWunsch}, so that very long proteins don't need a quadratic matrix. Both the
+ * engine and that cutoff are part of the {@link #getParameterFingerprint() fingerprint}, so a {@link WeightCache}
+ * never hands back a weight calculated with a different choice of either. Sequences can be {@link #fetch() fetched}
+ * before the alignment, separately.
  * 
  * @author dmyersturnbull
  * 
  */
-public class NeedlemanWunschWeight implements AlignmentWeight {
+public class NeedlemanWunschWeight implements AlignmentWeight, BatchWeight, BudgetedWeight, FetchingWeight,
+		FingerprintedWeight {
+
+	private static PrimitiveNeedlemanWunsch ALIGNER;
+
+	private static long MAX_TRACEBACK_CELLS = PrimitiveNeedlemanWunsch.DEFAULT_MAX_TRACEBACK_CELLS;
+
+	private static boolean USE_BIOJAVA;
+
+	private static String FINGERPRINT;
+
+	private static long TIME_BUDGET;
 
 	private static GammaScorer GAMMA = GammaScorer.forBlosum62();
 
@@ -50,7 +73,8 @@ public class NeedlemanWunschWeight implements AlignmentWeight {
 
 	private static SubstitutionMatrix<AminoAcidCompound> MATRIX = SubstitutionMatrixHelper.getBlosum62();
 
-	private static String URL;
+	private String sequence1;
+	private String sequence2;
 
 	private String uniProtId1;
 	private String uniProtId2;
@@ -87,63 +111,210 @@ public class NeedlemanWunschWeight implements AlignmentWeight {
 			GAMMA = new GammaScorer(Double.parseDouble(alpha), Double.parseDouble(beta), Double.parseDouble(lambda));
 			logger.info("Setting new gamma distribution (" + alpha + "," + beta + "," + lambda + ")");
 		}
+		USE_BIOJAVA = !"primitive".equals(props.getProperty("engine"));
+		String maxTracebackCells = props.getProperty("max_traceback_cells");
+		if (maxTracebackCells != null) {
+			MAX_TRACEBACK_CELLS = Long.parseLong(maxTracebackCells);
+		}
+		String timeBudget = props.getProperty("time_budget");
+		if (timeBudget != null) {
+			TIME_BUDGET = Long.parseLong(timeBudget);
+		}
+		ALIGNER = flatten(MATRIX, GAP_PENALTY, MAX_TRACEBACK_CELLS);
+		FINGERPRINT = NetworkUtils.hash(String.valueOf(matrix), String.valueOf(gapOpen), String.valueOf(gapExtend),
+				String.valueOf(alpha), String.valueOf(beta), String.valueOf(lambda));
+		if (!USE_BIOJAVA) FINGERPRINT = NetworkUtils.hash(FINGERPRINT, "primitive"); // not yet checked to be the same
+		// whichever the engine, pairs over the cutoff are aligned in linear space by the primitive aligner
+		FINGERPRINT = NetworkUtils.hash(FINGERPRINT, String.valueOf(MAX_TRACEBACK_CELLS));
 
 	}
 
-	static {
-		Properties props = new Properties();
-		ClassLoader loader = Thread.currentThread().getContextClassLoader();
-		InputStream stream = loader.getResourceAsStream("databases.properties");
-		try {
-			props.load(stream);
-		} catch (IOException e) {
-			throw new RuntimeException("Couldn't open databases property file", e);
+	/**
+	 * Copies a BioJava matrix into a {@link PrimitiveNeedlemanWunsch}, over every compound the matrix's compound set
+	 * has a one-letter name for.
+	 */
+	static PrimitiveNeedlemanWunsch flatten(SubstitutionMatrix<AminoAcidCompound> matrix, GapPenalty gapPenalty,
+			long maxTracebackCells) {
+		List<AminoAcidCompound> compounds = new ArrayList<>();
+		for (AminoAcidCompound compound : matrix.getCompoundSet().getAllCompounds()) {
+			if (compound.getShortName().length() == 1) compounds.add(compound);
+		}
+		char[] alphabet = new char[compounds.size()];
+		int[] values = new int[compounds.size() * compounds.size()];
+		for (int i = 0; i < compounds.size(); i++) {
+			alphabet[i] = compounds.get(i).getShortName().charAt(0);
+			for (int j = 0; j < compounds.size(); j++) {
+				values[i * compounds.size() + j] = matrix.getValue(compounds.get(i), compounds.get(j));
+			}
 		}
-		URL = props.getProperty("uniprot_url");
+		return new PrimitiveNeedlemanWunsch(alphabet, values, gapPenalty.getOpenPenalty(),
+				gapPenalty.getExtensionPenalty(), maxTracebackCells);
 	}
 
-	private static ProteinSequence getSequenceForId(String uniProtId) throws Exception {
-		try (InputStream stream = new URL(String.format(URL, uniProtId)).openStream()) {
-			return FastaReaderHelper.readFastaProteinSequence(stream).get(uniProtId); // why does this throw Exception?
+	/**
+	 * @see SequenceSourceFactory
+	 */
+	private static String getSequenceForId(String uniProtId) throws Exception {
+		String sequence = SequenceSourceFactory.getSource().getSequence(uniProtId);
+		if (sequence == null) throw new IllegalArgumentException("No sequence found for " + uniProtId);
+		return sequence;
+	}
+
+	private static void warm(String uniProtId) {
+		try {
+			SequenceSourceFactory.getSource().getSequence(uniProtId);
+		} catch (IOException | RuntimeException e) {
+			logger.debug("Could not fetch FASTA sequence for " + uniProtId, e);
 		}
 	}
 
+	/**
+	 * @return The greatest weight any alignment can get from the {@link GammaScorer}, whatever its identity
+	 */
+	public static double getMaxWeight() {
+		return GAMMA.getMaxScore();
+	}
+
+	/**
+	 * @return The greatest weight an alignment with a fractional identity of at most {@code maxIdentity} can get
+	 */
+	public static double getMaxWeight(double maxIdentity) {
+		return GAMMA.getMaxScore(maxIdentity);
+	}
+
+	static double identityWithBioJava(String query, String target) {
+		ProteinSequence a = new ProteinSequence(query);
+		ProteinSequence b = new ProteinSequence(target);
+		NeedlemanWunsch<ProteinSequence, AminoAcidCompound> alg = new NeedlemanWunsch<>(a, b, GAP_PENALTY, MATRIX);
+		alg.setQuery(a);
+		alg.setTarget(b);
+		SequencePair<ProteinSequence, AminoAcidCompound> pair = alg.getPair();
+		PairwiseSequenceScorer<ProteinSequence, AminoAcidCompound> scorer = new FractionalIdentityScorer<>(pair);
+		return (double) scorer.getScore() / (double) scorer.getMaxScore();
+	}
+
 	@Override
 	public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
 		setIds(v1, v2, uniProtId1, uniProtId2);
 		return call().getWeight();
 	}
 
+	/**
+	 * Fetches and encodes the query sequence once for the whole block.
+	 */
 	@Override
-	public WeightResult call() throws Exception {
-		ProteinSequence a, b;
+	public double[] assignWeights(int v, String uniProtId, int[] targets, String[] targetUniProtIds) throws Exception {
+		String query;
 		try {
-			a = getSequenceForId(uniProtId1);
+			query = getSequenceForId(uniProtId);
 		} catch (Exception e) {
-			throw new WeightException("Could not get FASTA sequence for " + uniProtId1, v1, v2, uniProtId1, uniProtId2, true,
+			throw new WeightException("Could not get FASTA sequence for " + uniProtId, e, v, targets[0], uniProtId,
+					targetUniProtIds[0], true, false);
+		}
+		byte[] encoded = USE_BIOJAVA ? null : ALIGNER.encode(query);
+		double[] weights = new double[targets.length];
+		for (int i = 0; i < targets.length; i++) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedException("Cancelled aligning " + uniProtId + " against a block");
+			}
+			try {
+				String target = getSequenceForId(targetUniProtIds[i]);
+				double score;
+				if (encoded == null) {
+					score = (long) query.length() * target.length() <= MAX_TRACEBACK_CELLS ? identityWithBioJava(query,
+							target) : ALIGNER.align(query, target).getIdentity();
+				} else {
+					score = ALIGNER.align(encoded, ALIGNER.encode(target)).getIdentity();
+				}
+				weights[i] = GAMMA.score(score);
+			} catch (Exception e) {
+				logger.debug("Could not align " + uniProtId + " against " + targetUniProtIds[i], e);
+				weights[i] = Double.NaN;
+			}
+		}
+		return weights;
+	}
+
+	@Override
+	public void fetch() throws WeightException {
+		try {
+			sequence1 = getSequenceForId(uniProtId1);
+		} catch (Exception e) {
+			throw new WeightException("Could not get FASTA sequence for " + uniProtId1, e, v1, v2, uniProtId1, uniProtId2, true,
 					false);
 		}
 		try {
-			b = getSequenceForId(uniProtId2);
+			sequence2 = getSequenceForId(uniProtId2);
 		} catch (Exception e) {
-			throw new WeightException("Could not get FASTA sequence for " + uniProtId1, v1, v2, uniProtId1, uniProtId2, true,
+			throw new WeightException("Could not get FASTA sequence for " + uniProtId2, e, v1, v2, uniProtId1, uniProtId2, true,
 					false);
 		}
-		NeedlemanWunsch<ProteinSequence, AminoAcidCompound> alg = new NeedlemanWunsch<>(a, b, GAP_PENALTY, MATRIX);
-		alg.setQuery(a);
-		alg.setTarget(b);
-		SequencePair<ProteinSequence, AminoAcidCompound> pair = alg.getPair();
-		PairwiseSequenceScorer<ProteinSequence, AminoAcidCompound> scorer = new FractionalIdentityScorer<>(pair);
-		double score = (double) scorer.getScore() / (double) scorer.getMaxScore();
-		double prob = GAMMA.score(pair, score);
+	}
+
+	/**
+	 * Relies on the {@link SequenceSourceFactory source} keeping what it has fetched, as
+	 * {@link org.structnetalign.util.UniProtSequenceSource} does. Uses one call for the whole block if the source is a
+	 * {@link BatchSequenceSource}.
+	 */
+	@Override
+	public void fetchAll(String uniProtId, String[] targetUniProtIds) {
+		SequenceSource source = SequenceSourceFactory.getSource();
+		if (source instanceof BatchSequenceSource) {
+			List<String> ids = new ArrayList<>(targetUniProtIds.length + 1);
+			ids.add(uniProtId);
+			ids.addAll(Arrays.asList(targetUniProtIds));
+			try {
+				((BatchSequenceSource) source).getSequences(ids);
+				return;
+			} catch (IOException | RuntimeException e) {
+				logger.debug("Could not fetch FASTA sequences for a block for " + uniProtId + "; fetching them separately", e);
+			}
+		}
+		warm(uniProtId);
+		for (String id : targetUniProtIds) {
+			warm(id);
+		}
+	}
+
+	@Override
+	public String getParameterFingerprint() {
+		return FINGERPRINT;
+	}
+
+	@Override
+	public WeightResult call() throws Exception {
+		if (sequence1 == null || sequence2 == null) fetch();
+		String a = sequence1, b = sequence2;
+		double score;
+		try {
+			if (USE_BIOJAVA && (long) a.length() * b.length() <= MAX_TRACEBACK_CELLS) {
+				score = identityWithBioJava(a, b);
+			} else {
+				score = ALIGNER.align(a, b).getIdentity();
+			}
+		} catch (IllegalArgumentException e) {
+			throw new WeightException("Could not align " + uniProtId1 + " against " + uniProtId2, e, v1, v2,
+					uniProtId1, uniProtId2, true, false);
+		}
+		double prob = GAMMA.score(score);
 		return new WeightResult(prob, v1, v2, uniProtId1, uniProtId2, this.getClass());
 	}
 
+	/**
+	 * @return The {@code time_budget} from {@code nw_weights.properties}, in milliseconds
+	 */
+	@Override
+	public long getTimeBudget() {
+		return TIME_BUDGET;
+	}
+
 	@Override
 	public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
 		this.v1 = v1;
 		this.v2 = v2;
 		this.uniProtId1 = uniProtId1;
 		this.uniProtId2 = uniProtId2;
+		sequence1 = null;
+		sequence2 = null;
 	}
 }
@@ -17,30 +17,30 @@ package org.structnetalign.weight;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
 import java.util.Properties;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.biojava.bio.structure.Atom;
 import org.biojava.bio.structure.StructureException;
 import org.biojava.bio.structure.align.model.AFPChain;
 import org.biojava.bio.structure.align.util.AFPChainScorer;
-import org.biojava.bio.structure.align.util.AtomCache;
 import org.biojava.bio.structure.align.xml.AFPChainXMLParser;
+import org.structnetalign.util.HttpClientFactory;
 import org.structnetalign.util.IdentifierMappingFactory;
+import org.structnetalign.util.NetworkUtils;
 
 /**
  * A simple {@link AlignmentWeight} that downloads pre-calculated FATCAT structural alignments from <a
  * href="http://rcsb.org">RCSB</a> and uses the TM-score of the alignment as the weight. Unfortunately it needs to load the PDB structure,
  * download the entire AFPChain XML representation, and re-apply the alignment transformation, so it isn't super-fast.
+ * The structures and the XML can be {@link #fetch() fetched} before the transformation, separately.
  *
  * @author dmyersturnbull
  * 
  */
-public class PrecalculatedFatcatWeight implements AlignmentWeight {
+public class PrecalculatedFatcatWeight implements AlignmentWeight, BudgetedWeight, FetchingWeight,
+		FingerprintedWeight, KeyedWeight {
 
 	private static final Logger logger = LogManager.getLogger("org.structnetalign");
 
@@ -48,6 +48,12 @@ public class PrecalculatedFatcatWeight implements AlignmentWeight {
 	private static String BASE_URL;
 	private static String PARAM;
 	private static int TIMEOUT = DEFAULT_TIMEOUT;
+	private static long TIME_BUDGET;
+	private static boolean USE_PRIMITIVE_TM_SCORER;
+
+	private Atom[] atoms1;
+
+	private Atom[] atoms2;
 
 	private String pdbIdAndChain1;
 
@@ -59,6 +65,8 @@ public class PrecalculatedFatcatWeight implements AlignmentWeight {
 
 	private int v2;
 
+	private String xml;
+
 	static {
 		Properties props = new Properties();
 		ClassLoader loader = Thread.currentThread().getContextClassLoader();
@@ -85,6 +93,11 @@ public class PrecalculatedFatcatWeight implements AlignmentWeight {
 			TIMEOUT = Integer.parseInt(timeout);
 			logger.info("Setting precalculated FATCAT timeout to " + timeout);
 		}
+		String timeBudget = props.getProperty("time_budget");
+		if (timeBudget != null) {
+			TIME_BUDGET = Long.parseLong(timeBudget);
+		}
+		USE_PRIMITIVE_TM_SCORER = "primitive".equals(props.getProperty("tm_scorer"));
 	}
 
 	@Override
@@ -93,38 +106,81 @@ public class PrecalculatedFatcatWeight implements AlignmentWeight {
 		return call().getWeight();
 	}
 
+	@Override
+	public String getParameterFingerprint() {
+		String fingerprint = NetworkUtils.hash(BASE_URL, PARAM);
+		if (USE_PRIMITIVE_TM_SCORER) fingerprint = NetworkUtils.hash(fingerprint, "primitive"); // not yet checked
+		return fingerprint;
+	}
+
+	/**
+	 * @return The two PDB chains, since the alignment depends only on them
+	 */
+	@Override
+	public String getResultKey() {
+		if (pdbIdAndChain1 == null || pdbIdAndChain2 == null) return null;
+		return pdbIdAndChain1 + "\t" + pdbIdAndChain2;
+	}
+
 	@Override
 	public WeightResult call() throws Exception {
-		final AtomCache cache = AtomCacheFactory.getCache();
-		Atom[] ca1, ca2;
+		if (atoms1 == null || atoms2 == null || xml == null) fetch();
+		AFPChain afpChain;
 		try {
-			ca1 = cache.getAtoms(pdbIdAndChain1);
+			afpChain = load(xml, atoms1, atoms2);
+		} catch (StructureException e) {
+			throw new WeightException("Could not get complete AFPChain for " + pdbIdAndChain2 + " for " + uniProtId2,
+					e, v1, v2, uniProtId1, uniProtId2, true, true);
+		}
+		if (afpChain.getTMScore() == -1) throw new WeightException("TM-score not calculated for the alignment of "
+				+ pdbIdAndChain1 + " against " + pdbIdAndChain2, v1, v2, uniProtId1, uniProtId2, true, true);
+		return new WeightResult(afpChain.getTMScore(), v1, v2, uniProtId1, uniProtId2, this.getClass());
+	}
+
+	/**
+	 * @return The {@code time_budget} from {@code precalc_fatcat_weights.properties}, in milliseconds
+	 */
+	@Override
+	public long getTimeBudget() {
+		return TIME_BUDGET;
+	}
+
+	@Override
+	public void fetch() throws WeightException {
+		final StructureCache cache = AtomCacheFactory.getStructureCache();
+		try {
+			atoms1 = cache.getAtoms(pdbIdAndChain1);
 		} catch (IOException | StructureException e) {
 			throw new WeightException("Could not parse structure for PDB entry " + pdbIdAndChain1 + " for "
 					+ uniProtId1, e, v1, v2, uniProtId1, uniProtId2, true, true);
 		}
 		try {
-			ca2 = cache.getAtoms(pdbIdAndChain2);
+			atoms2 = cache.getAtoms(pdbIdAndChain2);
 		} catch (IOException | StructureException e) {
 			throw new WeightException("Could not parse structure for PDB entry " + pdbIdAndChain2 + " for "
 					+ uniProtId2, e, v1, v2, uniProtId1, uniProtId2, true, true);
 		}
-		AFPChain afpChain;
 		try {
-			afpChain = load(pdbIdAndChain1, pdbIdAndChain2, ca1, ca2);
+			xml = download(pdbIdAndChain1, pdbIdAndChain2);
 		} catch (MalformedURLException e) {
 			throw new WeightException("Could not create URL for " + pdbIdAndChain2 + " for " + uniProtId2, e, v1, v2,
 					uniProtId1, uniProtId2, true, true);
 		} catch (IOException e) {
 			throw new WeightException("Could not read stream for " + pdbIdAndChain2 + " for " + uniProtId2, e, v1, v2,
 					uniProtId1, uniProtId2, true, true);
-		} catch (StructureException e) {
-			throw new WeightException("Could not get complete AFPChain for " + pdbIdAndChain2 + " for " + uniProtId2,
-					e, v1, v2, uniProtId1, uniProtId2, true, true);
 		}
-		if (afpChain.getTMScore() == -1) throw new WeightException("TM-score not calculated for the alignment of "
-				+ pdbIdAndChain1 + " against " + pdbIdAndChain2, v1, v2, uniProtId1, uniProtId2, true, true);
-		return new WeightResult(afpChain.getTMScore(), v1, v2, uniProtId1, uniProtId2, this.getClass());
+	}
+
+	/**
+	 * Loads each structure into the {@link AtomCacheFactory#getStructureCache() structure cache}; the alignments
+	 * themselves depend on the pair.
+	 */
+	@Override
+	public void fetchAll(String uniProtId, String[] targetUniProtIds) {
+		warm(uniProtId);
+		for (String id : targetUniProtIds) {
+			warm(id);
+		}
 	}
 
 	@Override
@@ -134,6 +190,9 @@ public class PrecalculatedFatcatWeight implements AlignmentWeight {
 		this.v2 = v2;
 		this.uniProtId1 = uniProtId1;
 		this.uniProtId2 = uniProtId2;
+		atoms1 = null;
+		atoms2 = null;
+		xml = null;
 
 		pdbIdAndChain1 = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId1);
 		if (pdbIdAndChain1 == null) throw new WeightException("Could not find PDB Id for " + uniProtId1, v1, v2,
@@ -144,20 +203,34 @@ public class PrecalculatedFatcatWeight implements AlignmentWeight {
 
 	}
 
-	private AFPChain load(String id1, String id2, Atom[] ca1, Atom[] ca2) throws IOException, StructureException, WeightException {
-		URL url = new URL(BASE_URL + "&" + PARAM + "=" + id1 + "&" + PARAM + "=" + id2);
-		URLConnection conn = url.openConnection();
-		conn.setReadTimeout(TIMEOUT);
-		logger.debug("Loading AFPChain from URL " + url);
-		String string;
-		try (InputStream is = conn.getInputStream()) {
-			string = IOUtils.toString(is, "UTF-8"); // thanks Apache Commons!
+	private static void warm(String uniProtId) {
+		String pdbIdAndChain = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId);
+		if (pdbIdAndChain == null) return;
+		try {
+			AtomCacheFactory.getStructureCache().getAtoms(pdbIdAndChain);
+		} catch (IOException | StructureException | RuntimeException e) {
+			logger.debug("Could not fetch structure " + pdbIdAndChain + " for " + uniProtId, e);
 		}
+	}
+
+	/**
+	 * The service only takes one pair per request, but the connection is reused.
+	 * 
+	 * @see HttpClientFactory
+	 */
+	private String download(String id1, String id2) throws IOException {
+		String url = BASE_URL + "&" + PARAM + "=" + id1 + "&" + PARAM + "=" + id2;
+		logger.debug("Loading AFPChain from URL " + url);
+		return HttpClientFactory.getClient().get(url, TIMEOUT);
+	}
+
+	private AFPChain load(String string, Atom[] ca1, Atom[] ca2) throws StructureException, WeightException {
 		AFPChain afpChain = AFPChainXMLParser.fromXML(string, ca1, ca2);
 		if (afpChain == null) throw new WeightException("Got null AFPChain for " + uniProtId2, v1, v2,
 				uniProtId1, uniProtId2, true, true);
-		// now we need to rotate to make the structure match the alignment
-		double tmScore = AFPChainScorer.getTMScore(afpChain, ca1, ca2);
+		// now we need to rotate to make the structure match the alignment, unless the primitive scorer is used
+		double tmScore = USE_PRIMITIVE_TM_SCORER ? PrimitiveTmScorer.getTMScore(afpChain, ca1, ca2)
+				: AFPChainScorer.getTMScore(afpChain, ca1, ca2);
 		afpChain.setTMScore(tmScore);
 		return afpChain;
 	}
@@ -0,0 +1,379 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A read-only table of alignment scores computed ahead of time, such as all-vs-all TM-scores, keyed by unordered pairs
+ * of UniProt Ids. Tables are written by a {@link Builder}, usually from the tabular output of an alignment tool (see
+ * {@link #main(String[])}), and are memory-mapped when opened, so a lookup is two binary searches and touches only a
+ * few pages of the file. Lookups are thread-safe.
+ * <p>
+ * The file is a header of five ints (a magic number, the version, the number of Ids, the number of pairs, and the
+ * length in bytes of the Id block), the sorted UniProt Ids (each an unsigned short length and its UTF-8 bytes), the
+ * sorted pairs as longs (the index of the first Id in the high half and the greater index in the low half), and then
+ * the score of each pair as a float.
+ * 
+ * @author dmyersturnbull
+ */
+public class PrecomputedAlignmentTable implements Closeable {
+
+	/**
+	 * Collects scores and writes them as a table. Scores must be in [0, 1], since they're used as probabilities of
+	 * homology; where a pair is given more than once (in both directions, for example), the greatest score is kept.
+	 */
+	public static class Builder {
+
+		private final Map<String, Integer> ids = new HashMap<>();
+
+		private long[] keys = new long[1024];
+
+		private int n;
+
+		private float[] scores = new float[1024];
+
+		public void add(String uniProtIdA, String uniProtIdB, double score) {
+			if (score < 0 || score > 1) throw new IllegalArgumentException("The score " + score + " for ("
+					+ uniProtIdA + ", " + uniProtIdB + ") is not in [0, 1]");
+			if (uniProtIdA.equals(uniProtIdB)) return;
+			if (n == keys.length) {
+				keys = Arrays.copyOf(keys, 2 * n);
+				scores = Arrays.copyOf(scores, 2 * n);
+			}
+			keys[n] = (long) indexOf(uniProtIdA) << 32 | indexOf(uniProtIdB);
+			scores[n] = (float) score;
+			n++;
+		}
+
+		/**
+		 * Adds every row of a whitespace-delimited file, such as BLAST's {@code -outfmt 6} or a table of TM-scores.
+		 * Blank lines and lines starting with {@code #} are skipped, as is a first line whose score isn't a number.
+		 * Ids of the form {@code sp|P12345|NAME} are reduced to the accession.
+		 * 
+		 * @param queryColumn
+		 *            The 0-based column of the query's UniProt Id
+		 * @param targetColumn
+		 *            The 0-based column of the target's UniProt Id
+		 * @param scoreColumn
+		 *            The 0-based column of the score
+		 * @return The number of rows added
+		 */
+		public int addTabular(File file, int queryColumn, int targetColumn, int scoreColumn) throws IOException {
+			return addTabular(file, queryColumn, targetColumn, scoreColumn, 1);
+		}
+
+		/**
+		 * Like {@link #addTabular(File, int, int, int)}, but divides each score by {@code divisor} first; 100 for
+		 * percentages such as the identity in BLAST's {@code -outfmt 6}.
+		 */
+		public int addTabular(File file, int queryColumn, int targetColumn, int scoreColumn, double divisor)
+				throws IOException {
+			int nRows = 0;
+			int lineNumber = 0;
+			boolean isFirst = true;
+			try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+				String line;
+				while ((line = br.readLine()) != null) {
+					lineNumber++;
+					line = line.trim();
+					if (line.isEmpty() || line.startsWith("#")) continue;
+					String[] parts = line.split("\\s+");
+					if (parts.length <= Math.max(scoreColumn, Math.max(queryColumn, targetColumn))) {
+						throw new IOException("Line " + lineNumber + " of " + file + " has only " + parts.length
+								+ " columns");
+					}
+					double score;
+					try {
+						score = Double.parseDouble(parts[scoreColumn]);
+					} catch (NumberFormatException e) {
+						if (isFirst) {
+							isFirst = false;
+							continue; // a header
+						}
+						throw new IOException("Score " + parts[scoreColumn] + " on line " + lineNumber + " of " + file
+								+ " is not a number", e);
+					}
+					isFirst = false;
+					try {
+						add(parseId(parts[queryColumn]), parseId(parts[targetColumn]), score / divisor);
+					} catch (IllegalArgumentException e) {
+						throw new IOException("Bad score on line " + lineNumber + " of " + file, e);
+					}
+					nRows++;
+				}
+			}
+			logger.info("Read " + nRows + " alignment scores from " + file);
+			return nRows;
+		}
+
+		/**
+		 * Writes the table to {@code file}, replacing it.
+		 */
+		public void write(File file) throws IOException {
+
+			// number the Ids in sorted order
+			String[] sorted = ids.keySet().toArray(new String[ids.size()]);
+			Arrays.sort(sorted);
+			int[] rank = new int[sorted.length];
+			for (int i = 0; i < sorted.length; i++) {
+				rank[ids.get(sorted[i])] = i;
+			}
+			long[] myKeys = new long[n];
+			float[] myScores = Arrays.copyOf(scores, n);
+			for (int i = 0; i < n; i++) {
+				myKeys[i] = pack(rank[(int) (keys[i] >>> 32)], rank[(int) keys[i]]);
+			}
+			sort(myKeys, myScores, 0, n - 1);
+
+			// keep the greatest score of each pair
+			int nDistinct = 0;
+			for (int i = 0; i < n; i++) {
+				if (nDistinct > 0 && myKeys[nDistinct - 1] == myKeys[i]) {
+					myScores[nDistinct - 1] = Math.max(myScores[nDistinct - 1], myScores[i]);
+				} else {
+					myKeys[nDistinct] = myKeys[i];
+					myScores[nDistinct] = myScores[i];
+					nDistinct++;
+				}
+			}
+
+			byte[][] encoded = new byte[sorted.length][];
+			int idBytes = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				encoded[i] = sorted[i].getBytes(UTF_8);
+				idBytes += 2 + encoded[i].length;
+			}
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(sorted.length);
+				out.writeInt(nDistinct);
+				out.writeInt(idBytes);
+				for (byte[] id : encoded) {
+					out.writeShort(id.length);
+					out.write(id);
+				}
+				for (int i = 0; i < nDistinct; i++) {
+					out.writeLong(myKeys[i]);
+				}
+				for (int i = 0; i < nDistinct; i++) {
+					out.writeFloat(myScores[i]);
+				}
+			}
+			logger.info("Wrote " + nDistinct + " alignment scores for " + sorted.length + " proteins to " + file);
+		}
+
+		private int indexOf(String uniProtId) {
+			Integer index = ids.get(uniProtId);
+			if (index == null) {
+				index = ids.size();
+				ids.put(uniProtId, index);
+			}
+			return index;
+		}
+
+	}
+
+	private static final int HEADER_LENGTH = 20;
+
+	private static final int MAGIC = 0x534e4154; // SNAT
+
+	private static final int VERSION = 1;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private final FileChannel channel;
+
+	private final File file;
+
+	private final String[] ids;
+
+	private final LongBuffer keys;
+
+	private final FloatBuffer scores;
+
+	public static void main(String[] args) throws IOException {
+		boolean isPercent = args.length > 0 && args[0].equals("-percent");
+		int first = isPercent ? 1 : 0;
+		if (args.length < first + 5) {
+			System.err.println("Usage: " + PrecomputedAlignmentTable.class.getSimpleName()
+					+ " [-percent] output-file query-column target-column score-column input-file...");
+			System.err.println("Columns are numbered from 1. Scores must be from 0 to 1, or 0 to 100 with -percent.");
+			System.err.println("For the percent identity in column 3 of BLAST -outfmt 6, use -percent out.bin 1 2 3.");
+			return;
+		}
+		int queryColumn = Integer.parseInt(args[first + 1]) - 1;
+		int targetColumn = Integer.parseInt(args[first + 2]) - 1;
+		int scoreColumn = Integer.parseInt(args[first + 3]) - 1;
+		Builder builder = new Builder();
+		for (int i = first + 4; i < args.length; i++) {
+			builder.addTabular(new File(args[i]), queryColumn, targetColumn, scoreColumn, isPercent ? 100 : 1);
+		}
+		builder.write(new File(args[first]));
+	}
+
+	static long pack(int indexA, int indexB) {
+		return indexA < indexB ? (long) indexA << 32 | indexB : (long) indexB << 32 | indexA;
+	}
+
+	private static String parseId(String id) {
+		String[] parts = id.split("\\|");
+		if (parts.length >= 2 && (parts[0].equals("sp") || parts[0].equals("tr"))) return parts[1];
+		return id;
+	}
+
+	/**
+	 * Sorts {@code keys} between {@code from} and {@code to} (inclusive), moving {@code scores} with them.
+	 */
+	private static void sort(long[] keys, float[] scores, int from, int to) {
+		while (from < to) {
+			long pivot = keys[from + (to - from) / 2];
+			int i = from, j = to;
+			while (i <= j) {
+				while (keys[i] < pivot) i++;
+				while (keys[j] > pivot) j--;
+				if (i <= j) {
+					long key = keys[i];
+					keys[i] = keys[j];
+					keys[j] = key;
+					float score = scores[i];
+					scores[i] = scores[j];
+					scores[j] = score;
+					i++;
+					j--;
+				}
+			}
+			// recurse on the smaller side to bound the stack
+			if (j - from < to - i) {
+				sort(keys, scores, from, j);
+				from = i;
+			} else {
+				sort(keys, scores, i, to);
+				to = j;
+			}
+		}
+	}
+
+	/**
+	 * Opens and maps a table written by a {@link Builder}.
+	 */
+	@SuppressWarnings("resource")
+	public PrecomputedAlignmentTable(File file) throws IOException {
+		this.file = file;
+		channel = new RandomAccessFile(file, "r").getChannel();
+		try {
+			if (channel.size() < HEADER_LENGTH) throw new IOException(file + " is not a precomputed alignment table");
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_LENGTH);
+			if (header.getInt() != MAGIC) throw new IOException(file + " is not a precomputed alignment table");
+			int version = header.getInt();
+			if (version != VERSION) throw new IOException(file + " has version " + version + ", not " + VERSION);
+			int nIds = header.getInt();
+			int nPairs = header.getInt();
+			int idBytes = header.getInt();
+			long keyStart = HEADER_LENGTH + idBytes;
+			long scoreStart = keyStart + 8L * nPairs;
+			if (channel.size() != scoreStart + 4L * nPairs) throw new IOException(file + " is truncated");
+			ByteBuffer idBlock = channel.map(MapMode.READ_ONLY, HEADER_LENGTH, idBytes);
+			ids = new String[nIds];
+			for (int i = 0; i < nIds; i++) {
+				byte[] id = new byte[idBlock.getShort() & 0xffff];
+				idBlock.get(id);
+				ids[i] = new String(id, UTF_8);
+			}
+			keys = channel.map(MapMode.READ_ONLY, keyStart, 8L * nPairs).asLongBuffer();
+			scores = channel.map(MapMode.READ_ONLY, scoreStart, 4L * nPairs).asFloatBuffer();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		logger.info("Opened precomputed alignment table " + file + " with " + size() + " scores for " + ids.length
+				+ " proteins");
+	}
+
+	/**
+	 * Closes the file. The mapping itself is released when the table is garbage-collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * @return Whether {@code uniProtId} is in any pair
+	 */
+	public boolean contains(String uniProtId) {
+		return Arrays.binarySearch(ids, uniProtId) >= 0;
+	}
+
+	/**
+	 * @return The score of the pair in either order, or {@link Double#NaN} if it isn't in the table
+	 */
+	public double get(String uniProtIdA, String uniProtIdB) {
+		int a = Arrays.binarySearch(ids, uniProtIdA);
+		if (a < 0) return Double.NaN;
+		int b = Arrays.binarySearch(ids, uniProtIdB);
+		if (b < 0) return Double.NaN;
+		long key = pack(a, b);
+		int low = 0, high = keys.limit() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long midKey = keys.get(mid); // absolute, so concurrent readers don't interfere
+			if (midKey < key) {
+				low = mid + 1;
+			} else if (midKey > key) {
+				high = mid - 1;
+			} else {
+				return scores.get(mid);
+			}
+		}
+		return Double.NaN;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return The number of pairs
+	 */
+	public int size() {
+		return keys.limit();
+	}
+
+}
@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.Arrays;
+
+/**
+ * An {@link AlignmentWeight} that looks up a score in a {@link PrecomputedAlignmentTable}, such as all-vs-all
+ * TM-scores from a structural genomics pipeline. A lookup takes microseconds, so this is worth trying before anything
+ * that aligns. {@link #setIds(int, int, String, String)} fails for pairs that aren't in the table, so a
+ * {@link WeightCreator} can move on to its next weight right away.
+ * 
+ * @author dmyersturnbull
+ */
+public class PrecomputedAlignmentWeight implements AlignmentWeight, BatchWeight {
+
+	private double score;
+
+	private final PrecomputedAlignmentTable table;
+
+	private String uniProtId1;
+
+	private String uniProtId2;
+
+	private int v1;
+
+	private int v2;
+
+	public PrecomputedAlignmentWeight(PrecomputedAlignmentTable table) {
+		this.table = table;
+	}
+
+	@Override
+	public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+		setIds(v1, v2, uniProtId1, uniProtId2);
+		return call().getWeight();
+	}
+
+	@Override
+	public double[] assignWeights(int v, String uniProtId, int[] targets, String[] targetUniProtIds) throws Exception {
+		double[] weights = new double[targets.length];
+		if (!table.contains(uniProtId)) {
+			Arrays.fill(weights, Double.NaN);
+			return weights;
+		}
+		for (int i = 0; i < targets.length; i++) {
+			weights[i] = table.get(uniProtId, targetUniProtIds[i]);
+		}
+		return weights;
+	}
+
+	@Override
+	public WeightResult call() throws Exception {
+		return new WeightResult(score, v1, v2, uniProtId1, uniProtId2, this.getClass());
+	}
+
+	@Override
+	public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
+		this.v1 = v1;
+		this.v2 = v2;
+		this.uniProtId1 = uniProtId1;
+		this.uniProtId2 = uniProtId2;
+		score = table.get(uniProtId1, uniProtId2);
+		if (Double.isNaN(score)) throw new WeightException("No precomputed alignment of " + uniProtId1 + " against "
+				+ uniProtId2 + " in " + table.getFile(), v1, v2, uniProtId1, uniProtId2, true, false);
+	}
+
+}
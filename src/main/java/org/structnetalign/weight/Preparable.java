@@ -0,0 +1,37 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Something (normally a {@link WeightCreator}) that needs to see every vertex before weighting begins, for example to
+ * build an index. A {@link WeightManager} calls {@link #prepare(Collection, Map)} once, before it asks for any
+ * {@link Weight Weights}.
+ * 
+ * @author dmyersturnbull
+ */
+public interface Preparable {
+
+	/**
+	 * @param vertices
+	 *            The PSI-MI XML Ids of every vertex that will be weighted
+	 * @param uniProtIds
+	 *            A map of each vertex to its UniProt Id
+	 */
+	void prepare(Collection<Integer> vertices, Map<Integer, String> uniProtIds);
+
+}
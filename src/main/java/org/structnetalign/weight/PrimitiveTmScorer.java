@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import org.biojava.bio.structure.Atom;
+import org.biojava.bio.structure.align.model.AFPChain;
+
+/**
+ * Calculates the TM-score of an alignment on packed coordinates, without making or rotating any {@link Atom Atoms}. The
+ * aligned coordinates are gathered into per-thread buffers that are reused between alignments, superposed with Horn's
+ * closed-form quaternion method, and scored in place, so scoring an alignment allocates nothing once the buffers are
+ * big enough.
+ * <p>
+ * The result is the same as BioJava's {@link org.biojava.bio.structure.align.util.AFPChainScorer#getTMScore(AFPChain,
+ * Atom[], Atom[])} to within rounding: both find the superposition of the aligned pairs that minimizes the RMSD, and
+ * score it with {@code d0 = 1.24 (Lmin - 15)^(1/3) - 1.8}, normalized by the length of the shorter chain. Until
+ * that's been checked against the BioJava jars, {@link CeWeight} and {@link PrecalculatedFatcatWeight} only use it if
+ * {@code tm_scorer=primitive} is set in their properties files.
+ * <p>
+ * Thread-safe.
+ * 
+ * @author dmyersturnbull
+ */
+public class PrimitiveTmScorer {
+
+	private static class Buffers {
+		double[] fixed = new double[0];
+		double[] moving = new double[0];
+		final double[] n = new double[16];
+		final double[] v = new double[16];
+
+		void ensure(int nAligned) {
+			if (fixed.length < 3 * nAligned) {
+				fixed = new double[3 * nAligned];
+				moving = new double[3 * nAligned];
+			}
+		}
+	}
+
+	private static final int MAX_SWEEPS = 50;
+
+	private static final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+		@Override
+		protected Buffers initialValue() {
+			return new Buffers();
+		}
+	};
+
+	/**
+	 * Scores the optimal alignment of {@code afpChain}, reading only the coordinates of the atoms.
+	 * 
+	 * @return The TM-score, or -1 if nothing is aligned (as from BioJava)
+	 */
+	public static double getTMScore(AFPChain afpChain, Atom[] ca1, Atom[] ca2) {
+		if (afpChain.getNrEQR() == 0) return -1;
+		int[] blockLengths = afpChain.getOptLen();
+		int[][][] optAln = afpChain.getOptAln();
+		int nAligned = 0;
+		for (int block = 0; block < afpChain.getBlockNum(); block++) {
+			nAligned += blockLengths[block];
+		}
+		Buffers b = buffers.get();
+		b.ensure(nAligned);
+		int k = 0;
+		for (int block = 0; block < afpChain.getBlockNum(); block++) {
+			for (int i = 0; i < blockLengths[block]; i++) {
+				Atom a1 = ca1[optAln[block][0][i]];
+				Atom a2 = ca2[optAln[block][1][i]];
+				b.fixed[3 * k] = a1.getX();
+				b.fixed[3 * k + 1] = a1.getY();
+				b.fixed[3 * k + 2] = a1.getZ();
+				b.moving[3 * k] = a2.getX();
+				b.moving[3 * k + 1] = a2.getY();
+				b.moving[3 * k + 2] = a2.getZ();
+				k++;
+			}
+		}
+		return score(b, nAligned, ca1.length, ca2.length);
+	}
+
+	/**
+	 * Scores an alignment of two chains given as packed coordinates.
+	 * 
+	 * @param coordinates1
+	 *            The x, y, and z of each CA atom of the first chain in turn
+	 * @param coordinates2
+	 *            The same for the second chain
+	 * @param aligned1
+	 *            The indices in the first chain of the aligned residues
+	 * @param aligned2
+	 *            The indices in the second chain of the residues aligned to those in {@code aligned1}
+	 * @param nAligned
+	 *            The number of aligned pairs to read from {@code aligned1} and {@code aligned2}
+	 * @return The TM-score, or -1 if nothing is aligned
+	 */
+	public static double getTMScore(double[] coordinates1, double[] coordinates2, int[] aligned1, int[] aligned2,
+			int nAligned) {
+		if (nAligned == 0) return -1;
+		Buffers b = buffers.get();
+		b.ensure(nAligned);
+		for (int k = 0; k < nAligned; k++) {
+			System.arraycopy(coordinates1, 3 * aligned1[k], b.fixed, 3 * k, 3);
+			System.arraycopy(coordinates2, 3 * aligned2[k], b.moving, 3 * k, 3);
+		}
+		return score(b, nAligned, coordinates1.length / 3, coordinates2.length / 3);
+	}
+
+	/**
+	 * Finds the eigenvector of the largest eigenvalue of a symmetric 4x4 matrix by cyclic Jacobi rotations.
+	 * 
+	 * @param m
+	 *            The matrix in row-major order; destroyed
+	 * @param v
+	 *            Receives the eigenvectors as columns
+	 * @return The index of the column of {@code v} holding the eigenvector
+	 */
+	private static int largestEigenvector(double[] m, double[] v) {
+		for (int i = 0; i < 16; i++) {
+			v[i] = i % 5 == 0 ? 1 : 0;
+		}
+		for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+			double off = 0, norm = 0;
+			for (int p = 0; p < 4; p++) {
+				norm += Math.abs(m[5 * p]);
+				for (int q = p + 1; q < 4; q++) {
+					off += Math.abs(m[4 * p + q]);
+				}
+			}
+			if (off <= 1e-15 * norm) break;
+			for (int p = 0; p < 3; p++) {
+				for (int q = p + 1; q < 4; q++) {
+					double mpq = m[4 * p + q];
+					if (mpq == 0) continue;
+					double theta = (m[5 * q] - m[5 * p]) / (2 * mpq);
+					double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+					if (theta == 0) t = 1;
+					double c = 1 / Math.sqrt(t * t + 1);
+					double s = t * c;
+					for (int k = 0; k < 4; k++) { // columns p and q
+						double mkp = m[4 * k + p], mkq = m[4 * k + q];
+						m[4 * k + p] = c * mkp - s * mkq;
+						m[4 * k + q] = s * mkp + c * mkq;
+						double vkp = v[4 * k + p], vkq = v[4 * k + q];
+						v[4 * k + p] = c * vkp - s * vkq;
+						v[4 * k + q] = s * vkp + c * vkq;
+					}
+					for (int k = 0; k < 4; k++) { // rows p and q
+						double mpk = m[4 * p + k], mqk = m[4 * q + k];
+						m[4 * p + k] = c * mpk - s * mqk;
+						m[4 * q + k] = s * mpk + c * mqk;
+					}
+				}
+			}
+		}
+		int best = 0;
+		for (int p = 1; p < 4; p++) {
+			if (m[5 * p] > m[5 * best]) best = p;
+		}
+		return best;
+	}
+
+	/**
+	 * Superposes the moving coordinates onto the fixed ones and scores the result. Both are centered in place.
+	 */
+	private static double score(Buffers b, int nAligned, int length1, int length2) {
+
+		int lMin = Math.min(length1, length2);
+		if (nAligned > lMin) throw new IllegalArgumentException(nAligned + " pairs can't be aligned in chains of "
+				+ length1 + " and " + length2 + " residues");
+
+		double[] fixed = b.fixed, moving = b.moving;
+		center(fixed, nAligned);
+		center(moving, nAligned);
+
+		// the correlation matrix, with sab the sum of moving a times fixed b
+		double sxx = 0, sxy = 0, sxz = 0, syx = 0, syy = 0, syz = 0, szx = 0, szy = 0, szz = 0;
+		for (int i = 0; i < 3 * nAligned; i += 3) {
+			double mx = moving[i], my = moving[i + 1], mz = moving[i + 2];
+			double fx = fixed[i], fy = fixed[i + 1], fz = fixed[i + 2];
+			sxx += mx * fx;
+			sxy += mx * fy;
+			sxz += mx * fz;
+			syx += my * fx;
+			syy += my * fy;
+			syz += my * fz;
+			szx += mz * fx;
+			szy += mz * fy;
+			szz += mz * fz;
+		}
+
+		// Horn's key matrix; its top eigenvector is the quaternion of the best rotation
+		double[] n = b.n;
+		n[0] = sxx + syy + szz;
+		n[1] = n[4] = syz - szy;
+		n[2] = n[8] = szx - sxz;
+		n[3] = n[12] = sxy - syx;
+		n[5] = sxx - syy - szz;
+		n[6] = n[9] = sxy + syx;
+		n[7] = n[13] = szx + sxz;
+		n[10] = -sxx + syy - szz;
+		n[11] = n[14] = syz + szy;
+		n[15] = -sxx - syy + szz;
+		int col = largestEigenvector(n, b.v);
+		double q0 = b.v[col], q1 = b.v[4 + col], q2 = b.v[8 + col], q3 = b.v[12 + col];
+
+		double r00 = q0 * q0 + q1 * q1 - q2 * q2 - q3 * q3;
+		double r01 = 2 * (q1 * q2 - q0 * q3);
+		double r02 = 2 * (q1 * q3 + q0 * q2);
+		double r10 = 2 * (q1 * q2 + q0 * q3);
+		double r11 = q0 * q0 - q1 * q1 + q2 * q2 - q3 * q3;
+		double r12 = 2 * (q2 * q3 - q0 * q1);
+		double r20 = 2 * (q1 * q3 - q0 * q2);
+		double r21 = 2 * (q2 * q3 + q0 * q1);
+		double r22 = q0 * q0 - q1 * q1 - q2 * q2 + q3 * q3;
+
+		double d0 = 1.24 * Math.cbrt(lMin - 15.0) - 1.8;
+		double d0Squared = d0 * d0;
+		double sum = 0;
+		for (int i = 0; i < 3 * nAligned; i += 3) {
+			double mx = moving[i], my = moving[i + 1], mz = moving[i + 2];
+			double dx = r00 * mx + r01 * my + r02 * mz - fixed[i];
+			double dy = r10 * mx + r11 * my + r12 * mz - fixed[i + 1];
+			double dz = r20 * mx + r21 * my + r22 * mz - fixed[i + 2];
+			sum += 1 / (1 + (dx * dx + dy * dy + dz * dz) / d0Squared);
+		}
+		return sum / lMin;
+	}
+
+	private static void center(double[] xyz, int n) {
+		double cx = 0, cy = 0, cz = 0;
+		for (int i = 0; i < 3 * n; i += 3) {
+			cx += xyz[i];
+			cy += xyz[i + 1];
+			cz += xyz[i + 2];
+		}
+		cx /= n;
+		cy /= n;
+		cz /= n;
+		for (int i = 0; i < 3 * n; i += 3) {
+			xyz[i] -= cx;
+			xyz[i + 1] -= cy;
+			xyz[i + 2] -= cz;
+		}
+	}
+
+}
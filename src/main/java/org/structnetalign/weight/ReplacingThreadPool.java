@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A fixed-size thread pool that can give up on a thread stuck in a task that ignores interrupts. BioJava's CE and FATCAT
+ * never check for them, so a cancelled job can keep its thread for as long as the alignment takes. {@link #abandon()}
+ * adds a thread to take the stuck one's place, and {@link #reclaim()} removes it again once the stuck task returns, so
+ * the pool keeps running {@code nThreads} tasks that still matter.
+ * 
+ * @author dmyersturnbull
+ */
+class ReplacingThreadPool extends ThreadPoolExecutor {
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private int nAbandoned;
+
+	public ReplacingThreadPool(int nThreads, BlockingQueue<Runnable> queue) {
+		super(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, queue);
+	}
+
+	/**
+	 * Starts another thread in place of one running a cancelled task that hasn't stopped.
+	 */
+	public synchronized void abandon() {
+		if (isShutdown()) return;
+		nAbandoned++;
+		// the maximum must grow first, since it can't be smaller than the core size
+		setMaximumPoolSize(getMaximumPoolSize() + 1);
+		setCorePoolSize(getCorePoolSize() + 1);
+		logger.warn("Replaced a thread stuck in a cancelled job; " + nAbandoned + " threads are stuck");
+	}
+
+	/**
+	 * Removes the thread added by {@link #abandon()} once the stuck task returns. The extra thread exits the next time it
+	 * is idle.
+	 */
+	public synchronized void reclaim() {
+		if (isShutdown()) return;
+		nAbandoned--;
+		setCorePoolSize(getCorePoolSize() - 1);
+		setMaximumPoolSize(getMaximumPoolSize() - 1);
+		logger.debug("A stuck thread returned; " + nAbandoned + " threads are still stuck");
+	}
+
+	/**
+	 * @return The number of threads {@link #abandon() abandoned} and not yet {@link #reclaim() reclaimed}
+	 */
+	public synchronized int getNAbandoned() {
+		return nAbandoned;
+	}
+
+}
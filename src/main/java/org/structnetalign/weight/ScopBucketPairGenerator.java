@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.biojava.bio.structure.scop.ScopCategory;
+import org.biojava.bio.structure.scop.ScopDomain;
+import org.structnetalign.util.BasicScop;
+import org.structnetalign.util.IdentifierMappingFactory;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * A {@link CandidatePairGenerator} that puts each vertex in a bucket according to the sunId of its SCOP domain at some
+ * {@link ScopCategory category} (fold by default), and only pairs vertices that share a bucket. Vertices that have no
+ * SCOP domain go into a fallback set instead; each of those is paired with every other vertex, since sequence or
+ * structural alignment may still find homology for them.
+ * <p>
+ * For {@link ScopWeight}, two domains in different folds share at most a class, so with the default weights this
+ * skips only pairs that would have been weighted 0.
+ * 
+ * @author dmyersturnbull
+ */
+public class ScopBucketPairGenerator implements CandidatePairGenerator {
+
+	private static class BucketIterator implements Iterator<Pair<Integer>> {
+
+		private final int[] all;
+		private final List<int[]> buckets;
+		private final int[] fallback;
+		private final Set<Integer> fallbackSet;
+
+		private int bucket = 0;
+		private int i = 0;
+		private int j = 1;
+
+		private int f = 0;
+		private int k = 0;
+
+		private Pair<Integer> next;
+
+		public BucketIterator(int[] all, List<int[]> buckets, int[] fallback) {
+			this.all = all;
+			this.buckets = buckets;
+			this.fallback = fallback;
+			fallbackSet = new HashSet<>();
+			for (int vertex : fallback) {
+				fallbackSet.add(vertex);
+			}
+			next = advance();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Pair<Integer> next() {
+			if (next == null) throw new NoSuchElementException();
+			Pair<Integer> pair = next;
+			next = advance();
+			return pair;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private Pair<Integer> advance() {
+
+			// first every pair within a bucket
+			while (bucket < buckets.size()) {
+				int[] members = buckets.get(bucket);
+				if (j < members.length) {
+					Pair<Integer> pair = new Pair<Integer>(members[i], members[j]);
+					j++;
+					return pair;
+				}
+				i++;
+				j = i + 1;
+				if (j >= members.length) {
+					bucket++;
+					i = 0;
+					j = 1;
+				}
+			}
+
+			// then every pair involving an unmapped vertex
+			while (f < fallback.length) {
+				int u = fallback[f];
+				while (k < all.length) {
+					int v = all[k++];
+					if (v == u) continue;
+					if (v < u && fallbackSet.contains(v)) continue; // already returned when v was the fallback vertex
+					return u < v ? new Pair<Integer>(u, v) : new Pair<Integer>(v, u);
+				}
+				f++;
+				k = 0;
+			}
+
+			return null;
+		}
+	}
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private ScopCategory category;
+
+	public ScopBucketPairGenerator() {
+		this(ScopCategory.Fold);
+	}
+
+	/**
+	 * @param category
+	 *            Vertices are paired only if their domains share a sunId at this category
+	 */
+	public ScopBucketPairGenerator(ScopCategory category) {
+		this.category = category;
+	}
+
+	@Override
+	public Iterator<Pair<Integer>> generate(Collection<Integer> vertices, Map<Integer, String> uniProtIds) {
+
+		int[] all = AllPairsGenerator.sorted(vertices);
+
+		TreeMap<Integer, List<Integer>> bucketMap = new TreeMap<>();
+		List<Integer> unmapped = new ArrayList<>();
+		for (int vertex : all) {
+			Integer sunId = bucketOf(uniProtIds.get(vertex));
+			if (sunId == null) {
+				unmapped.add(vertex);
+				continue;
+			}
+			List<Integer> members = bucketMap.get(sunId);
+			if (members == null) {
+				members = new ArrayList<>();
+				bucketMap.put(sunId, members);
+			}
+			members.add(vertex);
+		}
+
+		List<int[]> buckets = new ArrayList<>();
+		for (List<Integer> members : bucketMap.values()) {
+			if (members.size() > 1) buckets.add(AllPairsGenerator.sorted(members));
+		}
+		int[] fallback = AllPairsGenerator.sorted(unmapped);
+		logger.info("Put " + (all.length - fallback.length) + " vertices into " + bucketMap.size() + " SCOP "
+				+ category.name() + " buckets; " + fallback.length + " vertices are unmapped");
+
+		return new BucketIterator(all, buckets, fallback);
+	}
+
+	public ScopCategory getCategory() {
+		return category;
+	}
+
+	public void setCategory(ScopCategory category) {
+		this.category = category;
+	}
+
+	/**
+	 * Returns the sunId of the bucket {@code uniProtId} belongs to, or null if it should go into the fallback set.
+	 */
+	protected Integer bucketOf(String uniProtId) {
+		if (uniProtId == null) return null;
+		String scopId = IdentifierMappingFactory.getMapping().uniProtToScop(uniProtId);
+		if (scopId == null) return null;
+		ScopDomain domain = BasicScop.getScop().getDomainByScopID(scopId);
+		if (domain == null) return null;
+		return ScopWeight.sunIdOfCategory(domain, category);
+	}
+
+}
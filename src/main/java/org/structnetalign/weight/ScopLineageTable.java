@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.biojava.bio.structure.scop.ScopCategory;
+import org.biojava.bio.structure.scop.ScopDatabase;
+import org.biojava.bio.structure.scop.ScopDomain;
+import org.structnetalign.util.BasicScop;
+import org.structnetalign.util.IdentifierMapping;
+import org.structnetalign.util.IdentifierMappingFactory;
+
+/**
+ * An immutable table of the SCOP lineage (the sunId at each {@link ScopCategory}) of each vertex, resolved once before
+ * weighting. Vertices are stored in a sorted array and their lineages in one flat {@code int} array, so lookups need no
+ * locks and no allocation. Vertices with no SCOP domain aren't in the table.
+ * 
+ * @author dmyersturnbull
+ * @see ScopWeight
+ */
+public class ScopLineageTable {
+
+	static final int N_CATEGORIES = ScopCategory.values().length;
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	/**
+	 * {@code lineages[i * N_CATEGORIES + category.ordinal()]} is the sunId of {@code vertices[i]} at {@code category}
+	 */
+	private final int[] lineages;
+
+	private final int[] vertices;
+
+	/**
+	 * Looks up the SCOP domain of each vertex.
+	 */
+	public static ScopLineageTable build(Collection<Integer> vertices, Map<Integer, String> uniProtIds) {
+		final IdentifierMapping mapping = IdentifierMappingFactory.getMapping();
+		final ScopDatabase scop = BasicScop.getScop();
+		final ScopCategory[] categories = ScopCategory.values();
+		int[] sorted = AllPairsGenerator.sorted(vertices);
+		int[] found = new int[sorted.length];
+		int[] lineages = new int[sorted.length * N_CATEGORIES];
+		int n = 0;
+		for (int vertex : sorted) {
+			String uniProtId = uniProtIds.get(vertex);
+			if (uniProtId == null) continue;
+			String scopId = mapping.uniProtToScop(uniProtId);
+			if (scopId == null) continue;
+			ScopDomain domain = scop.getDomainByScopID(scopId);
+			if (domain == null) continue;
+			for (ScopCategory category : categories) {
+				lineages[n * N_CATEGORIES + category.ordinal()] = ScopWeight.sunIdOfCategory(domain, category);
+			}
+			found[n] = vertex;
+			n++;
+		}
+		logger.info("Found SCOP lineages for " + n + " of " + sorted.length + " vertices");
+		return new ScopLineageTable(Arrays.copyOf(found, n), Arrays.copyOf(lineages, n * N_CATEGORIES));
+	}
+
+	/**
+	 * @param vertices
+	 *            Sorted ascending
+	 * @param lineages
+	 *            {@code N_CATEGORIES} sunIds per vertex, in the order of {@code vertices}
+	 */
+	ScopLineageTable(int[] vertices, int[] lineages) {
+		if (lineages.length != vertices.length * N_CATEGORIES) throw new IllegalArgumentException("Expected "
+				+ N_CATEGORIES + " sunIds per vertex");
+		this.vertices = vertices;
+		this.lineages = lineages;
+	}
+
+	/**
+	 * @return The index of {@code vertex} in this table, or -1 if it has no lineage
+	 */
+	public int indexOf(int vertex) {
+		int index = Arrays.binarySearch(vertices, vertex);
+		return index < 0 ? -1 : index;
+	}
+
+	/**
+	 * @param index
+	 *            An index from {@link #indexOf(int)}
+	 */
+	public int getSunId(int index, ScopCategory category) {
+		return lineages[index * N_CATEGORIES + category.ordinal()];
+	}
+
+	public int size() {
+		return vertices.length;
+	}
+
+}
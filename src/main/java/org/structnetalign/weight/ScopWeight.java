@@ -21,24 +21,36 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 import org.biojava.bio.structure.scop.ScopCategory;
 import org.biojava.bio.structure.scop.ScopDatabase;
 import org.biojava.bio.structure.scop.ScopDomain;
 import org.structnetalign.util.BasicScop;
 import org.structnetalign.util.IdentifierMappingFactory;
+import org.structnetalign.util.NetworkUtils;
 
 /**
  * A {@link Weight} that uses the <a href="http://scop.berkeley.edu">Structural Classification of Proteins</a> to
- * determine weights.
+ * determine weights. If given a {@link ScopLineageTable} that contains both vertices, the weight is a comparison of
+ * the table's rows and doesn't touch the SCOP database at all.
  * 
  * @author dmyersturnbull
  * 
  */
-public class ScopWeight implements RelationWeight {
+public class ScopWeight implements RelationWeight, BatchWeight, FingerprintedWeight {
 
 	public static final Map<ScopCategory, Double> DEFAULT_WEIGHTS = new HashMap<ScopCategory, Double>();
 
+	/**
+	 * Most specific first.
+	 */
+	private static final ScopCategory[] CATEGORIES;
+
+	private int index1 = -1;
+
+	private int index2 = -1;
+
 	private String scopId1;
 
 	private String scopId2;
@@ -50,6 +62,13 @@ public class ScopWeight implements RelationWeight {
 	private int v2;
 	private Map<ScopCategory, Double> weights;
 
+	private ScopLineageTable table;
+
+	static {
+		CATEGORIES = ScopCategory.values();
+		Collections.reverse(Arrays.asList(CATEGORIES));
+	}
+
 	static {
 		Properties props = new Properties();
 		ClassLoader loader = Thread.currentThread().getContextClassLoader();
@@ -77,7 +96,7 @@ public class ScopWeight implements RelationWeight {
 		return BasicScop.getScop();
 	}
 
-	private static int sunIdOfCategory(ScopDomain domain, ScopCategory category) {
+	static int sunIdOfCategory(ScopDomain domain, ScopCategory category) {
 		switch (category) {
 		case Class:
 			return domain.getClassId();
@@ -106,15 +125,51 @@ public class ScopWeight implements RelationWeight {
 		this.weights = weights;
 	}
 
+	public ScopWeight(Map<ScopCategory, Double> weights, ScopLineageTable table) {
+		this.weights = weights;
+		this.table = table;
+	}
+
 	@Override
 	public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
 		setIds(v1, v2, uniProtId1, uniProtId2);
 		return call().getWeight();
 	}
 
+	/**
+	 * Looks up the query's lineage once when there is a {@link ScopLineageTable}.
+	 */
+	@Override
+	public double[] assignWeights(int v, String uniProtId, int[] targets, String[] targetUniProtIds) throws Exception {
+		int index = table == null ? -1 : table.indexOf(v);
+		double[] results = new double[targets.length];
+		for (int i = 0; i < targets.length; i++) {
+			int targetIndex = index < 0 ? -1 : table.indexOf(targets[i]);
+			if (targetIndex >= 0) {
+				results[i] = compare(index, targetIndex);
+				continue;
+			}
+			try {
+				results[i] = new ScopWeight(weights, table).assignWeight(v, targets[i], uniProtId, targetUniProtIds[i]);
+			} catch (WeightException e) {
+				results[i] = Double.NaN;
+			}
+		}
+		return results;
+	}
+
+	@Override
+	public String getParameterFingerprint() {
+		return NetworkUtils.hash(BasicScop.getScopVersion(), new TreeMap<>(weights).entrySet());
+	}
+
 	@Override
 	public WeightResult call() throws Exception {
 
+		if (index1 >= 0 && index2 >= 0) {
+			return new WeightResult(compare(index1, index2), v1, v2, uniProtId1, uniProtId2, this.getClass());
+		}
+
 		final ScopDatabase scop = ScopWeight.getSCOP();
 		ScopDomain domain1 = scop.getDomainByScopID(scopId1);
 		if (domain1 == null) throw new WeightException("Could not find SCOP id for " + uniProtId1, v1, v2, uniProtId1,
@@ -123,10 +178,7 @@ public class ScopWeight implements RelationWeight {
 		if (domain2 == null) throw new WeightException("Could not find SCOP id for " + uniProtId2, v1, v2, uniProtId1,
 				uniProtId2, false, true);
 
-		// we need to iterate in reverse order (most specific first)
-		ScopCategory[] categories = ScopCategory.values();
-		Collections.reverse(Arrays.asList(categories));
-		for (ScopCategory category : categories) {
+		for (ScopCategory category : CATEGORIES) {
 			int categoryId1 = sunIdOfCategory(domain1, category);
 			int categoryId2 = sunIdOfCategory(domain2, category);
 			if (categoryId1 == categoryId2 && weights.get(category) != null) {
@@ -138,6 +190,26 @@ public class ScopWeight implements RelationWeight {
 
 	}
 
+	/**
+	 * @return The weight from the {@link ScopLineageTable} if it has both vertices, which is exactly what {@link #call()}
+	 *         will return; otherwise null
+	 */
+	Double getTableWeight() {
+		return index1 >= 0 && index2 >= 0 ? compare(index1, index2) : null;
+	}
+
+	/**
+	 * @return The weight of the most specific category shared by two rows of the table
+	 */
+	private double compare(int index1, int index2) {
+		for (ScopCategory category : CATEGORIES) {
+			if (table.getSunId(index1, category) == table.getSunId(index2, category) && weights.get(category) != null) {
+				return weights.get(category);
+			}
+		}
+		return 0.0;
+	}
+
 	@Override
 	public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
 
@@ -146,6 +218,12 @@ public class ScopWeight implements RelationWeight {
 		this.uniProtId1 = uniProtId1;
 		this.uniProtId2 = uniProtId2;
 
+		if (table != null) {
+			index1 = table.indexOf(v1);
+			index2 = table.indexOf(v2);
+			if (index1 >= 0 && index2 >= 0) return;
+		}
+
 		scopId1 = IdentifierMappingFactory.getMapping().uniProtToScop(uniProtId1);
 		if (scopId1 == null) throw new WeightException("Could not find SCOP id for " + uniProtId1, v1, v2, uniProtId1,
 				uniProtId2, false, true);
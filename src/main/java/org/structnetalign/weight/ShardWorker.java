@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.structnetalign.CleverGraph;
+import org.structnetalign.HomologyEdge;
+import org.structnetalign.util.IndexedFastaSequenceSource;
+import org.structnetalign.util.SequenceSourceFactory;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * A worker for a {@link ShardedWeightManager}, normally run in its own JVM. It connects to the coordinator, then
+ * weights each tile of pairs it's sent with a {@link SmarterWeightManager} and sends back the weight of every pair
+ * that got one, until the coordinator tells it to stop.
+ * <p>
+ * A tile is the number of vertices, each vertex's PSI-MI XML Id and UniProt Id, the number of pairs, each pair of
+ * Ids, and the {@link SmarterWeightManager#setThreshold(double) threshold} as a double. The reply is a
+ * {@link #RESULT} byte followed by the two Ids and the weight as a double for each homologous pair, then an
+ * {@link #END} byte. A negative number of vertices means there are no more tiles. While a tile is being weighted, a
+ * {@link #PROGRESS} byte is sent every {@link #setHeartbeatInterval(long) heartbeat interval} in which any weight
+ * finished, so the coordinator can tell a slow tile from a hung worker.
+ * 
+ * @author dmyersturnbull
+ * @see ShardedWeightManager
+ */
+public class ShardWorker implements Runnable {
+
+	/**
+	 * A system property naming a FASTA file for {@link #main(String[])} to read sequences from, as the coordinator
+	 * does; see {@link IndexedFastaSequenceSource}.
+	 */
+	public static final String FASTA = "structnetalign.fasta";
+
+	/**
+	 * How often to tell the coordinator that weights are still finishing.
+	 */
+	public static final long DEFAULT_HEARTBEAT_INTERVAL = 10 * 1000;
+
+	static final byte END = 0;
+
+	static final byte PROGRESS = 2;
+
+	static final byte RESULT = 1;
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+
+	private final String host;
+
+	private final SmarterWeightManager manager;
+
+	private final int port;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3 || args.length > 4) {
+			System.err.println("Usage: " + ShardWorker.class.getSimpleName()
+					+ " coordinator-host coordinator-port weight-creator-class [cores]");
+			return;
+		}
+		String fasta = System.getProperty(FASTA);
+		if (fasta != null) SequenceSourceFactory.setSource(new IndexedFastaSequenceSource(new File(fasta)));
+		WeightCreator creator = (WeightCreator) Class.forName(args[2]).newInstance();
+		int nCores = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		new ShardWorker(creator, nCores, args[0], Integer.parseInt(args[1])).run();
+	}
+
+	public ShardWorker(WeightCreator creator, int nCores, String host, int port) {
+		this.host = host;
+		this.port = port;
+		manager = new SmarterWeightManager(creator, nCores);
+		manager.setDeduplicated(false); // the coordinator already chose the pairs
+	}
+
+	/**
+	 * @return The manager that weights each tile, which can be configured before {@link #run()}
+	 */
+	public SmarterWeightManager getManager() {
+		return manager;
+	}
+
+	/**
+	 * @param heartbeatInterval
+	 *            How often to send a heartbeat while weights are finishing, in milliseconds
+	 */
+	public void setHeartbeatInterval(long heartbeatInterval) {
+		this.heartbeatInterval = heartbeatInterval;
+	}
+
+	@Override
+	public void run() {
+		int nTiles = 0;
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+		try (Socket socket = new Socket(host, port)) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			while (true) {
+				int nVertices = in.readInt();
+				if (nVertices < 0) break; // no more tiles
+				CleverGraph graph = new CleverGraph();
+				Map<Integer, String> uniProtIds = new HashMap<>();
+				for (int i = 0; i < nVertices; i++) {
+					int v = in.readInt();
+					uniProtIds.put(v, in.readUTF());
+					graph.addVertex(v);
+				}
+				int nPairs = in.readInt();
+				final List<Pair<Integer>> pairs = new ArrayList<>(nPairs);
+				for (int i = 0; i < nPairs; i++) {
+					pairs.add(new Pair<Integer>(in.readInt(), in.readInt()));
+				}
+				manager.setThreshold(in.readDouble());
+				manager.setPairGenerator(new CandidatePairGenerator() {
+					@Override
+					public Iterator<Pair<Integer>> generate(Collection<Integer> vertices, Map<Integer, String> uniProtIds) {
+						return pairs.iterator();
+					}
+				});
+				ScheduledFuture<?> heartbeat = timer.scheduleWithFixedDelay(new Runnable() {
+					private long nFinished = manager.getNFinished();
+					@Override
+					public void run() {
+						long n = manager.getNFinished();
+						if (n == nFinished) return; // stuck, as far as the coordinator needs to know
+						nFinished = n;
+						synchronized (out) {
+							try {
+								out.writeByte(PROGRESS);
+								out.flush();
+							} catch (IOException e) {
+								logger.debug("Couldn't send a heartbeat", e); // the tile's reply will fail too
+							}
+						}
+					}
+				}, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+				try {
+					manager.assignWeights(graph, uniProtIds);
+				} finally {
+					heartbeat.cancel(false);
+				}
+				synchronized (out) {
+					for (HomologyEdge edge : graph.getHomologies()) {
+						Pair<Integer> ends = graph.getHomology().getEndpoints(edge);
+						out.writeByte(RESULT);
+						out.writeInt(ends.getFirst());
+						out.writeInt(ends.getSecond());
+						out.writeDouble(edge.getWeight());
+					}
+					out.writeByte(END);
+					out.flush();
+				}
+				nTiles++;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Lost the connection to the coordinator at " + host + ":" + port + " after "
+					+ nTiles + " tiles", e);
+		} finally {
+			timer.shutdownNow();
+		}
+		logger.info("Weighted " + nTiles + " tiles for the coordinator at " + host + ":" + port);
+	}
+
+}
@@ -0,0 +1,527 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.structnetalign.CleverGraph;
+import org.structnetalign.ReportGenerator;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * A {@link WeightManager} that coordinates several {@link ShardWorker ShardWorkers}, normally each in its own JVM, so
+ * that weighting isn't limited by one heap or by the global structure and SCOP caches. The vertices are sorted and cut
+ * into blocks of {@link #setTileWidth(int) tile width}, and each pair of blocks is a tile: the candidate pairs with one
+ * vertex in each block. Tiles go to whichever worker is free over a local socket, and each worker only needs the
+ * structures of two blocks at once.
+ * <p>
+ * The weights of a tile are only kept once the whole tile is back, so a tile whose worker dies is simply given to
+ * another worker, up to {@link #MAX_ATTEMPTS} times. The same goes for a worker that hangs: workers send a heartbeat
+ * while weights are finishing, and one that goes {@link #setProgressTimeout(int) too long} without finishing any is
+ * given up on, however big its tile. A {@link WeightCache} can't be shared between processes, so workers don't use
+ * one.
+ * 
+ * @author dmyersturnbull
+ */
+public class ShardedWeightManager implements ThresholdedWeightManager {
+
+	/**
+	 * Starts a worker that will connect to the coordinator.
+	 */
+	public interface WorkerLauncher {
+		/**
+		 * @return Stops the worker if it's still running after weighting is finished
+		 */
+		Closeable launch(String host, int port) throws IOException;
+	}
+
+	/**
+	 * Launches each {@link ShardWorker} as a new JVM with the same classpath.
+	 */
+	public static class ProcessLauncher implements WorkerLauncher {
+
+		private final Class<? extends WeightCreator> creatorClass;
+		private final List<String> jvmArgs;
+		private final int nCores;
+
+		/**
+		 * @param creatorClass
+		 *            A {@link WeightCreator} with a no-argument constructor, which each worker instantiates
+		 * @param nCores
+		 *            The number of cores for each worker
+		 * @param jvmArgs
+		 *            Extra arguments for each JVM, such as {@code -Xmx4g}
+		 */
+		public ProcessLauncher(Class<? extends WeightCreator> creatorClass, int nCores, List<String> jvmArgs) {
+			this.creatorClass = creatorClass;
+			this.nCores = nCores;
+			this.jvmArgs = jvmArgs;
+		}
+
+		@Override
+		public Closeable launch(String host, int port) throws IOException {
+			List<String> command = new ArrayList<>();
+			command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+			command.addAll(jvmArgs);
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(ShardWorker.class.getName());
+			command.add(host);
+			command.add(String.valueOf(port));
+			command.add(creatorClass.getName());
+			command.add(String.valueOf(nCores));
+			final Process process = new ProcessBuilder(command).inheritIO().start();
+			return new Closeable() {
+				@Override
+				public void close() {
+					process.destroy();
+				}
+			};
+		}
+	}
+
+	/**
+	 * Sends tiles to one worker and collects its results.
+	 */
+	private static class Handler implements Runnable {
+
+		private final HomologyAccumulator accumulator;
+		private final int progressTimeout;
+		private final TileQueue queue;
+		private final Socket socket;
+
+		public Handler(Socket socket, TileQueue queue, HomologyAccumulator accumulator, int progressTimeout) {
+			this.socket = socket;
+			this.queue = queue;
+			this.accumulator = accumulator;
+			this.progressTimeout = progressTimeout;
+		}
+
+		@Override
+		public void run() {
+			try (Socket mySocket = socket) {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				Tile tile;
+				while ((tile = queue.take()) != null) {
+					List<double[]> results = new ArrayList<>();
+					try {
+						socket.setSoTimeout(progressTimeout); // each heartbeat starts it again
+						tile.write(out);
+						byte type;
+						while ((type = in.readByte()) != ShardWorker.END) {
+							if (type == ShardWorker.PROGRESS) continue;
+							if (type != ShardWorker.RESULT) throw new IOException("Unexpected record type " + type);
+							results.add(new double[] { in.readInt(), in.readInt(), in.readDouble() });
+						}
+					} catch (SocketTimeoutException e) {
+						logger.warn("Worker at " + socket.getRemoteSocketAddress() + " finished no weights of " + tile
+								+ " for " + progressTimeout + "ms");
+						queue.fail(tile);
+						return;
+					} catch (IOException | RuntimeException e) {
+						logger.warn("Worker at " + socket.getRemoteSocketAddress() + " failed on " + tile, e);
+						queue.fail(tile);
+						return;
+					}
+					for (double[] result : results) { // only now that the tile is complete
+						accumulator.add((int) result[0], (int) result[1], result[2]);
+					}
+					queue.done(tile);
+				}
+				out.writeInt(-1); // no more tiles
+				out.flush();
+			} catch (IOException e) {
+				logger.warn("Couldn't stop the worker at " + socket.getRemoteSocketAddress(), e);
+			}
+		}
+	}
+
+	private static class Tile {
+
+		private int nAttempts;
+		private final String name;
+		private final int[] pairs;
+		private final double threshold;
+		private final String[] uniProtIds;
+		private final int[] vertices;
+
+		public Tile(String name, int[] vertices, String[] uniProtIds, int[] pairs, double threshold) {
+			this.name = name;
+			this.vertices = vertices;
+			this.uniProtIds = uniProtIds;
+			this.pairs = pairs;
+			this.threshold = threshold;
+		}
+
+		@Override
+		public String toString() {
+			return "tile " + name + " of " + pairs.length / 2 + " pairs";
+		}
+
+		/**
+		 * @see ShardWorker
+		 */
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(vertices.length);
+			for (int i = 0; i < vertices.length; i++) {
+				out.writeInt(vertices[i]);
+				out.writeUTF(uniProtIds[i]);
+			}
+			out.writeInt(pairs.length / 2);
+			for (int pair : pairs) {
+				out.writeInt(pair);
+			}
+			out.writeDouble(threshold);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Makes tiles lazily, and hands out failed tiles again.
+	 */
+	private class TileQueue {
+
+		private int i;
+		private int j;
+		private int nDone;
+		private int nDropped;
+		private int nInFlight;
+		private final int nBlocks;
+		private final Deque<Tile> retries = new ArrayDeque<>();
+		private List<Pair<Integer>> sameIdPairs; // null once its tile is made
+		private final int[] sorted;
+		private final Map<Integer, String> uniProtIds;
+
+		/**
+		 * @param sameIdPairs
+		 *            Pairs of copies of one UniProt Id, which are weighted in a tile of their own after the others
+		 */
+		public TileQueue(int[] sorted, Map<Integer, String> uniProtIds, List<Pair<Integer>> sameIdPairs) {
+			this.sorted = sorted;
+			this.uniProtIds = uniProtIds;
+			if (!sameIdPairs.isEmpty()) this.sameIdPairs = sameIdPairs;
+			nBlocks = (sorted.length + tileWidth - 1) / tileWidth;
+		}
+
+		public synchronized void done(Tile tile) {
+			nInFlight--;
+			nDone++;
+			notifyAll();
+		}
+
+		public synchronized void fail(Tile tile) {
+			nInFlight--;
+			if (tile.nAttempts < MAX_ATTEMPTS) {
+				retries.add(tile);
+			} else {
+				logger.error("Giving up on " + tile + " after " + tile.nAttempts + " attempts");
+				nDropped++;
+			}
+			notifyAll();
+		}
+
+		/**
+		 * @return Whether every tile was made and weighted
+		 */
+		public synchronized boolean isComplete() {
+			return i >= nBlocks && sameIdPairs == null && retries.isEmpty() && nInFlight == 0 && nDropped == 0;
+		}
+
+		/**
+		 * Blocks until there is a tile, or until every tile is finished.
+		 * 
+		 * @return The next tile, or null if there are none left
+		 */
+		public synchronized Tile take() {
+			while (true) {
+				Tile tile = retries.poll();
+				if (tile == null) tile = next();
+				if (tile != null) {
+					tile.nAttempts++;
+					nInFlight++;
+					return tile;
+				}
+				if (nInFlight == 0) return null;
+				try {
+					wait(); // another worker might fail
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+		}
+
+		private int blockOf(int v) {
+			return Arrays.binarySearch(sorted, v) / tileWidth;
+		}
+
+		/**
+		 * @return The next tile with any candidate pairs, or null
+		 */
+		private Tile next() {
+			while (i < nBlocks) {
+				int bi = i, bj = j;
+				if (++j == nBlocks) {
+					i++;
+					j = i;
+				}
+				List<Integer> vertices = new ArrayList<>(2 * tileWidth);
+				for (int k = bi * tileWidth; k < Math.min(sorted.length, (bi + 1) * tileWidth); k++) {
+					vertices.add(sorted[k]);
+				}
+				if (bj != bi) {
+					for (int k = bj * tileWidth; k < Math.min(sorted.length, (bj + 1) * tileWidth); k++) {
+						vertices.add(sorted[k]);
+					}
+				}
+				int[] pairs = new int[64];
+				int n = 0;
+				Iterator<Pair<Integer>> iter = pairGenerator.generate(vertices, uniProtIds);
+				while (iter.hasNext()) {
+					Pair<Integer> pair = iter.next();
+					// pairs within one block belong to that block's own tile
+					if (bj != bi && blockOf(pair.getFirst()) == blockOf(pair.getSecond())) continue;
+					if (n == pairs.length) pairs = Arrays.copyOf(pairs, 2 * n);
+					pairs[n++] = pair.getFirst();
+					pairs[n++] = pair.getSecond();
+				}
+				if (n == 0) continue;
+				return tileOf("(" + bi + ", " + bj + ")", vertices, Arrays.copyOf(pairs, n));
+			}
+			if (sameIdPairs != null) {
+				List<Integer> vertices = new ArrayList<>(2 * sameIdPairs.size());
+				int[] pairs = new int[2 * sameIdPairs.size()];
+				int n = 0;
+				for (Pair<Integer> pair : sameIdPairs) {
+					vertices.add(pair.getFirst());
+					vertices.add(pair.getSecond());
+					pairs[n++] = pair.getFirst();
+					pairs[n++] = pair.getSecond();
+				}
+				sameIdPairs = null;
+				return tileOf("of copies", vertices, pairs);
+			}
+			return null;
+		}
+
+		private Tile tileOf(String name, List<Integer> vertices, int[] pairs) {
+			String[] ids = new String[vertices.size()];
+			int[] myVertices = new int[vertices.size()];
+			for (int k = 0; k < ids.length; k++) {
+				myVertices[k] = vertices.get(k);
+				ids[k] = uniProtIds.get(myVertices[k]);
+			}
+			return new Tile(name, myVertices, ids, pairs, threshold);
+		}
+	}
+
+	/**
+	 * How long to wait for all of the workers to connect before going ahead with those that have.
+	 */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 60 * 1000;
+
+	/**
+	 * How long a worker may go without finishing a weight. The default time budgets of {@link NeedlemanWunschWeight}
+	 * and {@link CeWeight} add up to 150 seconds a pair, and a worker's first tile may also have to load SCOP.
+	 */
+	public static final int DEFAULT_PROGRESS_TIMEOUT = 10 * 60 * 1000;
+
+	public static final int DEFAULT_TILE_WIDTH = 100;
+
+	/**
+	 * The number of workers a tile is given to before it's left unweighted.
+	 */
+	public static final int MAX_ATTEMPTS = 3;
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+	private final WorkerLauncher launcher;
+
+	private final int nWorkers;
+
+	private CandidatePairGenerator pairGenerator = new AllPairsGenerator();
+
+	private int progressTimeout = DEFAULT_PROGRESS_TIMEOUT;
+
+	private double threshold;
+
+	private int tileWidth = DEFAULT_TILE_WIDTH;
+
+	public ShardedWeightManager(WorkerLauncher launcher, int nWorkers) {
+		this.launcher = launcher;
+		this.nWorkers = nWorkers;
+	}
+
+	@Override
+	public void assignWeights(CleverGraph graph, Map<Integer, String> uniProtIds) {
+
+		if (ReportGenerator.getInstance() != null) {
+			ReportGenerator.getInstance().putInWeighted("manager", this.getClass().getSimpleName());
+		}
+
+		// vertices without UniProt Ids can't be weighted
+		List<Integer> weighable = new ArrayList<>(graph.getVertexCount());
+		for (int v : graph.getVertices()) {
+			if (uniProtIds.get(v) != null) {
+				weighable.add(v);
+			} else {
+				logger.error("Could not get UniProt Id for Id#" + v);
+			}
+		}
+		// interactors that share a UniProt Id share their weights, so weight only one of them
+		DuplicateInteractors duplicates = new DuplicateInteractors(weighable, uniProtIds);
+		TileQueue queue = new TileQueue(AllPairsGenerator.sorted(duplicates.getRepresentatives()), uniProtIds,
+				duplicates.sameIdPairs(pairGenerator));
+		HomologyAccumulator accumulator = new HomologyAccumulator();
+
+		List<Closeable> workers = new ArrayList<>(nWorkers);
+		List<Thread> handlers = new ArrayList<>(nWorkers);
+		try (ServerSocket server = new ServerSocket(0, nWorkers, InetAddress.getLoopbackAddress())) {
+			server.setSoTimeout(connectTimeout);
+			String host = server.getInetAddress().getHostAddress();
+			logger.info("Starting " + nWorkers + " weighting workers for " + duplicates.size()
+					+ " distinct interactors in tiles of " + tileWidth + " on port " + server.getLocalPort());
+			for (int i = 0; i < nWorkers; i++) {
+				workers.add(launcher.launch(host, server.getLocalPort()));
+			}
+			for (int i = 0; i < nWorkers; i++) {
+				Socket socket;
+				try {
+					socket = server.accept();
+				} catch (SocketTimeoutException e) {
+					logger.warn("Only " + i + " of " + nWorkers + " workers connected within " + connectTimeout + "ms");
+					break;
+				}
+				Thread handler = new Thread(new Handler(socket, queue, accumulator, progressTimeout), "shard-" + i);
+				handler.start();
+				handlers.add(handler);
+			}
+			for (Thread handler : handlers) {
+				handler.join();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Couldn't coordinate weighting workers", e);
+		} catch (InterruptedException e) {
+			for (Thread handler : handlers) {
+				handler.interrupt();
+			}
+			throw new RuntimeException("Interrupted while waiting for weighting workers", e);
+		} finally {
+			for (Closeable worker : workers) {
+				try {
+					worker.close();
+				} catch (IOException e) {
+					logger.warn("Couldn't stop a weighting worker", e);
+				}
+			}
+		}
+
+		if (!queue.isComplete()) {
+			throw new RuntimeException("Weighting didn't finish: " + queue.nDone + " tiles were weighted, "
+					+ queue.nDropped + " were given up on, and the workers stopped before the rest");
+		}
+		int nAdded = accumulator.addTo(graph, graph.getHomologyCount(), duplicates.getCopies());
+		logger.info("Added " + nAdded + " homology edges from " + queue.nDone + " tiles");
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public CandidatePairGenerator getPairGenerator() {
+		return pairGenerator;
+	}
+
+	public int getProgressTimeout() {
+		return progressTimeout;
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+	public int getTileWidth() {
+		return tileWidth;
+	}
+
+	/**
+	 * @param connectTimeout
+	 *            How long to wait for the workers to connect, in milliseconds
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * @param pairGenerator
+	 *            Decides which pairs of vertices get weighted; defaults to {@link AllPairsGenerator every pair}. It's
+	 *            run on the vertices of each tile separately, so it must decide on each pair independently of the
+	 *            others.
+	 */
+	public void setPairGenerator(CandidatePairGenerator pairGenerator) {
+		this.pairGenerator = pairGenerator;
+	}
+
+	/**
+	 * @param progressTimeout
+	 *            How long a worker may go without finishing any weight, in milliseconds, before it's considered hung and
+	 *            its tile is given to another worker; should be well over the workers'
+	 *            {@link ShardWorker#setHeartbeatInterval(long) heartbeat interval}
+	 */
+	public void setProgressTimeout(int progressTimeout) {
+		this.progressTimeout = progressTimeout;
+	}
+
+	/**
+	 * @param threshold
+	 *            Sent to each worker with each tile; see {@link SmarterWeightManager#setThreshold(double)}
+	 */
+	@Override
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * @param tileWidth
+	 *            The number of vertices in each block; a tile has up to the square of this many pairs
+	 */
+	public void setTileWidth(int tileWidth) {
+		this.tileWidth = tileWidth;
+	}
+
+}
@@ -14,55 +14,279 @@
  */
 package org.structnetalign.weight;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.biojava.bio.structure.Atom;
+import org.biojava.bio.structure.StructureException;
+import org.structnetalign.util.IdentifierMappingFactory;
+import org.structnetalign.util.SequenceSourceFactory;
 
 /**
  * A really simple {@link WeightCreator} that tries, in order:
  * <ol>
+ * <li>{@link PrecomputedAlignmentWeight}, if a {@link #setPrecomputedAlignments(PrecomputedAlignmentTable) table} is
+ * set</li>
  * <li>{@link ScopWeight}</li>
  * <li>{@link NeedlemanWunschWeight}</li>
  * <li>{@link PrecalculatedFatcatWeight}</li>
  * <li>{@link CeWeight}</li>
  * </ol>
+ * If a {@link #setMinHashThreshold(Double) MinHash threshold} is set, a {@link MinHashIndex} of the sequences is built
+ * when weighting starts, and only pairs the index finds similar enough are passed to {@link NeedlemanWunschWeight}.
+ * Pairs that are ruled out get no weight from this creator. Similarly, if a {@link #setStructureNeighbours(Integer)
+ * number of neighbours} or {@link #setMaxDescriptorDistance(Double) descriptor distance} is set, a
+ * {@link DescriptorIndex} of the structures is built, and only structural neighbours are passed to {@link CeWeight}.
+ * The lengths of any sequences and structures loaded for those indices are also used to {@link CostEstimator estimate}
+ * the work of each alignment.
+ * <p>
+ * When a weight fails, the next tier after the one that failed is tried. When one succeeds, no more are tried, so the
+ * {@link UpperBoundEstimator upper bound} of a weight is its own. For SCOP it's the weight itself when both lineages
+ * are in the {@link ScopLineageTable} (0 for different classes), and 1 otherwise, since the later tiers would run. For
+ * Needleman-Wunsch it's the peak of the gamma score up to the {@link MinHashIndex#estimateMaxIdentity(String, String)
+ * identity ceiling} from the MinHash index, or over every identity without one. It's 1 for the structural tiers: they
+ * only run for pairs without both SCOP lineages, and sequence identity doesn't bound a structural score.
  * @author dmyersturnbull
  *
  */
-public class SimpleWeightCreator implements WeightCreator {
+public class SimpleWeightCreator implements WeightCreator, Preparable, CostEstimator, UpperBoundEstimator {
+
+	private enum Tier {
+		PRECOMPUTED(PrecomputedAlignmentWeight.class), SCOP(ScopWeight.class), NW(NeedlemanWunschWeight.class),
+		PRECALCULATED_FATCAT(PrecalculatedFatcatWeight.class), CE(CeWeight.class);
+		private final Class<? extends Weight> weightClass;
+		private Tier(Class<? extends Weight> weightClass) {
+			this.weightClass = weightClass;
+		}
+	}
 
 	private static final Logger logger = LogManager.getLogger("org.structnetalign");
 
+	private static final List<Tier> TIERS = Arrays.asList(Tier.values());
+
+	/**
+	 * The length assumed for a protein whose sequence and structure weren't loaded.
+	 */
+	private static final int DEFAULT_LENGTH = 300;
+
+	private Double maxDescriptorDistance;
+
+	private Double minHashThreshold;
+
+	private PrecomputedAlignmentTable precomputedAlignments;
+
+	private ScopLineageTable scopTable;
+
+	private Map<String, Integer> sequenceLengths = new HashMap<>();
+
+	private MinHashIndex sequenceIndex;
+
+	private Map<String, Integer> structureLengths = new HashMap<>();
+
+	private DescriptorIndex structureIndex;
+
+	private Integer structureNeighbours;
+
+	/**
+	 * @return The first weight that can be created for the pair from the tier after {@code failed}, or from the
+	 *         {@code n}th tier if {@code failed} is null or unknown
+	 */
 	@Override
 	public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
-
 		if (!isFail) return null;
-		
-		Weight weight = null;
+		List<Tier> tiers = getTiers();
+		int from = n - 1;
+		for (int i = 0; i < tiers.size(); i++) {
+			if (tiers.get(i).weightClass == failed) from = i + 1;
+		}
+		return firstWeight(tiers, from, a, b, uniProtIdA, uniProtIdB);
+	}
 
-		// try SCOP
-		if (n == 1) {
-			weight = init(new ScopWeight(), a, b, uniProtIdA, uniProtIdB);
+	public Double getMaxDescriptorDistance() {
+		return maxDescriptorDistance;
+	}
+
+	public Double getMinHashThreshold() {
+		return minHashThreshold;
+	}
+
+	public PrecomputedAlignmentTable getPrecomputedAlignments() {
+		return precomputedAlignments;
+	}
+
+	public MinHashIndex getSequenceIndex() {
+		return sequenceIndex;
+	}
+
+	public DescriptorIndex getStructureIndex() {
+		return structureIndex;
+	}
+
+	public Integer getStructureNeighbours() {
+		return structureNeighbours;
+	}
+
+	/**
+	 * Builds a {@link ScopLineageTable}, the {@link MinHashIndex} if a threshold is set, and the
+	 * {@link DescriptorIndex} if a number of neighbours or a distance is set.
+	 */
+	@Override
+	public void prepare(Collection<Integer> vertices, Map<Integer, String> uniProtIds) {
+		try {
+			scopTable = ScopLineageTable.build(vertices, uniProtIds);
+		} catch (RuntimeException e) {
+			logger.warn("Couldn't build SCOP lineage table; SCOP weights will look up domains for each pair", e);
 		}
+		if (minHashThreshold != null) sequenceIndex = buildSequenceIndex(vertices, uniProtIds);
+		if (structureNeighbours != null || maxDescriptorDistance != null) {
+			structureIndex = buildStructureIndex(vertices, uniProtIds);
+		}
+	}
 
-		// try NW
-		if (n == 2) {
-			weight = init(new NeedlemanWunschWeight(), a, b, uniProtIdA, uniProtIdB);
+	private DescriptorIndex buildStructureIndex(Collection<Integer> vertices, Map<Integer, String> uniProtIds) {
+		DescriptorIndex index = new DescriptorIndex(structureNeighbours == null ? 0 : structureNeighbours,
+				maxDescriptorDistance);
+		CoordinateStore store = AtomCacheFactory.getCoordinateStore(); // skips building atoms
+		Set<String> done = new HashSet<>();
+		for (int vertex : vertices) {
+			String uniProtId = uniProtIds.get(vertex);
+			if (uniProtId == null || !done.add(uniProtId)) continue;
+			String pdbIdAndChain = IdentifierMappingFactory.getMapping().uniProtToPdb(uniProtId);
+			if (pdbIdAndChain == null) continue;
+			try {
+				double[] coordinates = store == null ? null : store.getCoordinates(pdbIdAndChain);
+				if (coordinates == null) {
+					Atom[] ca = AtomCacheFactory.getStructureCache().getAtoms(pdbIdAndChain);
+					coordinates = new double[3 * ca.length];
+					for (int i = 0; i < ca.length; i++) {
+						coordinates[3 * i] = ca[i].getX();
+						coordinates[3 * i + 1] = ca[i].getY();
+						coordinates[3 * i + 2] = ca[i].getZ();
+					}
+				}
+				index.add(uniProtId, DescriptorIndex.describe(coordinates));
+				structureLengths.put(uniProtId, coordinates.length / 3);
+			} catch (IOException | StructureException e) {
+				logger.debug("Couldn't load structure " + pdbIdAndChain + " for " + uniProtId
+						+ "; not including it in the descriptor index", e);
+			}
 		}
-		
-		// try pre-calculated FATCAT
-		if (n == 3) {
-			weight = init(new PrecalculatedFatcatWeight(), a, b, uniProtIdA, uniProtIdB);
+		index.build();
+		logger.info("Built a descriptor index of " + index.size() + " structures with " + index.getCandidateCount()
+				+ " candidate pairs");
+		return index;
+	}
+
+	private MinHashIndex buildSequenceIndex(Collection<Integer> vertices, Map<Integer, String> uniProtIds) {
+		Set<String> distinct = new HashSet<>();
+		for (int vertex : vertices) {
+			String uniProtId = uniProtIds.get(vertex);
+			if (uniProtId != null) distinct.add(uniProtId);
+		}
+		MinHashIndex index = new MinHashIndex(minHashThreshold);
+		for (String uniProtId : distinct) {
+			try {
+				String sequence = SequenceSourceFactory.getSource().getSequence(uniProtId);
+				if (sequence != null) {
+					index.add(uniProtId, sequence);
+					sequenceLengths.put(uniProtId, sequence.length());
+				}
+			} catch (IOException e) {
+				logger.debug("Couldn't get FASTA sequence for " + uniProtId + "; not including it in the MinHash index", e);
+			}
+		}
+		index.build();
+		logger.info("Built a MinHash index of " + index.size() + " sequences with " + index.getCandidateCount()
+				+ " candidate pairs above " + minHashThreshold + (index.isExhaustive() ? " (comparing every pair)" : " ("
+				+ index.getNBands() + " bands of " + index.getNRows() + " rows)"));
+		return index;
+	}
+
+	/**
+	 * @param minHashThreshold
+	 *            The minimum estimated Jaccard similarity of the k-mers of two sequences for them to be aligned; null
+	 *            (the default) to align every pair
+	 */
+	public void setMinHashThreshold(Double minHashThreshold) {
+		this.minHashThreshold = minHashThreshold;
+	}
+
+	/**
+	 * @param precomputedAlignments
+	 *            Scores to look up before trying anything else; null (the default) for none
+	 */
+	public void setPrecomputedAlignments(PrecomputedAlignmentTable precomputedAlignments) {
+		this.precomputedAlignments = precomputedAlignments;
+	}
+
+	/**
+	 * @param maxDescriptorDistance
+	 *            Structures whose {@link DescriptorIndex descriptors} are within this distance are aligned with CE;
+	 *            null (the default) for no bound
+	 */
+	public void setMaxDescriptorDistance(Double maxDescriptorDistance) {
+		this.maxDescriptorDistance = maxDescriptorDistance;
+	}
+
+	/**
+	 * @param structureNeighbours
+	 *            Only align structures with CE if either is among the other's this many nearest neighbours by
+	 *            {@link DescriptorIndex descriptor}; null (the default) to align every pair
+	 */
+	public void setStructureNeighbours(Integer structureNeighbours) {
+		this.structureNeighbours = structureNeighbours;
+	}
+
+	/**
+	 * Alignments are quadratic in the lengths (or linear for {@link PrecalculatedFatcatWeight}, which only
+	 * superimposes); lookups are constant.
+	 */
+	@Override
+	public double estimateWork(Weight weight, String uniProtIdA, String uniProtIdB) {
+		if (weight instanceof NeedlemanWunschWeight) {
+			return (double) lengthOf(sequenceLengths, uniProtIdA) * lengthOf(sequenceLengths, uniProtIdB);
+		}
+		if (weight instanceof CeWeight) {
+			return (double) lengthOf(structureLengths, uniProtIdA) * lengthOf(structureLengths, uniProtIdB);
 		}
+		if (weight instanceof PrecalculatedFatcatWeight) {
+			return lengthOf(structureLengths, uniProtIdA) + lengthOf(structureLengths, uniProtIdB);
+		}
+		return 1;
+	}
 
-		// try CE
-		if (n == 4) {
-			weight = init(new CeWeight(), a, b, uniProtIdA, uniProtIdB);
+	@Override
+	public double estimateUpperBound(Weight weight, String uniProtIdA, String uniProtIdB) {
+		if (weight instanceof ScopWeight) {
+			// with both lineages in the table it can't fail, so no later tier runs
+			Double known = ((ScopWeight) weight).getTableWeight();
+			return known != null ? known : 1;
+		}
+		if (weight instanceof NeedlemanWunschWeight) {
+			Double maxIdentity = sequenceIndex == null ? null : sequenceIndex.estimateMaxIdentity(uniProtIdA,
+					uniProtIdB);
+			return maxIdentity == null ? NeedlemanWunschWeight.getMaxWeight() : NeedlemanWunschWeight
+					.getMaxWeight(maxIdentity);
 		}
-		
-		return weight;
+		return 1;
+	}
+
+	/**
+	 * @return The length from {@code lengths}, or else from the other map, or else {@link #DEFAULT_LENGTH}
+	 */
+	private int lengthOf(Map<String, Integer> lengths, String uniProtId) {
+		Integer length = lengths.get(uniProtId);
+		if (length == null) length = (lengths == sequenceLengths ? structureLengths : sequenceLengths).get(uniProtId);
+		return length != null ? length : DEFAULT_LENGTH;
 	}
 
 	private Weight init(Weight weight, int a, int b, String uniProtIdA, String uniProtIdB) {
@@ -78,14 +302,57 @@ public class SimpleWeightCreator implements WeightCreator {
 	@Override
 	public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
 		List<Weight> list = new ArrayList<Weight>(1);
-		Weight scop = null;
-		int i = 1;
-		while (scop == null) { // keep trying until we are successful
-			scop = nextWeight(a, b, uniProtIdA, uniProtIdB, i, true, null);
-			i++;
-		}
-		list.add(scop);
+		Weight weight = firstWeight(getTiers(), 0, a, b, uniProtIdA, uniProtIdB);
+		if (weight != null) list.add(weight);
 		return list;
 	}
 
+	/**
+	 * Tries each tier from {@code from} until a weight can be created for the pair.
+	 */
+	private Weight firstWeight(List<Tier> tiers, int from, int a, int b, String uniProtIdA, String uniProtIdB) {
+		for (int i = Math.max(0, from); i < tiers.size(); i++) { // keep trying until we are successful
+			Weight weight = null;
+			switch (tiers.get(i)) {
+			case PRECOMPUTED:
+				weight = init(new PrecomputedAlignmentWeight(precomputedAlignments), a, b, uniProtIdA, uniProtIdB);
+				break;
+			case SCOP:
+				weight = init(new ScopWeight(ScopWeight.DEFAULT_WEIGHTS, scopTable), a, b, uniProtIdA, uniProtIdB);
+				break;
+			case NW:
+				// the later tiers only run if NW can't, and it can for sequences in the index
+				if (isSequenceBlocked(uniProtIdA, uniProtIdB)) return null;
+				weight = init(new NeedlemanWunschWeight(), a, b, uniProtIdA, uniProtIdB);
+				break;
+			case PRECALCULATED_FATCAT:
+				weight = init(new PrecalculatedFatcatWeight(), a, b, uniProtIdA, uniProtIdB);
+				break;
+			case CE:
+				if (!isStructureBlocked(uniProtIdA, uniProtIdB)) {
+					weight = init(new CeWeight(), a, b, uniProtIdA, uniProtIdB);
+				}
+				break;
+			}
+			if (weight != null) return weight;
+		}
+		return null;
+	}
+
+	private List<Tier> getTiers() {
+		return precomputedAlignments == null ? TIERS.subList(1, TIERS.size()) : TIERS;
+	}
+
+	private boolean isStructureBlocked(String uniProtIdA, String uniProtIdB) {
+		if (structureIndex == null || structureIndex.isCandidate(uniProtIdA, uniProtIdB)) return false;
+		logger.trace("Structures of " + uniProtIdA + " and " + uniProtIdB + " are too dissimilar to align");
+		return true;
+	}
+
+	private boolean isSequenceBlocked(String uniProtIdA, String uniProtIdB) {
+		if (sequenceIndex == null || sequenceIndex.isCandidate(uniProtIdA, uniProtIdB)) return false;
+		logger.trace("Sequences of " + uniProtIdA + " and " + uniProtIdB + " are too dissimilar to align");
+		return true;
+	}
+
 }
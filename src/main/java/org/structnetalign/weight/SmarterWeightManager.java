@@ -14,36 +14,105 @@
  */
 package org.structnetalign.weight;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletionService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.structnetalign.CleverGraph;
-import org.structnetalign.HomologyEdge;
 import org.structnetalign.PipelineProperties;
 import org.structnetalign.ReportGenerator;
 
 import edu.uci.ics.jung.graph.util.Pair;
 
-public class SmarterWeightManager implements WeightManager {
+public class SmarterWeightManager implements ThresholdedWeightManager {
+
+	/**
+	 * The pools, queues, and counters of one call to {@link SmarterWeightManager#assignWeights(CleverGraph, Map)}.
+	 */
+	private static class Run {
+		final HomologyAccumulator accumulator = new HomologyAccumulator();
+		final BlockingQueue<WeightJob> completed = new LinkedBlockingQueue<>();
+		final ExecutorService fetchPool;
+		final AtomicInteger nPruned = new AtomicInteger(0);
+		final AtomicInteger nSubmitted = new AtomicInteger(0);
+		final AtomicInteger pending = new AtomicInteger(0); // submitted and not yet consumed
+		final Semaphore permits;
+		final ReplacingThreadPool pool;
+		final ScheduledExecutorService timer;
+		final ConcurrentMap<String, Double> results = new ConcurrentHashMap<>(); // of KeyedWeights, by class and key
+
+		Run(int nCores, int nFetchThreads, int maxInFlight) {
+			// the most expensive jobs go first, so that no long job is left to start at the end
+			// a job that ignores its cancellation gets a replacement thread, so nCores jobs that matter can always run
+			pool = new ReplacingThreadPool(nCores, new PriorityBlockingQueue<Runnable>(11, CostModel.LONGEST_FIRST));
+			fetchPool = Executors.newFixedThreadPool(nFetchThreads);
+			permits = new Semaphore(maxInFlight);
+			// almost every timeout is cancelled early, and each would otherwise hold its job until its budget ran out
+			ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+			timer.setRemoveOnCancelPolicy(true);
+			this.timer = timer;
+		}
+
+		void shutdownNow() {
+			pool.shutdownNow();
+			fetchPool.shutdownNow();
+			timer.shutdownNow();
+		}
+	}
+
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	public static final int DEFAULT_FETCH_THREADS = 128;
+
+	public static final int DEFAULT_JOBS_PER_CORE = 256;
 
 	private static final Logger logger = LogManager.getLogger("org.structnetalign");
 
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
 	private WeightCreator creator;
 
+	private Integer maxInFlight;
+
 	private int nCores;
 
+	private int nFetchThreads = DEFAULT_FETCH_THREADS;
+
+	private CandidatePairGenerator pairGenerator = new AllPairsGenerator();
+
+	private double threshold;
+
+	private WeightCache cache;
+
+	private boolean isDeduplicated = true;
+
+	private final AtomicLong nFinished = new AtomicLong();
+
+	/**
+	 * Kept between runs, so that a manager reused for several networks starts with realistic timings.
+	 */
+	private final CostModel costModel = new CostModel();
+
 	public SmarterWeightManager(WeightCreator creator, int nCores) {
 		super();
 		this.creator = creator;
@@ -51,176 +120,159 @@ public class SmarterWeightManager implements WeightManager {
 	}
 
 	@Override
-	public void assignWeights(CleverGraph graph, Map<Integer, String> uniProtIds) {
+	public void assignWeights(final CleverGraph graph, final Map<Integer, String> uniProtIds) {
 
 		if (ReportGenerator.getInstance() != null) {
 			ReportGenerator.getInstance().putInWeighted("manager", this.getClass().getSimpleName());
 		}
 
-		// make a thread pool
-		logger.info("Starting weight assignment with " + nCores + " cores");
-		ExecutorService pool = Executors.newFixedThreadPool(nCores);
+		// make the thread pools
+		logger.info("Starting weight assignment with " + nCores + " cores and " + nFetchThreads + " fetch threads");
+		final Run run = new Run(nCores, nFetchThreads, getMaxInFlight());
 
-		try {
-
-			CompletionService<WeightResult> completion = new ExecutorCompletionService<>(pool);
-			List<Future<WeightResult>> futures = new ArrayList<>();
-			Map<Pair<Integer>, Integer> nAttempted = new HashMap<>();
-
-			// let's submit the jobs
-			// iterate over all pairs of vertices
-			for (int a : graph.getVertices()) {
-				for (int b : graph.getVertices()) {
-
-					if (a >= b) {
-						continue; // homology had damn well better be reflexive and symmetric!
-					}
+		Thread producer = null;
 
-					// initialize every nAttempted
-					nAttempted.put(new Pair<Integer>(a, b), 0);
+		try {
 
-					final String uniProtIdA = uniProtIds.get(a);
-					final String uniProtIdB = uniProtIds.get(b);
+			if (creator instanceof Preparable) {
+				((Preparable) creator).prepare(graph.getVertices(), uniProtIds);
+			}
 
-					if (uniProtIdA == null) {
-						logger.error("Could not get UniProt Id for Id#" + a);
-						continue;
-					}
-					if (uniProtIdB == null) {
-						logger.error("Could not get UniProt Id for Id#" + b);
-						continue;
-					}
+			// interactors that share a UniProt Id share their weights, so weight only one of them
+			final DuplicateInteractors duplicates = isDeduplicated ? new DuplicateInteractors(graph.getVertices(),
+					uniProtIds) : null;
+			if (duplicates != null) {
+				logger.info("Weighting " + duplicates.size() + " distinct interactors for " + graph.getVertexCount()
+						+ " vertices");
+			}
 
-					logger.trace("Weighting " + uniProtIdA + " against " + uniProtIdB + " (" + a + ", " + b + ")");
-
-					List<Weight> weights = creator.initialWeights(a, b, uniProtIdA, uniProtIdB);
-					if (weights != null) {
-						for (Weight weight : weights) {
-							if (weight != null) {
-								Future<WeightResult> future = completion.submit(weight);
-								futures.add(future);
-								logger.debug("Running weight " + weight.getClass().getSimpleName() + " for " + uniProtIdA
-										+ " against " + uniProtIdB + " (" + a + ", " + b + ")");
-							} else { // this means the WeightCreator is behaving strangely
-								logger.warn("Null weight included for " + uniProtIdA
-										+ " against " + uniProtIdB + " (" + a + ", " + b + ")");
-							}
-						}
-					} else { // the WeightCreator doesn't want to run any weights
-						logger.debug("No weights selected for " + uniProtIdA
-								+ " against " + uniProtIdB + " (" + a + ", " + b + ")");
+			/*
+			 * A producer thread streams pairs into the pool, taking a permit for every job; the permit is returned when
+			 * the job's chain of weights ends. So at most maxInFlight jobs (and their results) exist at once however many
+			 * pairs there are, and this thread can consume results as soon as they finish. A FetchingWeight goes to the
+			 * fetch pool first, and is handed to the compute pool once its data is loaded.
+			 */
+			final AtomicReference<Throwable> producerError = new AtomicReference<>();
+			final WeightJob end = new WeightJob(null, -1, -1, null, null, 0, run.completed, null); // never run
+
+			producer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						produce(graph, uniProtIds, duplicates, run);
+					} catch (InterruptedException e) {
+						logger.warn("Interrupted while submitting weights", e);
+						producerError.set(e);
+					} catch (RuntimeException | Error e) {
+						producerError.set(e);
+					} finally {
+						run.completed.add(end);
 					}
-
 				}
-			}
-
-			logger.info("Submitted " + futures.size() + " jobs to " + nCores + " cores");
+			}, "weight-producer");
+			producer.setDaemon(true);
+			producer.start();
 
 			/*
-			 *  Now respond to completion.
+			 * Now respond to completion. The workers have already combined each result into the accumulator, so all
+			 * that's left here is to decide on follow-up weights.
 			 */
 
 			int nUpdates = 0;
 
-			int createdIndex = 0; // there shouldn't be any homology edges yet
-			forfutures: for (int i = 0; i < futures.size(); i++) {
-
-				Future<WeightResult> future = futures.get(i);
+			boolean isProduced = false;
+			while (!isProduced || run.pending.get() > 0) {
 
-				WeightResult result = null;
+				WeightJob job;
 				try {
-
-					// We should do this in case the job gets interrupted
+					job = run.completed.take();
+				} catch (InterruptedException e) {
 					// Sometimes the OS or JVM might do this
-					// Use the flag instead of future == null because future.get() may actually return null
-					while (result == null) {
-						try {
-							result = future.get();
-							double prob = result.getWeight();
-							int vertexA = result.getV1();
-							int vertexB = result.getV2();
-							logger.trace("Job (" + vertexA + ", " + vertexB + ") returned with weight "
-									+ PipelineProperties.getInstance().getOutputFormatter().format(prob));
-							if (prob == 0) {
-								continue forfutures; // don't both updating with 0
-							}
-						} catch (InterruptedException e1) {
-							logger.warn("A thread was interrupted while waiting to get a weight. Retrying.", e1);
-						}
-					}
+					logger.warn("A thread was interrupted while waiting to get a weight. Retrying.", e);
+					continue;
+				}
+				if (job == end) {
+					isProduced = true;
+					logger.info("Submitted " + run.nSubmitted.get() + " jobs to " + nCores + " cores");
+					continue;
+				}
 
-				} catch (ExecutionException e) {
+				nFinished.incrementAndGet();
+				int a = job.getA();
+				int b = job.getB();
+				String uniProtIdA = job.getUniProtIdA();
+				String uniProtIdB = job.getUniProtIdB();
+				int n = job.getNAttempted() + 1;
 
+				WeightResult result;
+				Weight next = null;
+				try {
+					result = job.get(); // already done
+				} catch (CancellationException e) {
+					// it ran over its budget; treat that like any other failure
+					result = null;
+					logger.debug("Cancelled " + job.getWeightClass().getSimpleName() + " for " + uniProtIdA + " against "
+							+ uniProtIdB + " (" + a + ", " + b + ") after its time budget");
+					next = creator.nextWeight(a, b, uniProtIdA, uniProtIdB, n, true, job.getWeightClass());
+				} catch (ExecutionException | InterruptedException e) {
+					result = null;
 					if (e.getCause() != null && e.getCause() instanceof WeightException) {
-
-						WeightException myE = (WeightException) e.getCause();
-						int a = myE.getA();
-						int b = myE.getB();
-						String uniProtIdA = myE.getUniProtIdA();
-						String uniProtIdB = myE.getUniProtIdB();
-						int n = nAttempted.get(new Pair<Integer>(myE.getA(), myE.getB())) + 1;
-						nAttempted.put(new Pair<Integer>(myE.getA(), myE.getB()), n);
-
 						logger.trace("Failed on " + uniProtIdA + " against " + uniProtIdB + " (" + a + ", " + b + ")");
-
-						Weight weight = creator.nextWeight(a, b, uniProtIdA, uniProtIdB, n, true, null);
-						if (weight != null) { // null means "we're done"
-							Future<WeightResult> newFuture = completion.submit(weight);
-							futures.add(newFuture);
-							logger.debug("Running relation " + weight.getClass().getSimpleName() + " for " + uniProtIdA
-									+ " against " + uniProtIdB + " (" + a + ", " + b + ")");
-						}
-
+						next = creator.nextWeight(a, b, uniProtIdA, uniProtIdB, n, true, job.getWeightClass());
 					} else {
 						logger.error("Encountered an unknown error trying to get a weight.", e);
 					}
-
-					continue; // we can't process this job
-
 				}
 
-				// everything is ok; now update or add the edge
-
-				int a = result.getV1();
-				int b = result.getV2();
-				double prob = result.getWeight();
-
-				// the creator might want to add another even if it didn't fail
-				int n = nAttempted.get(new Pair<Integer>(a, b)) + 1;
-				nAttempted.put(new Pair<Integer>(a, b), n);
-				Weight weight = creator.nextWeight(a, b, result.getA(), result.getB(), n, false, null);
-				if (weight != null) { // null means "we're done"
-					Future<WeightResult> newFuture = completion.submit(weight);
-					futures.add(newFuture);
-					logger.debug("Running relation " + weight.getClass().getSimpleName() + " for " + result.getA()
-							+ " against " + result.getB() + " (" + a + ", " + b + ")");
+				if (result != null) {
+					double prob = result.getWeight();
+					logger.trace("Job (" + a + ", " + b + ") returned with weight "
+							+ PipelineProperties.getInstance().getOutputFormatter().format(prob));
+					if (prob != 0) { // don't bother with 0
+						nUpdates++;
+						// the creator might want to add another even if it didn't fail
+						next = creator.nextWeight(a, b, uniProtIdA, uniProtIdB, n, false, null);
+					}
 				}
 
-				Collection<Integer> vertices = Arrays.asList(a, b);
-
-				// there may already be an edge there
-				HomologyEdge existing = graph.getHomology().findEdge(a, b);
-				if (existing != null) {
-					// (a+b-ab) + c - c*(a+b-ab) = a + b + c - ab - ac - bc + abc
-					existing.setWeight(existing.getWeight() + prob - existing.getWeight() * prob);
-					logger.debug("["
-							+ PipelineProperties.getInstance().getOutputFormatter()
-							.format((float) createdIndex / (float) (futures.size() + createdIndex) * 100.0)
-							+ "%] Updated homology edge (" + a + ", " + b + ", "
-							+ PipelineProperties.getInstance().getOutputFormatter().format(existing.getWeight())
-							+ ") with weight " + PipelineProperties.getInstance().getOutputFormatter().format(prob));
+				if (next != null) { // null means "we're done"; otherwise the next job inherits this one's permit
+					run.pending.incrementAndGet();
+					run.nSubmitted.incrementAndGet();
+					// a weight in place of a failed one can be pruned just like a first one
+					if (result == null && isBelowThreshold(Collections.singletonList(next), uniProtIdA, uniProtIdB)) {
+						run.nPruned.incrementAndGet();
+						logger.trace("Not computing " + next.getClass().getSimpleName() + " for " + uniProtIdA
+								+ " against " + uniProtIdB + " (" + a + ", " + b + "), which can't reach " + threshold);
+						prune(run, next, a, b, uniProtIdA, uniProtIdB, n);
+					} else {
+						submit(run, next, a, b, uniProtIdA, uniProtIdB, n);
+						logger.debug("Running relation " + next.getClass().getSimpleName() + " for " + uniProtIdA
+								+ " against " + uniProtIdB + " (" + a + ", " + b + ")");
+					}
 				} else {
-					HomologyEdge edge = new HomologyEdge(createdIndex++, prob);
-					graph.addHomologies(edge, vertices);
-					logger.debug("Added homology edge (" + a + ", " + b + ", "
-							+ PipelineProperties.getInstance().getOutputFormatter().format(prob) + ")");
+					run.permits.release();
 				}
-				nUpdates++;
+				run.pending.decrementAndGet();
 
 			}
+			if (producerError.get() != null) {
+				throw new RuntimeException("Couldn't submit every weight", producerError.get());
+			}
+			if (run.nPruned.get() > 0) {
+				logger.info("Skipped computing weights for " + run.nPruned.get() + " pairs that can't reach "
+						+ threshold);
+			}
+
+			// now build the homology graph in one pass; new edge Ids start after any existing ones
+			if (duplicates != null) {
+				run.accumulator.addTo(graph, graph.getHomologyCount(), duplicates.getCopies());
+			} else {
+				run.accumulator.addTo(graph, graph.getHomologyCount());
+			}
 			logger.info("Added " + graph.getHomologyCount() + " homology edges");
 			if (ReportGenerator.getInstance() != null) {
 				ReportGenerator.getInstance().putInWeighted("n_updates", nUpdates);
+				ReportGenerator.getInstance().putInWeighted("n_pruned", run.nPruned.get());
 			}
 
 			int maxHomologyDegree = 0;
@@ -242,7 +294,8 @@ public class SmarterWeightManager implements WeightManager {
 			}
 
 		} finally {
-			pool.shutdownNow();
+			if (producer != null) producer.interrupt(); // no effect if it's finished
+			run.shutdownNow();
 
 			int count = Thread.activeCount() - 1;
 			if (count > 0) {
@@ -251,6 +304,260 @@ public class SmarterWeightManager implements WeightManager {
 		}
 	}
 
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public WeightCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @return The maximum number of jobs that may be submitted and not yet consumed at once
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight != null ? maxInFlight : nCores * DEFAULT_JOBS_PER_CORE;
+	}
+
+	/**
+	 * @return The {@link CostEstimator#estimateWork estimated work} if the creator is a CostEstimator; otherwise 1
+	 */
+	private double estimateWork(Weight weight, String uniProtIdA, String uniProtIdB) {
+		if (creator instanceof CostEstimator) {
+			return ((CostEstimator) creator).estimateWork(weight, uniProtIdA, uniProtIdB);
+		}
+		return 1;
+	}
+
+	/**
+	 * @return Whether the noisy-OR of the {@link UpperBoundEstimator upper bounds} of {@code weights} is below the
+	 *         threshold, so that the pair can't reach it
+	 */
+	private boolean isBelowThreshold(List<Weight> weights, String uniProtIdA, String uniProtIdB) {
+		if (threshold <= 0 || !(creator instanceof UpperBoundEstimator)) return false;
+		double bound = 0;
+		for (Weight weight : weights) {
+			if (weight == null) continue;
+			double x = ((UpperBoundEstimator) creator).estimateUpperBound(weight, uniProtIdA, uniProtIdB);
+			bound = bound + x - bound * x;
+		}
+		return bound < threshold;
+	}
+
+	/**
+	 * @return Whether the result of {@code weight} is already in the {@link WeightCache} or among the results of this run
+	 */
+	private boolean isKnown(Run run, Weight weight, String uniProtIdA, String uniProtIdB) {
+		String key = resultKey(weight);
+		if (key != null && run.results.containsKey(key)) return true;
+		return cache != null && cache.get(weight, uniProtIdA, uniProtIdB) != null;
+	}
+
+	/**
+	 * @return The class of {@code weight} and its {@link KeyedWeight#getResultKey() result key}, or null if it has none
+	 */
+	private static String resultKey(Weight weight) {
+		if (!(weight instanceof KeyedWeight)) return null;
+		String key = ((KeyedWeight) weight).getResultKey();
+		return key == null ? null : weight.getClass().getName() + "\t" + key;
+	}
+
+	/**
+	 * Submits the initial weights of every candidate pair, blocking whenever too many jobs are in flight.
+	 * 
+	 * @param duplicates
+	 *            If not null, only pairs of its representatives (and of copies of one UniProt Id) are weighted
+	 */
+	private void produce(CleverGraph graph, Map<Integer, String> uniProtIds, DuplicateInteractors duplicates, Run run)
+			throws InterruptedException {
+
+		WeightBatcher batcher = new WeightBatcher(run.pool, run.fetchPool, batchSize, run.completed, run.accumulator,
+				cache, run.timer, costModel, run.results);
+
+		// let's submit the jobs
+		// iterate over the candidate pairs of vertices; homology had damn well better be reflexive and symmetric!
+		Iterator<Pair<Integer>> pairs = duplicates != null ? duplicates.pairs(pairGenerator) : pairGenerator.generate(
+				graph.getVertices(), uniProtIds);
+		while (pairs.hasNext()) {
+			Pair<Integer> pair = pairs.next();
+			final int a = pair.getFirst();
+			final int b = pair.getSecond();
+
+			final String uniProtIdA = uniProtIds.get(a);
+			final String uniProtIdB = uniProtIds.get(b);
+
+			if (uniProtIdA == null) {
+				logger.error("Could not get UniProt Id for Id#" + a);
+				continue;
+			}
+			if (uniProtIdB == null) {
+				logger.error("Could not get UniProt Id for Id#" + b);
+				continue;
+			}
+
+			logger.trace("Weighting " + uniProtIdA + " against " + uniProtIdB + " (" + a + ", " + b + ")");
+
+			List<Weight> weights = creator.initialWeights(a, b, uniProtIdA, uniProtIdB);
+			if (weights != null) {
+				boolean isPruned = isBelowThreshold(weights, uniProtIdA, uniProtIdB);
+				if (isPruned) {
+					run.nPruned.incrementAndGet();
+					logger.trace("Not computing weights for " + uniProtIdA + " against " + uniProtIdB + " (" + a + ", "
+							+ b + "), which can't reach " + threshold);
+				}
+				for (Weight weight : weights) {
+					if (weight == null) { // this means the WeightCreator is behaving strangely
+						logger.warn("Null weight included for " + uniProtIdA
+								+ " against " + uniProtIdB + " (" + a + ", " + b + ")");
+						continue;
+					}
+					// jobs waiting in open blocks hold permits too, so they must be run before we wait for more
+					if (!run.permits.tryAcquire()) {
+						batcher.flush();
+						run.permits.acquire();
+					}
+					run.pending.incrementAndGet();
+					run.nSubmitted.incrementAndGet();
+					if (isPruned) {
+						prune(run, weight, a, b, uniProtIdA, uniProtIdB, 0);
+					} else if (batchSize > 1 && weight instanceof BatchWeight
+							&& !isKnown(run, weight, uniProtIdA, uniProtIdB)) {
+						batcher.add((BatchWeight) weight, a, b, uniProtIdA, uniProtIdB,
+								estimateWork(weight, uniProtIdA, uniProtIdB), resultKey(weight));
+					} else {
+						submit(run, weight, a, b, uniProtIdA, uniProtIdB, 0);
+						logger.debug("Running weight " + weight.getClass().getSimpleName() + " for " + uniProtIdA
+								+ " against " + uniProtIdB + " (" + a + ", " + b + ")");
+					}
+				}
+			} else { // the WeightCreator doesn't want to run any weights
+				logger.debug("No weights selected for " + uniProtIdA
+						+ " against " + uniProtIdB + " (" + a + ", " + b + ")");
+			}
+
+		}
+		batcher.flush();
+	}
+
+	/**
+	 * Submits {@code weight} to the compute pool, unless its result is already in the {@link WeightCache} or was
+	 * computed earlier in this run for the same {@link KeyedWeight#getResultKey() key}, in which case the job is
+	 * completed here without running anything. Either way the job ends up in the completion queue, and
+	 * its result in the accumulator. A {@link FetchingWeight} is fetched on the fetch pool first; if that fails, the job
+	 * fails without reaching the compute pool. A {@link BudgetedWeight} is cancelled when it runs over its budget
+	 * (which doesn't include fetching).
+	 * 
+	 * @param nAttempted
+	 *            The number of results the pair has already produced in this chain
+	 */
+	private void submit(final Run run, final Weight weight, final int a, final int b, final String uniProtIdA,
+			final String uniProtIdB, int nAttempted) {
+
+		final String resultKey = resultKey(weight);
+		Double cached = resultKey == null ? null : run.results.get(resultKey);
+		if (cached == null && cache != null) cached = cache.get(weight, uniProtIdA, uniProtIdB);
+		if (cached != null) {
+			logger.trace("Using cached " + weight.getClass().getSimpleName() + " result for " + uniProtIdA + " against "
+					+ uniProtIdB + " (" + a + ", " + b + ")");
+			WeightJob done = new WeightJob(weight.getClass(), a, b, uniProtIdA, uniProtIdB, nAttempted, run.completed,
+					run.accumulator);
+			done.set(new WeightResult(cached, a, b, uniProtIdA, uniProtIdB, weight.getClass()));
+			return;
+		}
+
+		Callable<WeightResult> callable = weight;
+		if (cache != null) {
+			callable = new Callable<WeightResult>() {
+				@Override
+				public WeightResult call() throws Exception {
+					WeightResult result = weight.call();
+					try {
+						cache.put(weight, uniProtIdA, uniProtIdB, result.getWeight());
+					} catch (IOException e) {
+						logger.warn("Couldn't write " + weight.getClass().getSimpleName() + " result for " + uniProtIdA
+								+ " against " + uniProtIdB + " to the weight cache", e);
+					}
+					return result;
+				}
+			};
+		}
+
+		final WeightJob job = new WeightJob(callable, weight.getClass(), a, b, uniProtIdA, uniProtIdB, nAttempted,
+				run.completed, run.accumulator);
+		if (resultKey != null) job.setResultKey(run.results, resultKey);
+		if (weight instanceof BudgetedWeight) {
+			job.setTimeBudget(run.timer, ((BudgetedWeight) weight).getTimeBudget(), run.pool);
+		}
+		job.setCost(costModel, estimateWork(weight, uniProtIdA, uniProtIdB));
+
+		if (!(weight instanceof FetchingWeight)) {
+			run.pool.execute(job);
+			return;
+		}
+		fetchThen(run, weight, job, a, b, uniProtIdA, uniProtIdB, new Runnable() {
+			@Override
+			public void run() {
+				run.pool.execute(job); // the compute pool
+			}
+		});
+	}
+
+	/**
+	 * Fetches the data for {@code weight} on the fetch pool, then runs {@code then}; if that fails, {@code job} fails
+	 * instead.
+	 */
+	private void fetchThen(Run run, final Weight weight, final WeightJob job, final int a, final int b,
+			final String uniProtIdA, final String uniProtIdB, final Runnable then) {
+		run.fetchPool.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					((FetchingWeight) weight).fetch();
+				} catch (WeightException e) {
+					job.setException(e);
+					return;
+				} catch (RuntimeException e) {
+					job.setException(new WeightException("Could not fetch data for " + uniProtIdA + " against "
+							+ uniProtIdB, e, a, b, uniProtIdA, uniProtIdB, weight instanceof AlignmentWeight, false));
+					return;
+				}
+				then.run();
+			}
+		});
+	}
+
+	/**
+	 * Completes the job for {@code weight} with a weight of 0 without computing it, because the pair can't reach the
+	 * threshold. A {@link FetchingWeight} is still fetched first, so that a pair whose data is missing fails, and falls
+	 * back to the next weight, exactly as it would have.
+	 * 
+	 * @param nAttempted
+	 *            The number of results the pair has already produced in this chain
+	 */
+	private void prune(Run run, Weight weight, int a, int b, String uniProtIdA, String uniProtIdB, int nAttempted) {
+		final WeightJob job = new WeightJob(weight.getClass(), a, b, uniProtIdA, uniProtIdB, nAttempted, run.completed,
+				run.accumulator);
+		final WeightResult zero = new WeightResult(0, a, b, uniProtIdA, uniProtIdB, weight.getClass());
+		if (!(weight instanceof FetchingWeight)) {
+			job.set(zero);
+			return;
+		}
+		fetchThen(run, weight, job, a, b, uniProtIdA, uniProtIdB, new Runnable() {
+			@Override
+			public void run() {
+				job.set(zero);
+			}
+		});
+	}
+
+	/**
+	 * @return The number of weights that have finished, including those cancelled, pruned, or found in the cache, over
+	 *         every run so far; may be read from any thread to watch progress
+	 */
+	public long getNFinished() {
+		return nFinished.get();
+	}
+
 	public WeightCreator getCreator() {
 		return creator;
 	}
@@ -259,8 +566,88 @@ public class SmarterWeightManager implements WeightManager {
 		return nCores;
 	}
 
+	public int getnFetchThreads() {
+		return nFetchThreads;
+	}
+
+	public CandidatePairGenerator getPairGenerator() {
+		return pairGenerator;
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+	public boolean isDeduplicated() {
+		return isDeduplicated;
+	}
+
+	/**
+	 * @param batchSize
+	 *            The maximum number of targets weighted against one query at once by a {@link BatchWeight}; 1 to
+	 *            weight every pair separately
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param cache
+	 *            A persistent cache to consult before running any {@link FingerprintedWeight}, and to store new results
+	 *            in; null to disable
+	 */
+	public void setCache(WeightCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @param nFetchThreads
+	 *            The number of threads that wait on downloads for {@link FetchingWeight FetchingWeights}, separately from
+	 *            the {@code nCores} threads that compute
+	 */
+	public void setnFetchThreads(int nFetchThreads) {
+		this.nFetchThreads = nFetchThreads;
+	}
+
+	/**
+	 * @param maxInFlight
+	 *            The maximum number of jobs that may be submitted and not yet consumed at once; null for
+	 *            {@link #DEFAULT_JOBS_PER_CORE} per core
+	 */
+	public void setMaxInFlight(Integer maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * @param isDeduplicated
+	 *            Whether to weight each pair of UniProt Ids only once, and give the result to every pair of vertices
+	 *            with those Ids; true by default
+	 */
+	public void setDeduplicated(boolean isDeduplicated) {
+		this.isDeduplicated = isDeduplicated;
+	}
+
 	public void setCreator(WeightCreator creator) {
 		this.creator = creator;
 	}
 
+	/**
+	 * Pairs whose initial weights have {@link UpperBoundEstimator upper bounds} (from the creator) that can't reach
+	 * {@code threshold} get a weight of 0 without computing them, as does a weight that follows a failure and whose own
+	 * bound can't reach it. This changes nothing once edges below
+	 * {@code threshold} are removed, as long as the bounds hold and no edges for the pairs are already in the graph.
+	 */
+	@Override
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * @param pairGenerator
+	 *            Decides which pairs of vertices get weighted; defaults to {@link AllPairsGenerator every pair}
+	 */
+	public void setPairGenerator(CandidatePairGenerator pairGenerator) {
+		this.pairGenerator = pairGenerator;
+	}
+
 }
@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.biojava.bio.structure.Atom;
+import org.biojava.bio.structure.StructureException;
+
+/**
+ * A thread-safe cache of CA atoms in front of an {@link org.biojava.bio.structure.align.util.AtomCache AtomCache}.
+ * Concurrent requests for the same chain wait on a single load, and loaded chains are kept until the total number of
+ * atoms held exceeds a budget, after which the least-recently used chains are evicted.
+ * <p>
+ * Parsing a structure is CPU-bound, so only {@link #setMaxLoads(int) as many loads as there are cores} run at once,
+ * even when many I/O threads ask for structures. BioJava downloads and parses a file in one call, so downloads are
+ * limited with them; the threads waiting on a load are only the I/O threads that asked for it.
+ * <p>
+ * The arrays returned are shared between callers, so they must not be modified. Code that needs to transform
+ * coordinates (superposition, for example) should clone them first.
+ * 
+ * @author dmyersturnbull
+ * @see AtomCacheFactory#getStructureCache()
+ */
+public class StructureCache {
+
+	/**
+	 * Actually loads atoms on a cache miss.
+	 */
+	public static interface Loader {
+		Atom[] load(String pdbIdAndChain) throws IOException, StructureException;
+	}
+
+	public static final long DEFAULT_MAX_ATOMS = 1000000;
+
+	public static final int DEFAULT_MAX_LOADS = Runtime.getRuntime().availableProcessors();
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private final ConcurrentMap<String, FutureTask<Atom[]>> inFlight = new ConcurrentHashMap<>();
+
+	private final Loader loader;
+
+	private final long maxAtoms;
+
+	private volatile Semaphore loads = new Semaphore(DEFAULT_MAX_LOADS);
+
+	private long nAtoms;
+
+	private int nHits;
+
+	private int nLoads;
+
+	/**
+	 * Access-ordered, so iteration starts at the least-recently used chain. Guarded by itself.
+	 */
+	private final LinkedHashMap<String, Atom[]> recent = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Loads from {@link AtomCacheFactory#getCache()}.
+	 */
+	public StructureCache(long maxAtoms) {
+		this(new Loader() {
+			@Override
+			public Atom[] load(String pdbIdAndChain) throws IOException, StructureException {
+				return AtomCacheFactory.getCache().getAtoms(pdbIdAndChain);
+			}
+		}, maxAtoms);
+	}
+
+	public StructureCache(Loader loader, long maxAtoms) {
+		this.loader = loader;
+		this.maxAtoms = maxAtoms;
+	}
+
+	/**
+	 * Empties the cache. Loads already in progress are unaffected.
+	 */
+	public void clear() {
+		synchronized (recent) {
+			recent.clear();
+			nAtoms = 0;
+		}
+	}
+
+	/**
+	 * Returns the CA atoms of {@code pdbIdAndChain}, loading them if needed. If another thread is already loading the
+	 * same chain, waits for that load instead of starting another.
+	 */
+	public Atom[] getAtoms(final String pdbIdAndChain) throws IOException, StructureException {
+
+		synchronized (recent) {
+			Atom[] atoms = recent.get(pdbIdAndChain);
+			if (atoms != null) {
+				nHits++;
+				return atoms;
+			}
+		}
+
+		FutureTask<Atom[]> task = new FutureTask<>(new Callable<Atom[]>() {
+			@Override
+			public Atom[] call() throws Exception {
+				Semaphore myLoads = loads;
+				myLoads.acquire();
+				try {
+					return loader.load(pdbIdAndChain);
+				} finally {
+					myLoads.release();
+				}
+			}
+		});
+		FutureTask<Atom[]> existing = inFlight.putIfAbsent(pdbIdAndChain, task);
+		if (existing == null) {
+			synchronized (recent) {
+				nLoads++;
+			}
+			try {
+				task.run();
+				Atom[] atoms = get(task, pdbIdAndChain);
+				put(pdbIdAndChain, atoms);
+				return atoms;
+			} finally {
+				inFlight.remove(pdbIdAndChain, task);
+			}
+		}
+		synchronized (recent) {
+			nHits++;
+		}
+		return get(existing, pdbIdAndChain);
+
+	}
+
+	/**
+	 * @return The number of requests answered without loading (including those that waited on another thread's load)
+	 */
+	public int getHitCount() {
+		synchronized (recent) {
+			return nHits;
+		}
+	}
+
+	/**
+	 * @return The number of loads started
+	 */
+	public int getLoadCount() {
+		synchronized (recent) {
+			return nLoads;
+		}
+	}
+
+	public long getMaxAtoms() {
+		return maxAtoms;
+	}
+
+	/**
+	 * @return The total number of atoms currently held
+	 */
+	public long getNAtoms() {
+		synchronized (recent) {
+			return nAtoms;
+		}
+	}
+
+	/**
+	 * @param maxLoads
+	 *            The number of chains that may be loaded at once; loads already waiting keep the old limit
+	 */
+	public void setMaxLoads(int maxLoads) {
+		loads = new Semaphore(maxLoads);
+	}
+
+	public int size() {
+		synchronized (recent) {
+			return recent.size();
+		}
+	}
+
+	private Atom[] get(FutureTask<Atom[]> task, String pdbIdAndChain) throws IOException, StructureException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for atoms of " + pdbIdAndChain, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof StructureException) throw (StructureException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IOException("Couldn't load atoms of " + pdbIdAndChain, cause);
+		}
+	}
+
+	private void put(String pdbIdAndChain, Atom[] atoms) {
+		if (atoms == null) return;
+		synchronized (recent) {
+			Atom[] previous = recent.put(pdbIdAndChain, atoms);
+			if (previous != null) nAtoms -= previous.length;
+			nAtoms += atoms.length;
+			// always keep the chain we just loaded, even if it alone is over budget
+			Iterator<Map.Entry<String, Atom[]>> iter = recent.entrySet().iterator();
+			while (nAtoms > maxAtoms && recent.size() > 1) {
+				Map.Entry<String, Atom[]> eldest = iter.next();
+				nAtoms -= eldest.getValue().length;
+				iter.remove();
+				logger.trace("Evicted " + eldest.getKey() + " from the structure cache");
+			}
+		}
+	}
+
+}
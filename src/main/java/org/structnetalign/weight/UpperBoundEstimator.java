@@ -0,0 +1,32 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+/**
+ * Something (normally a {@link WeightCreator}) that can cheaply bound the weight a {@link Weight} will give a pair,
+ * without running it. A {@link SmarterWeightManager} with a {@link ThresholdedWeightManager#setThreshold(double)
+ * threshold} skips computing the initial weights of pairs whose bounds show they can't reach it.
+ * 
+ * @author dmyersturnbull
+ */
+public interface UpperBoundEstimator {
+
+	/**
+	 * @return A number that neither the result of {@code weight} for the pair, nor its noisy-OR with every weight the
+	 *         creator adds after {@code weight} succeeds, can exceed; 1 if nothing is known
+	 */
+	double estimateUpperBound(Weight weight, String uniProtIdA, String uniProtIdB);
+
+}
@@ -0,0 +1,287 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Groups pairs whose weights are {@link BatchWeight BatchWeights} into blocks that share a query vertex and a weight
+ * class, and runs each block as one task. Each pair still gets its own {@link WeightJob}, which completes when its block
+ * does, so callers can treat pairs exactly as if they had been submitted one by one.
+ * <p>
+ * Not thread-safe: {@link #add} and {@link #flush()} must be called from the submitting thread.
+ * 
+ * @author dmyersturnbull
+ */
+class WeightBatcher {
+
+	private class Block implements Runnable, CostModel.Costed {
+
+		private double cost;
+		private long order;
+		private double work;
+
+		private final WeightJob[] jobs;
+		private int n;
+		private final String[] targetUniProtIds;
+		private final int[] targets;
+		private final int v;
+		private final String uniProtId;
+		private final BatchWeight weight;
+		private boolean isAbandoned;
+		private boolean isCancelled;
+		private boolean isFinished;
+
+		public Block(BatchWeight weight, int v, String uniProtId) {
+			this.weight = weight;
+			this.v = v;
+			this.uniProtId = uniProtId;
+			targets = new int[batchSize];
+			targetUniProtIds = new String[batchSize];
+			jobs = new WeightJob[batchSize];
+		}
+
+		/**
+		 * Cancels every pair that isn't done yet and interrupts the block, unless it's already finished. The block's
+		 * thread is given up to a {@link ReplacingThreadPool} too, in case the weight ignores the interrupt.
+		 */
+		private synchronized void cancel(Thread thread, long budget) {
+			if (isFinished) return;
+			isCancelled = true;
+			logger.warn("A block of " + n + " " + weight.getClass().getSimpleName() + " weights for " + uniProtId
+					+ " (" + v + ") ran over its budget of " + budget + "ms");
+			for (int i = 0; i < n; i++) {
+				jobs[i].cancel(false); // no effect on those already set
+			}
+			thread.interrupt();
+			if (pool instanceof ReplacingThreadPool) {
+				isAbandoned = true;
+				((ReplacingThreadPool) pool).abandon();
+			}
+		}
+
+		@Override
+		public double getCost() {
+			return cost;
+		}
+
+		@Override
+		public long getOrder() {
+			return order;
+		}
+
+		@Override
+		public void run() {
+			final Thread thread = Thread.currentThread();
+			final long budget = weight instanceof BudgetedWeight ? ((BudgetedWeight) weight).getTimeBudget() * n : 0;
+			ScheduledFuture<?> timeout = null;
+			if (timer != null && budget > 0) {
+				timeout = timer.schedule(new Runnable() {
+					@Override
+					public void run() {
+						cancel(thread, budget);
+					}
+				}, budget, TimeUnit.MILLISECONDS);
+			}
+			long start = System.nanoTime();
+			try {
+				runBlock();
+			} catch (RuntimeException | Error e) {
+				for (int i = 0; i < n; i++) {
+					jobs[i].setException(e); // no effect on those already set
+				}
+				if (e instanceof Error) throw e;
+				logger.error("Encountered an unknown error weighting a block for " + uniProtId, e);
+			} finally {
+				synchronized (this) {
+					isFinished = true;
+					if (isAbandoned) ((ReplacingThreadPool) pool).reclaim();
+				}
+				if (timeout != null) timeout.cancel(false);
+			}
+			if (costModel != null && !isCancelled) {
+				costModel.record(weight.getClass(), work, System.nanoTime() - start);
+			}
+		}
+
+		private void runBlock() {
+			int[] myTargets = Arrays.copyOf(targets, n);
+			String[] myIds = Arrays.copyOf(targetUniProtIds, n);
+			double[] weights;
+			try {
+				weights = weight.assignWeights(v, uniProtId, myTargets, myIds);
+			} catch (Exception e) {
+				// each pair needs its own exception, since the manager finds the pair from it
+				for (int i = 0; i < n; i++) {
+					jobs[i].setException(new WeightException("Couldn't weight " + uniProtId + " against a block",
+							e, v, targets[i], uniProtId, targetUniProtIds[i], weight instanceof AlignmentWeight, false));
+				}
+				return;
+			}
+			for (int i = 0; i < n; i++) {
+				if (Double.isNaN(weights[i])) {
+					jobs[i].setException(new WeightException("Couldn't weight " + uniProtId + " against "
+							+ targetUniProtIds[i] + " in a block", v, targets[i], uniProtId, targetUniProtIds[i],
+							weight instanceof AlignmentWeight, false));
+					continue;
+				}
+				if (cache != null) {
+					try {
+						cache.put(weight, uniProtId, targetUniProtIds[i], weights[i]);
+					} catch (IOException e) {
+						logger.warn("Couldn't write " + weight.getClass().getSimpleName() + " result for " + uniProtId
+								+ " against " + targetUniProtIds[i] + " to the weight cache", e);
+					}
+				}
+				jobs[i].set(new WeightResult(weights[i], v, targets[i], uniProtId, targetUniProtIds[i],
+						weight.getClass()));
+			}
+		}
+	}
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private final int batchSize;
+
+	private final WeightCache cache;
+
+	private final HomologyAccumulator accumulator;
+
+	private final Queue<WeightJob> completed;
+
+	private final ConcurrentMap<String, Double> results;
+
+	private final Map<String, Block> open = new HashMap<>();
+
+	private final ExecutorService fetchPool;
+
+	private final ExecutorService pool;
+
+	private final ScheduledExecutorService timer;
+
+	private final CostModel costModel;
+
+	/**
+	 * @param pool
+	 *            Runs the blocks; if it's a {@link ReplacingThreadPool}, a block that runs over its budget gives up its
+	 *            thread
+	 * @param fetchPool
+	 *            Runs {@link FetchingWeight#fetchAll(String, String[])} for blocks of {@link FetchingWeight
+	 *            FetchingWeights} before they go to {@code pool}; null to fetch in {@code pool}
+	 * @param completed
+	 *            The job for each pair is added here when its block finishes
+	 * @param accumulator
+	 *            Successful results are combined here if it isn't null
+	 * @param cache
+	 *            Results are written here if it isn't null
+	 * @param timer
+	 *            Cancels blocks of {@link BudgetedWeight BudgetedWeights} that run over their budget (per pair, times
+	 *            the size of the block); null for no limit
+	 * @param costModel
+	 *            Estimates the cost of each block from the work of its pairs, and learns from it; may be null
+	 * @param results
+	 *            Successful results of pairs added with a result key are recorded here; may be null
+	 */
+	public WeightBatcher(ExecutorService pool, ExecutorService fetchPool, int batchSize, Queue<WeightJob> completed,
+			HomologyAccumulator accumulator, WeightCache cache, ScheduledExecutorService timer, CostModel costModel,
+			ConcurrentMap<String, Double> results) {
+		this.pool = pool;
+		this.fetchPool = fetchPool;
+		this.batchSize = batchSize;
+		this.completed = completed;
+		this.accumulator = accumulator;
+		this.cache = cache;
+		this.timer = timer;
+		this.costModel = costModel;
+		this.results = results;
+	}
+
+	/**
+	 * Adds a pair to the open block for {@code a} and the class of {@code weight}, submitting the block if it's full.
+	 * 
+	 * @param work
+	 *            The {@link CostEstimator estimated work} for the pair
+	 * @param resultKey
+	 *            The key to record a successful result under, or null
+	 */
+	public void add(BatchWeight weight, int a, int b, String uniProtIdA, String uniProtIdB, double work,
+			String resultKey) {
+		String key = weight.getClass().getName() + "\t" + a;
+		Block block = open.get(key);
+		if (block == null) {
+			block = new Block(weight, a, uniProtIdA);
+			open.put(key, block);
+		}
+		block.targets[block.n] = b;
+		block.targetUniProtIds[block.n] = uniProtIdB;
+		WeightJob job = new WeightJob(weight.getClass(), a, b, uniProtIdA, uniProtIdB, 0, completed, accumulator);
+		if (results != null && resultKey != null) job.setResultKey(results, resultKey);
+		block.jobs[block.n] = job;
+		block.work += work;
+		block.n++;
+		if (block.n == batchSize) {
+			open.remove(key);
+			submit(block);
+		}
+	}
+
+	/**
+	 * Submits every open block.
+	 */
+	public void flush() {
+		for (Block block : open.values()) {
+			submit(block);
+		}
+		open.clear();
+	}
+
+	private void submit(final Block block) {
+		if (costModel != null) {
+			block.cost = costModel.estimate(block.weight.getClass(), block.work);
+			block.order = costModel.nextOrder();
+		}
+		if (fetchPool == null || !(block.weight instanceof FetchingWeight)) {
+			pool.execute(block);
+		} else {
+			fetchPool.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						((FetchingWeight) block.weight).fetchAll(block.uniProtId,
+								Arrays.copyOf(block.targetUniProtIds, block.n));
+					} catch (RuntimeException e) {
+						logger.warn("Couldn't fetch data for a block for " + block.uniProtId, e);
+					}
+					pool.execute(block); // the block reports whatever is still missing
+				}
+			});
+		}
+		logger.debug("Running a block of " + block.n + " " + block.weight.getClass().getSimpleName() + " weights for "
+				+ block.uniProtId + " (" + block.v + ")");
+	}
+
+}
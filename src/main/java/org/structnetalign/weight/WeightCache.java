@@ -0,0 +1,187 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A persistent cache of {@link WeightResult weights}, keyed by the pair of UniProt Ids, the {@link Weight} class, and
+ * its {@link FingerprintedWeight#getParameterFingerprint() parameter fingerprint}. Only {@link FingerprintedWeight
+ * FingerprintedWeights} are cached, and only successful results are stored, since failures are often temporary (a
+ * download timing out, for example).
+ * <p>
+ * The cache is an append-only log of records, each of which is the length of the key as an int, the UTF-8 key, and
+ * the weight as a double. On opening, the log is scanned once to build an in-memory index, and a record left
+ * incomplete by a crash is truncated, as is anything after a key length that is negative or over
+ * {@link #MAX_KEY_LENGTH}. Lookups never lock, so any number of weighting threads can read concurrently;
+ * appends are serialized.
+ * 
+ * @author dmyersturnbull
+ */
+public class WeightCache implements Closeable {
+
+	/**
+	 * The longest key, in bytes, that is stored or read back. Real keys are a class name, a fingerprint, and two UniProt
+	 * Ids, so a longer length in the log can only be garbage.
+	 */
+	public static final int MAX_KEY_LENGTH = 4096;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final Logger logger = LogManager.getLogger("org.structnetalign");
+
+	private final File file;
+
+	private final ConcurrentHashMap<String, Double> index = new ConcurrentHashMap<>();
+
+	private DataOutputStream out;
+
+	private int nHits;
+
+	private int nMisses;
+
+	/**
+	 * The Ids are put in order, since the weights are symmetric and the order they're given in depends only on how the
+	 * network numbers its vertices, which changes between releases.
+	 */
+	static String key(Weight weight, String uniProtIdA, String uniProtIdB) {
+		if (!(weight instanceof FingerprintedWeight)) return null;
+		String fingerprint = ((FingerprintedWeight) weight).getParameterFingerprint();
+		if (fingerprint == null) return null;
+		if (uniProtIdA.compareTo(uniProtIdB) > 0) {
+			String swap = uniProtIdA;
+			uniProtIdA = uniProtIdB;
+			uniProtIdB = swap;
+		}
+		return weight.getClass().getName() + "\t" + fingerprint + "\t" + uniProtIdA + "\t" + uniProtIdB;
+	}
+
+	/**
+	 * Opens the cache in {@code file}, creating it if it doesn't exist.
+	 */
+	public WeightCache(File file) throws IOException {
+		this.file = file;
+		long length = load();
+		if (length < file.length()) {
+			logger.warn("Truncating an incomplete record at the end of weight cache " + file);
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(length);
+			}
+		}
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		logger.info("Opened weight cache " + file + " with " + index.size() + " entries");
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+			logger.info("Closed weight cache " + file + " after " + nHits + " hits and " + nMisses + " misses");
+		}
+	}
+
+	/**
+	 * @return The cached weight, or null if there is none or {@code weight} can't be cached
+	 */
+	public Double get(Weight weight, String uniProtIdA, String uniProtIdB) {
+		String key = key(weight, uniProtIdA, uniProtIdB);
+		if (key == null) return null;
+		Double value = index.get(key);
+		if (value == null) {
+			nMisses++; // only approximate; this is just for logging
+		} else {
+			nHits++;
+		}
+		return value;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Stores a weight, unless {@code weight} can't be cached or there is already an entry for it.
+	 * 
+	 * @throws IOException
+	 *             If the key is longer than {@link #MAX_KEY_LENGTH}
+	 */
+	public void put(Weight weight, String uniProtIdA, String uniProtIdB, double value) throws IOException {
+		String key = key(weight, uniProtIdA, uniProtIdB);
+		if (key == null) return;
+		byte[] bytes = key.getBytes(UTF_8);
+		if (bytes.length > MAX_KEY_LENGTH) throw new IOException("The key for " + uniProtIdA + " against "
+				+ uniProtIdB + " is " + bytes.length + " bytes, over the limit of " + MAX_KEY_LENGTH);
+		if (index.putIfAbsent(key, value) != null) return; // another thread got here first
+		synchronized (this) {
+			if (out == null) throw new IOException("Weight cache " + file + " is closed");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			out.writeDouble(value);
+			out.flush();
+		}
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * Reads the log into the index.
+	 * 
+	 * @return The number of bytes that make up complete records
+	 */
+	private long load() throws IOException {
+		if (!file.exists()) return 0;
+		long length = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			while (true) {
+				int keyLength;
+				try {
+					keyLength = in.readInt();
+				} catch (EOFException e) {
+					break; // a clean end
+				}
+				if (keyLength < 0 || keyLength > MAX_KEY_LENGTH) break; // garbage from an interrupted write
+				try {
+					byte[] bytes = new byte[keyLength];
+					in.readFully(bytes);
+					double value = in.readDouble();
+					index.put(new String(bytes, UTF_8), value);
+					length += 4 + keyLength + 8;
+				} catch (EOFException e) {
+					break; // an incomplete record
+				}
+			}
+		}
+		return length;
+	}
+
+}
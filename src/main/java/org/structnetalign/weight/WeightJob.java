@@ -0,0 +1,236 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Future for one weight of one pair, which puts itself on a completion queue when it finishes. Carries its pair and
+ * how many results its pair had produced before it (in its chain of fallbacks), so that no per-pair bookkeeping needs
+ * to be kept elsewhere. If it has a {@link HomologyAccumulator}, a successful result is combined into it by the thread
+ * that finished the job, before the job is queued. If it has a time budget, it cancels itself (interrupting the thread
+ * running it) when it runs for longer; if it's still running then, its thread is abandoned to a
+{@link ReplacingThreadPool}, which starts another in its place. If it has a {@link CostModel}, it has an estimated cost for priority queues, and
+ * reports how long it actually took. If it has a result key, a successful result is also recorded under that key.
+ * 
+ * @author dmyersturnbull
+ */
+class WeightJob extends FutureTask<WeightResult> implements CostModel.Costed {
+
+	private static final Callable<WeightResult> SET_EXTERNALLY = new Callable<WeightResult>() {
+		@Override
+		public WeightResult call() throws Exception {
+			throw new UnsupportedOperationException("Completed by its block");
+		}
+	};
+
+	private final HomologyAccumulator accumulator;
+
+	private final int a;
+	private final int b;
+	private final int nAttempted;
+	private final Queue<WeightJob> completed;
+	private final String uniProtIdA;
+	private final String uniProtIdB;
+	private final Class<? extends Weight> weightClass;
+
+	private double cost;
+
+	private CostModel costModel;
+
+	private long order;
+
+	private String resultKey;
+
+	private ConcurrentMap<String, Double> results;
+
+	private long timeBudget;
+
+	private ScheduledExecutorService timer;
+
+	private ReplacingThreadPool pool;
+
+	private boolean isAbandoned;
+
+	private boolean isReturned;
+
+	private double work;
+
+	/**
+	 * Creates a job that is completed by {@link #set(WeightResult)} or {@link #setException(Throwable)} rather than by
+	 * running.
+	 */
+	public WeightJob(Class<? extends Weight> weightClass, int a, int b, String uniProtIdA, String uniProtIdB,
+			int nAttempted, Queue<WeightJob> completed, HomologyAccumulator accumulator) {
+		this(SET_EXTERNALLY, weightClass, a, b, uniProtIdA, uniProtIdB, nAttempted, completed, accumulator);
+	}
+
+	/**
+	 * @param nAttempted
+	 *            The number of results the pair has produced in this chain before this one
+	 * @param completed
+	 *            This job is added here when it finishes, however it finishes
+	 * @param accumulator
+	 *            A successful result is added here; may be null
+	 */
+	public WeightJob(Callable<WeightResult> callable, Class<? extends Weight> weightClass, int a, int b,
+			String uniProtIdA, String uniProtIdB, int nAttempted, Queue<WeightJob> completed,
+			HomologyAccumulator accumulator) {
+		super(callable);
+		this.weightClass = weightClass;
+		this.a = a;
+		this.b = b;
+		this.uniProtIdA = uniProtIdA;
+		this.uniProtIdB = uniProtIdB;
+		this.nAttempted = nAttempted;
+		this.completed = completed;
+		this.accumulator = accumulator;
+	}
+
+	@Override
+	public double getCost() {
+		return cost;
+	}
+
+	@Override
+	public long getOrder() {
+		return order;
+	}
+
+	public int getA() {
+		return a;
+	}
+
+	public int getB() {
+		return b;
+	}
+
+	public int getNAttempted() {
+		return nAttempted;
+	}
+
+	public String getUniProtIdA() {
+		return uniProtIdA;
+	}
+
+	public String getUniProtIdB() {
+		return uniProtIdB;
+	}
+
+	public Class<? extends Weight> getWeightClass() {
+		return weightClass;
+	}
+
+	/**
+	 * Estimates the cost of this job from {@code work}, and records its actual time in {@code costModel} when it
+	 * finishes (unless it's cancelled).
+	 */
+	public void setCost(CostModel costModel, double work) {
+		this.costModel = costModel;
+		this.work = work;
+		cost = costModel.estimate(weightClass, work);
+		order = costModel.nextOrder();
+	}
+
+	/**
+	 * Records a successful result in {@code results} under {@code resultKey} when this job finishes.
+	 */
+	public void setResultKey(ConcurrentMap<String, Double> results, String resultKey) {
+		this.results = results;
+		this.resultKey = resultKey;
+	}
+
+	/**
+	 * Cancels this job if it hasn't finished {@code timeBudget} milliseconds after it starts running.
+	 * 
+	 * @param timer
+	 *            Runs the cancellation
+	 * @param pool
+	 *            The pool running this job, which replaces its thread if it doesn't stop when cancelled; may be null
+	 */
+	public void setTimeBudget(ScheduledExecutorService timer, long timeBudget, ReplacingThreadPool pool) {
+		this.timer = timer;
+		this.timeBudget = timeBudget;
+		this.pool = pool;
+	}
+
+	@Override
+	public void run() {
+		ScheduledFuture<?> timeout = null;
+		if (timer != null && timeBudget > 0) {
+			timeout = timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					cancel(true);
+					abandon();
+				}
+			}, timeBudget, TimeUnit.MILLISECONDS);
+		}
+		long start = System.nanoTime();
+		try {
+			super.run();
+		} finally {
+			if (timeout != null) timeout.cancel(false);
+			returned();
+		}
+		if (costModel != null && !isCancelled()) costModel.record(weightClass, work, System.nanoTime() - start);
+	}
+
+	/**
+	 * Gives this job's thread up to the pool if the job hasn't returned, in case the weight ignores the interrupt.
+	 */
+	private synchronized void abandon() {
+		if (pool == null || isReturned) return;
+		isAbandoned = true;
+		pool.abandon();
+	}
+
+	private synchronized void returned() {
+		isReturned = true;
+		if (isAbandoned) pool.reclaim();
+	}
+
+	@Override
+	public void set(WeightResult result) {
+		super.set(result);
+	}
+
+	@Override
+	public void setException(Throwable t) {
+		super.setException(t);
+	}
+
+	@Override
+	protected void done() {
+		if ((accumulator != null || results != null) && !isCancelled()) {
+			try {
+				double weight = get().getWeight(); // doesn't block now
+				if (accumulator != null) accumulator.add(a, b, weight);
+				if (results != null) results.putIfAbsent(resultKey, weight);
+			} catch (ExecutionException | InterruptedException e) {
+				// the consumer deals with failures
+			}
+		}
+		completed.add(this);
+	}
+
+}
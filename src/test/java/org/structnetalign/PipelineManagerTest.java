@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import edu.uci.ics.jung.graph.UndirectedGraph;
+
+public class PipelineManagerTest {
+
+	private static final double PRECISION = 0.0000001;
+
+	private static final String RESOURCE_DIR = "src/test/resources/util/";
+
+	private static CleverGraph graphOf(int nVertices) {
+		CleverGraph graph = new CleverGraph();
+		for (int v = 0; v < nVertices; v++) {
+			graph.addVertex(v);
+		}
+		return graph;
+	}
+
+	@Test
+	public void testLoadHomology() {
+		PipelineManager manager = new PipelineManager();
+		manager.setHomologyFile(new File(RESOURCE_DIR + "hom_1.graphml.xml"));
+		CleverGraph graph = graphOf(6);
+		manager.loadHomology(graph);
+		UndirectedGraph<Integer, HomologyEdge> homology = graph.getHomology();
+		assertEquals(3, homology.getEdgeCount());
+		assertEquals(0.1, homology.findEdge(0, 5).getWeight(), PRECISION);
+		assertEquals(0.3, homology.findEdge(2, 4).getWeight(), PRECISION);
+		assertEquals(0.6, homology.findEdge(4, 5).getWeight(), PRECISION);
+		assertNull(homology.findEdge(0, 2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLoadHomologyFromAnotherNetwork() {
+		PipelineManager manager = new PipelineManager();
+		manager.setHomologyFile(new File(RESOURCE_DIR + "hom_1.graphml.xml"));
+		manager.loadHomology(graphOf(5)); // no vertex 5
+	}
+
+}
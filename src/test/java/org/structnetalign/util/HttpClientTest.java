@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class HttpClientTest {
+
+	private static class EchoServer extends LocalHttpServer {
+		public EchoServer() throws IOException {
+			super();
+		}
+		@Override
+		protected String respond(String uri) {
+			if (uri.startsWith("/missing")) return null;
+			return "got " + uri;
+		}
+	}
+
+	@Test
+	public void testGet() throws IOException {
+		try (EchoServer server = new EchoServer()) {
+			HttpClient client = new HttpClient(2, 5000);
+			assertEquals("got /a?b=c", client.get(server.getUrl() + "/a?b=c"));
+		}
+	}
+
+	@Test
+	public void testError() throws IOException {
+		try (EchoServer server = new EchoServer()) {
+			HttpClient client = new HttpClient(2, 5000);
+			try {
+				client.get(server.getUrl() + "/missing");
+				fail("Expected an IOException for a 404");
+			} catch (IOException e) {
+				// good
+			}
+			// the client is still usable
+			assertEquals("got /x", client.get(server.getUrl() + "/x"));
+		}
+	}
+
+	@Test
+	public void testKeepAlive() throws IOException {
+		try (EchoServer server = new EchoServer()) {
+			HttpClient client = new HttpClient(2, 5000);
+			for (int i = 0; i < 10; i++) {
+				assertEquals("got /" + i, client.get(server.getUrl() + "/" + i));
+			}
+			assertEquals(10, server.getRequests().size());
+			assertEquals("The connection wasn't reused", 1, server.getConnectionCount());
+		}
+	}
+
+}
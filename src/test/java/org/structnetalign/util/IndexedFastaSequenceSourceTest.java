@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class IndexedFastaSequenceSourceTest {
+
+	private static final String FASTA = ">sp|P69905|HBA_HUMAN Hemoglobin subunit alpha\n"
+			+ "MVLSPADKTNVKAAWGKVGAHAGEYGAEALERMFLSFPTTKTYFPHFDLSHGSAQVKGHGKKVADALTNAVAHV\n"
+			+ "DDMPNALSALSDLHAHKLRVDPVNFKLLSHCLLVTLAAHLPAEFTPAVHASLDKFLASVSTVLTSKYR\n"
+			+ ">tr|Q9XYZ1|Q9XYZ1_ECOLI Something\r\n" + "MKV\r\n" + "LLA\r\n" + ">plain\n" + "ACDE";
+
+	private static File write() throws IOException {
+		File file = File.createTempFile("sequences", ".fasta");
+		file.deleteOnExit();
+		new File(file.getPath() + IndexedFastaSequenceSource.INDEX_EXTENSION).deleteOnExit();
+		try (FileOutputStream fos = new FileOutputStream(file)) {
+			fos.write(FASTA.getBytes(StandardCharsets.UTF_8));
+		}
+		return file;
+	}
+
+	@Test
+	public void testRead() throws Exception {
+		File file = write();
+		try (IndexedFastaSequenceSource source = new IndexedFastaSequenceSource(file)) {
+			check(source);
+		}
+		assertTrue(new File(file.getPath() + IndexedFastaSequenceSource.INDEX_EXTENSION).exists());
+		try (IndexedFastaSequenceSource source = new IndexedFastaSequenceSource(file)) {
+			check(source); // now from the index file
+		}
+	}
+
+	private void check(IndexedFastaSequenceSource source) {
+		assertEquals(3, source.size());
+		assertEquals("MVLSPADKTNVKAAWGKVGAHAGEYGAEALERMFLSFPTTKTYFPHFDLSHGSAQVKGHGKKVADALTNAVAHV"
+				+ "DDMPNALSALSDLHAHKLRVDPVNFKLLSHCLLVTLAAHLPAEFTPAVHASLDKFLASVSTVLTSKYR", source.getSequence("P69905"));
+		assertEquals("MKVLLA", source.getSequence("Q9XYZ1"));
+		assertEquals("ACDE", source.getSequence("plain"));
+		assertNull(source.getSequence("P00000"));
+	}
+
+}
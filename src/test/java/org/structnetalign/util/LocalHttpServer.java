@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stand-in HTTP server on localhost, so that code that downloads can be tested offline. Responds to every request
+ * with whatever {@link #respond(String)} returns, and records each request and the client port it came from.
+ * @author dmyersturnbull
+ */
+public abstract class LocalHttpServer implements AutoCloseable {
+
+	private final Set<Integer> clientPorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+	private final List<String> requests = new CopyOnWriteArrayList<>();
+
+	private final HttpServer server;
+
+	public LocalHttpServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String uri = exchange.getRequestURI().toString();
+				requests.add(uri);
+				clientPorts.add(exchange.getRemoteAddress().getPort());
+				String body = respond(uri);
+				byte[] bytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(body == null ? 404 : 200, bytes.length == 0 ? -1 : bytes.length);
+				try (OutputStream os = exchange.getResponseBody()) {
+					os.write(bytes);
+				}
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * @return The base URL of this server, without a trailing slash
+	 */
+	public String getUrl() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * @return The number of distinct client ports that made requests; one per connection
+	 */
+	public int getConnectionCount() {
+		return clientPorts.size();
+	}
+
+	/**
+	 * @return The path and query of every request so far
+	 */
+	public List<String> getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return The body to send for a request, or null to send a 404
+	 */
+	protected abstract String respond(String uri);
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+
+}
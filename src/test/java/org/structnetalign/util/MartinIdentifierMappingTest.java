@@ -14,6 +14,7 @@
 package org.structnetalign.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -38,4 +39,10 @@ public class MartinIdentifierMappingTest {
 		String scop = mapping.uniProtToScop("P00720");
 		assertEquals("d102la_", scop);
 	}
+
+	@Test
+	public void testUnknown() {
+		assertNull(mapping.uniProtToScop("NOT_AN_ID"));
+		assertNull(mapping.uniProtToPdb("NOT_AN_ID"));
+	}
 }
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class UniProtSequenceSourceTest {
+
+	private static class UniProtServer extends LocalHttpServer {
+		private final Map<String, String> sequences = new HashMap<>();
+		public UniProtServer() throws IOException {
+			super();
+			sequences.put("P69905", "MVLSPADKTNVKAAWGKVGAHAGEYGAEALERMFLSFPTTKTYFPHF");
+			sequences.put("P68871", "MVHLTPEEKSAVTALWGKVNVDEVGGEALGRLLVVYPWTQRFFESFGDLST");
+			sequences.put("P02144", "MGLSDGEWQLVLNVWGKVEADIPGHGQEVLIRLFKGHPETLEKFDKFKHLKSEDEMKASEDLKKHG");
+		}
+		@Override
+		protected String respond(String uri) {
+			String ids = uri.substring(uri.lastIndexOf('/') + 1);
+			StringBuilder sb = new StringBuilder();
+			for (String id : ids.split(",")) {
+				String sequence = sequences.get(id);
+				if (sequence == null) continue;
+				sb.append(">sp|" + id + "|TEST_HUMAN Some protein OS=Homo sapiens\n");
+				// wrap lines like UniProt does
+				for (int i = 0; i < sequence.length(); i += 20) {
+					sb.append(sequence.substring(i, Math.min(sequence.length(), i + 20))).append('\n');
+				}
+			}
+			return sb.length() == 0 ? null : sb.toString();
+		}
+	}
+
+	@Test
+	public void testBatch() throws IOException {
+		try (UniProtServer server = new UniProtServer()) {
+			UniProtSequenceSource source = new UniProtSequenceSource(server.getUrl() + "/one/%s", server.getUrl()
+					+ "/batch/%s");
+			Map<String, String> found = source.getSequences(Arrays.asList("P69905", "P68871", "P02144", "Q00000"));
+			assertEquals(3, found.size());
+			assertFalse(found.containsKey("Q00000"));
+			assertEquals(server.sequences.get("P68871"), found.get("P68871"));
+			assertEquals(1, server.getRequests().size());
+			// already downloaded
+			assertEquals(server.sequences.get("P02144"), source.getSequence("P02144"));
+			assertEquals(1, server.getRequests().size());
+		}
+	}
+
+	@Test
+	public void testSingle() throws IOException {
+		try (UniProtServer server = new UniProtServer()) {
+			UniProtSequenceSource source = new UniProtSequenceSource(server.getUrl() + "/one/%s", null);
+			assertEquals(server.sequences.get("P69905"), source.getSequence("P69905"));
+			assertEquals(server.sequences.get("P69905"), source.getSequence("P69905"));
+			assertEquals(1, server.getRequests().size());
+			Map<String, String> found = source.getSequences(Arrays.asList("P69905", "P68871"));
+			assertEquals(2, found.size());
+			assertEquals(2, server.getRequests().size());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissing() throws IOException {
+		try (UniProtServer server = new UniProtServer()) {
+			UniProtSequenceSource source = new UniProtSequenceSource(server.getUrl() + "/one/%s", null);
+			assertNull(source.getSequence("Q00000"));
+		}
+	}
+
+	@Test
+	public void testParseFasta() {
+		Map<String, String> records = UniProtSequenceSource.parseFasta(">sp|P1|A_HUMAN x\nMK\nLV\n>tr|Q2|B_HUMAN\r\nGG\r\n");
+		assertEquals(2, records.size());
+		assertEquals("MKLV", records.get("P1"));
+		assertEquals("GG", records.get("Q2"));
+	}
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+
+import org.biojava.bio.structure.Atom;
+import org.junit.Test;
+
+public class CoordinateStoreTest {
+
+	private static final double PRECISION = 0.0001;
+
+	private static File tempFile() throws IOException {
+		File file = File.createTempFile("castore", ".bin");
+		file.deleteOnExit();
+		return file;
+	}
+
+	private static File write() throws IOException {
+		File file = tempFile();
+		CoordinateStore.Builder builder = new CoordinateStore.Builder();
+		builder.add("2xyz.B", new float[] { 1, 2, 3, 4.5f, -5, 6 }, "GW".getBytes("US-ASCII"));
+		builder.add("1abc.A", new float[] { -1, 0, 0.25f }, "M".getBytes("US-ASCII"));
+		builder.add("3def.C", new float[0], new byte[0]);
+		builder.write(file);
+		return file;
+	}
+
+	@Test
+	public void testAtoms() throws IOException {
+		try (CoordinateStore store = new CoordinateStore(write())) {
+			Atom[] ca = store.getAtoms("2xyz.B");
+			assertEquals(2, ca.length);
+			assertArrayEquals(new double[] { 4.5, -5, 6 }, ca[1].getCoords(), PRECISION);
+			assertEquals("CA", ca[0].getName());
+			assertEquals("GLY", ca[0].getGroup().getPDBName());
+			assertEquals("TRP", ca[1].getGroup().getPDBName());
+			assertEquals("B", ca[1].getGroup().getChain().getChainID());
+			assertEquals("2xyz", ca[1].getGroup().getChain().getParent().getPDBCode());
+			assertEquals(2, ca[1].getGroup().getResidueNumber().getSeqNum().intValue()); // numbered from 1
+			assertNull(store.getAtoms("2xyz.A"));
+		}
+	}
+
+	@Test
+	public void testBuild() throws IOException {
+		try (CoordinateStore store = new CoordinateStore(write())) {
+			assertEquals(3, store.size());
+			assertEquals(3, store.getNAtoms());
+			assertEquals(2, store.getLength("2xyz.B"));
+			assertEquals(0, store.getLength("3def.C"));
+			assertEquals(-1, store.getLength("2xyz.A"));
+			assertArrayEquals(new double[] { 1, 2, 3, 4.5, -5, 6 }, store.getCoordinates("2xyz.B"), PRECISION);
+			assertArrayEquals(new double[] { -1, 0, 0.25 }, store.getCoordinates("1abc.A"), PRECISION);
+			assertEquals(0, store.getCoordinates("3def.C").length);
+			assertNull(store.getCoordinates("2xyz.A"));
+			assertTrue(store.contains("1abc.A"));
+			assertFalse(store.contains("1abc"));
+		}
+	}
+
+	@Test
+	public void testResidueNumbers() throws IOException {
+		File file = tempFile();
+		CoordinateStore.Builder builder = new CoordinateStore.Builder();
+		builder.add("2xyz.B", new float[] { 1, 2, 3, 4.5f, -5, 6, 7, 8, 9 }, "GWA".getBytes("US-ASCII"), new int[] {
+				-2, 52, 52 }, new byte[] { 0, 0, 'A' });
+		builder.write(file);
+		try (CoordinateStore store = new CoordinateStore(file)) {
+			Atom[] ca = store.getAtoms("2xyz.B");
+			assertEquals(-2, ca[0].getGroup().getResidueNumber().getSeqNum().intValue());
+			assertNull(ca[0].getGroup().getResidueNumber().getInsCode());
+			assertEquals(52, ca[1].getGroup().getResidueNumber().getSeqNum().intValue());
+			assertNull(ca[1].getGroup().getResidueNumber().getInsCode());
+			assertEquals(52, ca[2].getGroup().getResidueNumber().getSeqNum().intValue());
+			assertEquals('A', ca[2].getGroup().getResidueNumber().getInsCode().charValue());
+			assertEquals("B", ca[2].getGroup().getResidueNumber().getChainId());
+			assertArrayEquals(new double[] { 7, 8, 9 }, ca[2].getCoords(), PRECISION);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatched() {
+		new CoordinateStore.Builder().add("1abc.A", new float[] { 1, 2, 3 }, new byte[2]);
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotAStore() throws IOException {
+		File file = tempFile();
+		try (PrintWriter pw = new PrintWriter(new FileOutputStream(file))) {
+			pw.println("this is not a coordinate store");
+		}
+		new CoordinateStore(file).close();
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncated() throws IOException {
+		File file = write();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 1);
+		}
+		new CoordinateStore(file).close();
+	}
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+
+import org.junit.Test;
+
+public class CostModelTest {
+
+	private static final double PRECISION = 0.000001;
+
+	private static class Task implements Runnable, CostModel.Costed {
+		private final double cost;
+		private final long order;
+		public Task(double cost, long order) {
+			this.cost = cost;
+			this.order = order;
+		}
+		@Override
+		public double getCost() {
+			return cost;
+		}
+		@Override
+		public long getOrder() {
+			return order;
+		}
+		@Override
+		public void run() {
+		}
+	}
+
+	@Test
+	public void testLongestFirst() {
+		PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>(11, CostModel.LONGEST_FIRST);
+		Runnable plain = new Runnable() {
+			@Override
+			public void run() {
+			}
+		};
+		Task cheap = new Task(1, 0);
+		Task expensive = new Task(1000, 1);
+		Task cheapLater = new Task(1, 2);
+		queue.add(plain);
+		queue.add(cheapLater);
+		queue.add(cheap);
+		queue.add(expensive);
+		List<Runnable> order = new ArrayList<>();
+		queue.drainTo(order);
+		assertEquals(expensive, order.get(0));
+		assertEquals(cheap, order.get(1));
+		assertEquals(cheapLater, order.get(2));
+		assertEquals(plain, order.get(3));
+	}
+
+	@Test
+	public void testRecord() {
+		CostModel model = new CostModel();
+		assertEquals(CostModel.DEFAULT_RATE * 50, model.estimate(CeWeight.class, 50), PRECISION);
+		model.record(CeWeight.class, 100, 1000); // 10ns per unit
+		assertEquals(10, model.getRate(CeWeight.class), PRECISION);
+		model.record(CeWeight.class, 100, 2000); // 20ns per unit
+		assertEquals(10 + CostModel.SMOOTHING * 10, model.getRate(CeWeight.class), PRECISION);
+		assertEquals(CostModel.DEFAULT_RATE, model.getRate(ScopWeight.class), PRECISION);
+		model.record(ScopWeight.class, 0, 1000); // ignored
+		assertEquals(CostModel.DEFAULT_RATE, model.getRate(ScopWeight.class), PRECISION);
+	}
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DescriptorIndexTest {
+
+	private static final double PRECISION = 0.0000001;
+
+	/**
+	 * A straight line of n atoms 3.8 Angstroms apart.
+	 */
+	private static double[] line(int n) {
+		double[] coordinates = new double[3 * n];
+		for (int i = 0; i < n; i++) {
+			coordinates[3 * i] = 3.8 * i;
+		}
+		return coordinates;
+	}
+
+	/**
+	 * A tight ball of n atoms.
+	 */
+	private static double[] ball(int n, Random random) {
+		double[] coordinates = new double[3 * n];
+		for (int i = 0; i < coordinates.length; i++) {
+			coordinates[i] = random.nextDouble() * 6;
+		}
+		return coordinates;
+	}
+
+	@Test
+	public void testDescribe() {
+		double[] descriptor = DescriptorIndex.describe(line(3));
+		assertEquals(DescriptorIndex.N_BINS, descriptor.length);
+		// distances 3.8, 3.8, and 7.6
+		assertEquals(2.0 / 3.0, descriptor[1], PRECISION);
+		assertEquals(1.0 / 3.0, descriptor[3], PRECISION);
+	}
+
+	@Test
+	public void testCandidates() {
+		Random random = new Random(1);
+		DescriptorIndex index = new DescriptorIndex(1, null);
+		index.add("line1", DescriptorIndex.describe(line(50)));
+		index.add("line2", DescriptorIndex.describe(line(52)));
+		index.add("ball1", DescriptorIndex.describe(ball(50, random)));
+		index.add("ball2", DescriptorIndex.describe(ball(55, random)));
+		index.build();
+		assertTrue(index.isCandidate("line1", "line2"));
+		assertTrue(index.isCandidate("ball1", "ball2"));
+		assertFalse(index.isCandidate("line1", "ball1"));
+		assertFalse(index.isCandidate("line2", "ball2"));
+		assertTrue("Not indexed", index.isCandidate("line1", "unknown"));
+		assertEquals(2, index.getCandidateCount());
+	}
+
+	@Test
+	public void testNearestMatchesBruteForce() {
+		Random random = new Random(2);
+		final List<double[]> points = new ArrayList<>();
+		DescriptorIndex index = new DescriptorIndex(3, null);
+		for (int i = 0; i < 300; i++) {
+			double[] point = new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble() };
+			points.add(point);
+			index.add(String.valueOf(i), point);
+		}
+		index.build();
+		for (int q = 0; q < 20; q++) {
+			final double[] query = new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble() };
+			List<Integer> expected = new ArrayList<>();
+			for (int i = 0; i < points.size(); i++) {
+				expected.add(i);
+			}
+			Collections.sort(expected, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					return Double.compare(distance(query, points.get(o1)), distance(query, points.get(o2)));
+				}
+			});
+			List<String> actual = index.nearestIds(query, 5);
+			for (int i = 0; i < 5; i++) {
+				assertEquals(String.valueOf(expected.get(i)), actual.get(i));
+			}
+		}
+	}
+
+	private static double distance(double[] a, double[] b) {
+		double sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			sum += (a[i] - b[i]) * (a[i] - b[i]);
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class HomologyAccumulatorTest {
+
+	private static final double PRECISION = 0.000001;
+
+	@Test
+	public void testNoisyOr() {
+		HomologyAccumulator accumulator = new HomologyAccumulator(4);
+		accumulator.add(1, 2, 0.3);
+		accumulator.add(2, 1, 0.8);
+		accumulator.add(1, 3, 0.1);
+		accumulator.add(4, 5, 0);
+		assertEquals(0.3 + 0.8 - 0.3 * 0.8, accumulator.get(1, 2), PRECISION);
+		assertEquals(0.3 + 0.8 - 0.3 * 0.8, accumulator.get(2, 1), PRECISION);
+		assertEquals(0.1, accumulator.get(3, 1), PRECISION);
+		assertEquals(0, accumulator.get(4, 5), PRECISION);
+		assertEquals(2, accumulator.size());
+	}
+
+	@Test
+	public void testPack() {
+		long key = HomologyAccumulator.pack(-7, 12);
+		assertEquals(key, HomologyAccumulator.pack(12, -7));
+		assertEquals(-7, HomologyAccumulator.unpackFirst(key));
+		assertEquals(12, HomologyAccumulator.unpackSecond(key));
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		final HomologyAccumulator accumulator = new HomologyAccumulator(2);
+		final int nPairs = 50;
+		final int nTimes = 20;
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				futures.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int i = 0; i < nTimes; i++) {
+							for (int v = 0; v < nPairs; v++) {
+								accumulator.add(v, v + 1, 0.01);
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		double expected = 1 - Math.pow(1 - 0.01, 8 * nTimes);
+		assertEquals(nPairs, accumulator.size());
+		for (int v = 0; v < nPairs; v++) {
+			assertEquals(expected, accumulator.get(v + 1, v), PRECISION);
+		}
+	}
+
+}
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.structnetalign.CleverGraph;
+import org.structnetalign.HomologyEdge;
+
+import edu.uci.ics.jung.graph.UndirectedGraph;
+import edu.uci.ics.jung.graph.UndirectedSparseGraph;
+import edu.uci.ics.jung.graph.util.Pair;
+
+public class IncrementalWeightManagerTest {
+
+	private static final double PRECISION = 0.0000001;
+
+	private static Set<Pair<Integer>> collect(Iterator<Pair<Integer>> iter) {
+		Set<Pair<Integer>> pairs = new HashSet<>();
+		int n = 0;
+		while (iter.hasNext()) {
+			Pair<Integer> pair = iter.next();
+			assertEquals("Pair is not ordered", true, pair.getFirst() < pair.getSecond());
+			pairs.add(pair);
+			n++;
+		}
+		assertEquals("A pair was generated twice", n, pairs.size());
+		return pairs;
+	}
+
+	@Test
+	public void testPairs() {
+		Map<Integer, String> uniProtIds = new HashMap<>();
+		uniProtIds.put(1, "A");
+		uniProtIds.put(2, "B");
+		uniProtIds.put(3, "C");
+		uniProtIds.put(4, "D");
+		uniProtIds.put(5, "E");
+		uniProtIds.put(6, null);
+		Set<String> known = new HashSet<>(Arrays.asList("A", "C", "E"));
+		Set<Pair<Integer>> pairs = collect(new IncrementalPairGenerator(known).generate(uniProtIds.keySet(),
+				uniProtIds));
+		// B and D against each other and against the 4 others
+		assertEquals(9, pairs.size());
+		for (Pair<Integer> pair : pairs) {
+			assertEquals(true, pair.getFirst() == 2 || pair.getFirst() == 4 || pair.getSecond() == 2
+					|| pair.getSecond() == 4);
+		}
+		// filtering another generator gives the same pairs
+		CandidatePairGenerator base = new CandidatePairGenerator() {
+			@Override
+			public Iterator<Pair<Integer>> generate(Collection<Integer> vertices, Map<Integer, String> uniProtIds) {
+				return new AllPairsGenerator().generate(vertices, uniProtIds);
+			}
+		};
+		assertEquals(pairs, collect(new IncrementalPairGenerator(known, base).generate(uniProtIds.keySet(),
+				uniProtIds)));
+		// nothing new
+		assertEquals(0, collect(new IncrementalPairGenerator(new HashSet<>(uniProtIds.values())).generate(
+				uniProtIds.keySet(), uniProtIds)).size());
+	}
+
+	@Test
+	public void testIncremental() {
+
+		UndirectedGraph<Integer, HomologyEdge> previous = new UndirectedSparseGraph<>();
+		previous.addEdge(new HomologyEdge(0, 0.8), 1, 2);
+		previous.addEdge(new HomologyEdge(1, 0.6), 2, 3);
+		previous.addEdge(new HomologyEdge(2, 0.9), 3, 4);
+		Map<Integer, String> previousUniProtIds = new HashMap<>();
+		previousUniProtIds.put(1, "A");
+		previousUniProtIds.put(2, "B");
+		previousUniProtIds.put(3, "C");
+		previousUniProtIds.put(4, "D"); // removed
+
+		CleverGraph graph = new CleverGraph();
+		Map<Integer, String> uniProtIds = new HashMap<>();
+		uniProtIds.put(10, "A");
+		uniProtIds.put(11, "B");
+		uniProtIds.put(12, "C");
+		uniProtIds.put(13, "E"); // new
+		uniProtIds.put(14, "A"); // same as 10
+		for (int v : uniProtIds.keySet()) {
+			graph.addVertex(v);
+		}
+
+		final List<Pair<Integer>> weighted = new ArrayList<>();
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				synchronized (weighted) {
+					weighted.add(new Pair<Integer>(a, b));
+				}
+				List<Weight> weights = new ArrayList<Weight>(1);
+				weights.add(SmarterWeightManagerTest.reallySimpleWeight(0.5, null));
+				return weights;
+			}
+		};
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+		CandidatePairGenerator generator = manager.getPairGenerator();
+		new IncrementalWeightManager(manager, previous, previousUniProtIds).assignWeights(graph, uniProtIds);
+		assertEquals("The pair generator wasn't restored", generator, manager.getPairGenerator());
+
+		// only pairs involving E were weighted, and E against A only once, for both 10 and 14
+		assertEquals(3, weighted.size());
+		for (Pair<Integer> pair : weighted) {
+			assertEquals(true, pair.getFirst() == 13 || pair.getSecond() == 13);
+		}
+
+		UndirectedGraph<Integer, HomologyEdge> homology = graph.getHomology();
+		assertEquals(7, homology.getEdgeCount());
+		assertEquals(0.8, homology.findEdge(10, 11).getWeight(), PRECISION);
+		assertEquals(0.8, homology.findEdge(14, 11).getWeight(), PRECISION);
+		assertEquals(0.6, homology.findEdge(11, 12).getWeight(), PRECISION);
+		assertNull(homology.findEdge(10, 14));
+		assertEquals(0.5, homology.findEdge(12, 13).getWeight(), PRECISION);
+		assertEquals(0.5, homology.findEdge(13, 14).getWeight(), PRECISION);
+	}
+
+}
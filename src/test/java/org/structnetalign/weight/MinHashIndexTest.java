@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class MinHashIndexTest {
+
+	private static final double PRECISION = 0.0000001;
+
+	// ubiquitin and a copy with a few point mutations
+	private static final String A = "MQIFVKTLTGKTITLEVEPSDTIENVKAKIQDKEGIPPDQQRLIFAGKQLEDGRTLSDYNIQKESTLHLVLRLRGG";
+	private static final String B = "MQIFVKTLTGKTITLEVEPSDTIENVKAKIQDKEGIPPDQQRLIFAGKQLEDGRTLADYNIQKESTLHLVLRLRGG";
+	// lysozyme
+	private static final String C = "KVFGRCELAAAMKRHGLDNYRGYSLGNWVCAAKFESNFNTQATNRNTDGSTDYGILQINSRWWCNDGRTPGSRNLCNIPCSALLSSDITASVNCAKKIVSDGNGMNAWVAWRNRCKGTDVQAWIRGCRL";
+
+	@Test
+	public void testCandidates() {
+		MinHashIndex index = new MinHashIndex(0.5);
+		index.add("A", A);
+		index.add("B", B);
+		index.add("C", C);
+		index.add("short", "MK");
+		index.build();
+		assertEquals(3, index.size());
+		assertTrue(index.isCandidate("A", "B"));
+		assertTrue(index.isCandidate("B", "A"));
+		assertFalse(index.isCandidate("A", "C"));
+		assertFalse(index.isCandidate("B", "C"));
+		assertEquals(1, index.getCandidateCount());
+		assertTrue("Too short to rule out", index.isCandidate("A", "short"));
+		assertTrue("Not indexed", index.isCandidate("A", "unknown"));
+	}
+
+	private static Set<String> kmers(String sequence) {
+		Set<String> kmers = new HashSet<>();
+		for (int i = 0; i + MinHashIndex.DEFAULT_K <= sequence.length(); i++) {
+			kmers.add(sequence.substring(i, i + MinHashIndex.DEFAULT_K));
+		}
+		return kmers;
+	}
+
+	@Test
+	public void testBanding() {
+		for (double threshold : new double[] { 0.1, 0.2, 0.3, 0.5, 0.8, 0.95 }) {
+			MinHashIndex index = new MinHashIndex(threshold);
+			if (!index.isExhaustive()) {
+				assertTrue(index.getRecall(threshold) >= MinHashIndex.TARGET_RECALL);
+			}
+			assertTrue(index.getNBands() * index.getNRows() >= MinHashIndex.MIN_SIGNATURE_LENGTH);
+		}
+		assertTrue(new MinHashIndex(0.01).isExhaustive());
+		assertTrue("Bands given explicitly", new MinHashIndex(0.2, 3, 16, 4).isExhaustive());
+		assertFalse(new MinHashIndex(0.5).isExhaustive());
+	}
+
+	/**
+	 * Pairs comfortably above a low threshold must almost all be candidates.
+	 */
+	@Test
+	public void testRecall() {
+		Random random = new Random(0);
+		String alphabet = "ACDEFGHIKLMNPQRSTVWY";
+		MinHashIndex index = new MinHashIndex(0.2);
+		Set<String> similar = new HashSet<>();
+		for (int i = 0; i < 200; i++) {
+			char[] original = new char[200];
+			for (int j = 0; j < original.length; j++) {
+				original[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+			}
+			char[] mutant = original.clone();
+			double rate = 0.1 + 0.2 * random.nextDouble();
+			for (int j = 0; j < mutant.length; j++) {
+				if (random.nextDouble() < rate) mutant[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+			}
+			index.add("O" + i, new String(original));
+			index.add("M" + i, new String(mutant));
+			Set<String> a = kmers(new String(original));
+			Set<String> b = kmers(new String(mutant));
+			Set<String> union = new HashSet<>(a);
+			union.addAll(b);
+			a.retainAll(b);
+			if ((double) a.size() / union.size() >= 0.35) similar.add("" + i);
+		}
+		index.build();
+		assertTrue(similar.size() > 50);
+		int nFound = 0;
+		for (String i : similar) {
+			if (index.isCandidate("O" + i, "M" + i)) nFound++;
+		}
+		assertTrue(nFound + " of " + similar.size() + " found", nFound >= 0.95 * similar.size());
+	}
+
+	@Test
+	public void testEstimate() {
+		MinHashIndex index = new MinHashIndex(0.5);
+		index.add("A", A);
+		index.add("A2", A.toLowerCase());
+		index.add("C", C);
+		index.build();
+		assertEquals(1.0, index.estimateJaccard("A", "A2"), PRECISION);
+		assertTrue(index.estimateJaccard("A", "C") < 0.2);
+		assertNull(index.estimateJaccard("A", "unknown"));
+	}
+
+	@Test
+	public void testMaxIdentity() {
+		Random random = new Random(0);
+		String alphabet = "ACDEFGHIKLMNPQRSTVWY";
+		MinHashIndex index = new MinHashIndex(0.5);
+		double[] identities = new double[100];
+		for (int i = 0; i < identities.length; i++) {
+			char[] original = new char[300];
+			for (int j = 0; j < original.length; j++) {
+				original[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+			}
+			char[] mutant = original.clone();
+			double rate = 0.05 + 0.5 * random.nextDouble();
+			int nSame = 0;
+			for (int j = 0; j < mutant.length; j++) {
+				if (random.nextDouble() < rate) mutant[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+				if (mutant[j] == original[j]) nSame++;
+			}
+			identities[i] = (double) nSame / original.length; // of the ungapped alignment
+			index.add("O" + i, new String(original));
+			index.add("M" + i, new String(mutant));
+		}
+		index.add("A", A);
+		index.add("C", C);
+		index.build();
+		for (int i = 0; i < identities.length; i++) {
+			double bound = index.estimateMaxIdentity("O" + i, "M" + i);
+			assertTrue(bound + " < " + identities[i], bound >= identities[i]);
+		}
+		assertEquals(1.0, index.estimateMaxIdentity("A", "A"), PRECISION);
+		// unrelated proteins can't be much more than 2/3 identical without sharing some 3-mers
+		assertTrue(index.estimateMaxIdentity("A", "C") < 0.75);
+		assertNull(index.estimateMaxIdentity("A", "unknown"));
+	}
+
+}
@@ -16,6 +16,8 @@ package org.structnetalign.weight;
 
 import static org.junit.Assert.*;
 
+import org.biojava3.alignment.SimpleGapPenalty;
+import org.biojava3.alignment.SubstitutionMatrixHelper;
 import org.junit.Test;
 
 
@@ -36,4 +38,39 @@ public class NeedlemanWunschWeightTest {
 		assertEquals(0.3828903187777678, prob, PRECISION);
 	}
 	
+	/**
+	 * No identity may score above the bound that pairs are pruned by.
+	 */
+	@Test
+	public void testMaxWeight() {
+		GammaScorer gamma = GammaScorer.forBlosum62();
+		double max = gamma.getMaxScore();
+		assertTrue(max < 1);
+		for (int i = 0; i <= 1000; i++) {
+			assertTrue(gamma.score(i / 1000.0) <= max + PRECISION);
+		}
+		assertEquals(0.4007505, max, PRECISION);
+	}
+
+	/**
+	 * The primitive aligner must find the same identity as BioJava.
+	 */
+	@Test
+	public void testPrimitiveMatchesBioJava() throws Exception {
+		PrimitiveNeedlemanWunsch aligner = NeedlemanWunschWeight.flatten(SubstitutionMatrixHelper.getBlosum62(),
+				new SimpleGapPenalty((short) 12, (short) 1), PrimitiveNeedlemanWunsch.DEFAULT_MAX_TRACEBACK_CELLS);
+		String[][] pairs = new String[][] {
+				{ "MQIFVKTLTGKTITLEVEPSDTIENVKAKIQDKEGIPPDQQRLIFAGKQLEDGRTLSDYNIQKESTLHLVLRLRGG",
+						"MVLSPADKTNVKAAWGKVGAHAGEYGAEALERMFLSFPTTKTYFPHFDLSHGSAQVKGHGKKVADALTNAVAHV" },
+				{ "KVFGRCELAAAMKRHGLDNYRGYSLGNWVCAAKFESNFNTQATNRNTDGSTDYGILQINSRWWCNDGRTPGSRNLCNIPCSALLSSDITASVNCAKKIVSDGNGMNAWVAWRNRCKGTDVQAWIRGCRL",
+						"KVFERCELARTLKRLGMDGYRGISLANWMCLAKWESGYNTRATNYNAGDRSTDYGIFQINSRYWCNDGKTPGAVNACHLSCSALLQDNIADAVACAKRVVRDPQGIRAWVAWRNRCQNRDVRQYVQGCGV" },
+				{ "ACDEFGHIKLMNPQRSTVWY", "WYACDEFGHIKLMNPQRSTV" },
+				// equal-scoring alignments end differently at the last cell
+				{ "ASDYKW", "DY" }, { "WYR", "HRRSMEWQ" }, { "TQLACW", "MVTSAIC" }, };
+		for (String[] pair : pairs) {
+			assertEquals(NeedlemanWunschWeight.identityWithBioJava(pair[0], pair[1]), aligner.align(pair[0], pair[1])
+					.getIdentity(), PRECISION);
+		}
+	}
+
 }
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PrecomputedAlignmentTableTest {
+
+	private static final double PRECISION = 0.000001;
+
+	private static File tempFile(String suffix) throws IOException {
+		File file = File.createTempFile("precomputed", suffix);
+		file.deleteOnExit();
+		return file;
+	}
+
+	@Test
+	public void testBuild() throws IOException {
+		File file = tempFile(".bin");
+		PrecomputedAlignmentTable.Builder builder = new PrecomputedAlignmentTable.Builder();
+		builder.add("P2", "P1", 0.5);
+		builder.add("P1", "P3", 0.25);
+		builder.add("P1", "P2", 0.75); // the other direction
+		builder.add("P3", "P3", 1);
+		builder.write(file);
+		try (PrecomputedAlignmentTable table = new PrecomputedAlignmentTable(file)) {
+			assertEquals(2, table.size());
+			assertEquals(0.75, table.get("P1", "P2"), PRECISION);
+			assertEquals(0.75, table.get("P2", "P1"), PRECISION);
+			assertEquals(0.25, table.get("P3", "P1"), PRECISION);
+			assertTrue(Double.isNaN(table.get("P2", "P3")));
+			assertTrue(Double.isNaN(table.get("P2", "P4")));
+			assertFalse(table.contains("P4"));
+		}
+	}
+
+	@Test
+	public void testMany() throws IOException {
+		File file = tempFile(".bin");
+		PrecomputedAlignmentTable.Builder builder = new PrecomputedAlignmentTable.Builder();
+		Random random = new Random(0);
+		double[][] scores = new double[200][200];
+		for (int i = 0; i < 200; i++) {
+			for (int j = i + 1; j < 200; j++) {
+				scores[i][j] = random.nextInt(1000) / 1000.0;
+				builder.add("Q" + j, "Q" + i, scores[i][j]);
+			}
+		}
+		builder.write(file);
+		try (PrecomputedAlignmentTable table = new PrecomputedAlignmentTable(file)) {
+			assertEquals(200 * 199 / 2, table.size());
+			for (int i = 0; i < 200; i++) {
+				for (int j = i + 1; j < 200; j++) {
+					assertEquals(scores[i][j], table.get("Q" + i, "Q" + j), PRECISION);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testTabular() throws IOException {
+		File input = tempFile(".tsv");
+		try (PrintWriter pw = new PrintWriter(new FileOutputStream(input))) {
+			pw.println("query\ttarget\tlength\ttm");
+			pw.println("# a comment");
+			pw.println("sp|P1|A_HUMAN\tsp|P2|B_HUMAN\t120\t0.6");
+			pw.println();
+			pw.println("P1  P3  90  0.3");
+		}
+		File file = tempFile(".bin");
+		PrecomputedAlignmentTable.Builder builder = new PrecomputedAlignmentTable.Builder();
+		assertEquals(2, builder.addTabular(input, 0, 1, 3));
+		builder.write(file);
+		try (PrecomputedAlignmentTable table = new PrecomputedAlignmentTable(file)) {
+			assertEquals(0.6, table.get("P2", "P1"), PRECISION);
+			assertEquals(0.3, table.get("P1", "P3"), PRECISION);
+		}
+	}
+
+	@Test
+	public void testTabularPercent() throws IOException {
+		File input = tempFile(".tsv");
+		try (PrintWriter pw = new PrintWriter(new FileOutputStream(input))) {
+			// BLAST -outfmt 6
+			pw.println("sp|P1|A_HUMAN\tsp|P2|B_HUMAN\t57.20\t250\t101\t3\t1\t250\t5\t252\t1e-80\t280");
+		}
+		File file = tempFile(".bin");
+		PrecomputedAlignmentTable.Builder builder = new PrecomputedAlignmentTable.Builder();
+		assertEquals(1, builder.addTabular(input, 0, 1, 2, 100));
+		builder.write(file);
+		try (PrecomputedAlignmentTable table = new PrecomputedAlignmentTable(file)) {
+			assertEquals(0.572, table.get("P1", "P2"), PRECISION);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testTabularBadScore() throws IOException {
+		File input = tempFile(".tsv");
+		try (PrintWriter pw = new PrintWriter(new FileOutputStream(input))) {
+			pw.println("P1\tP2\t57.2"); // a bit score, not a probability
+		}
+		new PrecomputedAlignmentTable.Builder().addTabular(input, 0, 1, 2);
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotATable() throws IOException {
+		File file = tempFile(".bin");
+		try (PrintWriter pw = new PrintWriter(new FileOutputStream(file))) {
+			pw.println("this is not a precomputed alignment table");
+		}
+		new PrecomputedAlignmentTable(file).close();
+	}
+
+	@Test
+	public void testWeight() throws Exception {
+		File file = tempFile(".bin");
+		PrecomputedAlignmentTable.Builder builder = new PrecomputedAlignmentTable.Builder();
+		builder.add("P1", "P2", 0.5);
+		builder.add("P1", "P3", 0.25);
+		builder.write(file);
+		try (PrecomputedAlignmentTable table = new PrecomputedAlignmentTable(file)) {
+			PrecomputedAlignmentWeight weight = new PrecomputedAlignmentWeight(table);
+			assertEquals(0.5, weight.assignWeight(1, 2, "P2", "P1"), PRECISION);
+			try {
+				weight.setIds(2, 3, "P2", "P3");
+				throw new AssertionError("Expected a WeightException for a missing pair");
+			} catch (WeightException e) {
+				// good
+			}
+			double[] weights = weight.assignWeights(1, "P1", new int[] { 2, 3, 4 }, new String[] { "P2", "P3", "P4" });
+			assertArrayEquals(new double[] { 0.5, 0.25, Double.NaN }, weights, PRECISION);
+		}
+	}
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PrimitiveNeedlemanWunschTest {
+
+	private static final double PRECISION = 0.0000001;
+
+	private static final char[] ALPHABET = "ACGT".toCharArray();
+
+	private static final int GAP_OPEN = 2;
+
+	private static final int GAP_EXTEND = 1;
+
+	private static PrimitiveNeedlemanWunsch aligner() {
+		return new PrimitiveNeedlemanWunsch(ALPHABET, flatMatrix(), GAP_OPEN, GAP_EXTEND);
+	}
+
+	private static int[] flatMatrix() {
+		int[] matrix = new int[ALPHABET.length * ALPHABET.length];
+		for (int i = 0; i < ALPHABET.length; i++) {
+			for (int j = 0; j < ALPHABET.length; j++) {
+				matrix[i * ALPHABET.length + j] = i == j ? 1 : -1;
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Makes a few substitutions, insertions, and deletions, so that there are many equal-scoring alignments.
+	 */
+	private static String mutate(Random random, String sequence) {
+		StringBuilder sb = new StringBuilder(sequence);
+		for (int i = 0; i < 1 + sequence.length() / 8; i++) {
+			int position = random.nextInt(sb.length());
+			switch (random.nextInt(3)) {
+			case 0:
+				sb.setCharAt(position, ALPHABET[random.nextInt(ALPHABET.length)]);
+				break;
+			case 1:
+				sb.insert(position, ALPHABET[random.nextInt(ALPHABET.length)]);
+				break;
+			default:
+				if (sb.length() > 1) sb.deleteCharAt(position);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A plain 3-matrix Gotoh that only computes the score.
+	 */
+	private static int referenceScore(String a, String b) {
+		final int min = Integer.MIN_VALUE / 4;
+		int m = a.length(), n = b.length();
+		int[][] s = new int[m + 1][n + 1], d = new int[m + 1][n + 1], i = new int[m + 1][n + 1];
+		for (int x = 0; x <= m; x++) {
+			for (int y = 0; y <= n; y++) {
+				if (x == 0 && y == 0) {
+					s[x][y] = 0;
+					d[x][y] = i[x][y] = min;
+					continue;
+				}
+				s[x][y] = x > 0 && y > 0 ? Math.max(s[x - 1][y - 1], Math.max(d[x - 1][y - 1], i[x - 1][y - 1]))
+						+ (a.charAt(x - 1) == b.charAt(y - 1) ? 1 : -1) : min;
+				d[x][y] = x > 0 ? Math.max(d[x - 1][y] - GAP_EXTEND, s[x - 1][y] - GAP_OPEN - GAP_EXTEND) : min;
+				i[x][y] = y > 0 ? Math.max(i[x][y - 1] - GAP_EXTEND, s[x][y - 1] - GAP_OPEN - GAP_EXTEND) : min;
+			}
+		}
+		return Math.max(s[m][n], Math.max(d[m][n], i[m][n]));
+	}
+
+	@Test
+	public void testIdentical() {
+		PrimitiveNeedlemanWunsch.Result result = aligner().align("ACGTACGT", "acgtacgt");
+		assertEquals(8, result.getScore());
+		assertEquals(8, result.getLength());
+		assertEquals(1.0, result.getIdentity(), PRECISION);
+	}
+
+	@Test
+	public void testGap() {
+		PrimitiveNeedlemanWunsch.Result result = aligner().align("ACGT", "AGT");
+		assertEquals(0, result.getScore());
+		assertEquals(3, result.getNIdenticals());
+		assertEquals(4, result.getLength());
+		assertEquals(0.75, result.getIdentity(), PRECISION);
+	}
+
+	@Test
+	public void testEndGaps() {
+		PrimitiveNeedlemanWunsch.Result result = aligner().align("GGGGACGTACGT", "ACGTACGT");
+		assertEquals(8 - GAP_OPEN - 4 * GAP_EXTEND, result.getScore());
+		assertEquals(12, result.getLength());
+		assertEquals(8.0 / 12.0, result.getIdentity(), PRECISION);
+	}
+
+	/**
+	 * Ending by substituting A for T and ending in a gap after matching A both score -5. BioJava ends in the gap.
+	 */
+	@Test
+	public void testTieAtEnd() {
+		PrimitiveNeedlemanWunsch.Result result = aligner().align("A", "CAT");
+		assertEquals(-5, result.getScore());
+		assertEquals(1, result.getNIdenticals());
+		assertEquals(3, result.getLength());
+	}
+
+	@Test
+	public void testAgainstReference() {
+		PrimitiveNeedlemanWunsch aligner = aligner();
+		Random random = new Random(42);
+		for (int k = 0; k < 200; k++) {
+			String a = randomSequence(random, 1 + random.nextInt(40));
+			String b = randomSequence(random, 1 + random.nextInt(40));
+			PrimitiveNeedlemanWunsch.Result result = aligner.align(a, b);
+			assertEquals(a + " vs " + b, referenceScore(a, b), result.getScore());
+			assertTrue(result.getLength() >= Math.max(a.length(), b.length()));
+			assertTrue(result.getLength() <= a.length() + b.length());
+			assertTrue(result.getNIdenticals() <= Math.min(a.length(), b.length()));
+		}
+	}
+
+	@Test
+	public void testLinearSpace() {
+		PrimitiveNeedlemanWunsch aligner = aligner();
+		PrimitiveNeedlemanWunsch linear = new PrimitiveNeedlemanWunsch(ALPHABET, flatMatrix(), GAP_OPEN, GAP_EXTEND, 0);
+		Random random = new Random(7);
+		for (int k = 0; k < 200; k++) {
+			String a = randomSequence(random, 1 + random.nextInt(60));
+			String b = random.nextBoolean() ? randomSequence(random, 1 + random.nextInt(60)) : mutate(random, a);
+			PrimitiveNeedlemanWunsch.Result expected = aligner.align(a, b);
+			PrimitiveNeedlemanWunsch.Result actual = linear.align(a, b);
+			assertEquals(a + " vs " + b, expected.getScore(), actual.getScore());
+			assertEquals(a + " vs " + b, expected.getNIdenticals(), actual.getNIdenticals());
+			assertEquals(a + " vs " + b, expected.getLength(), actual.getLength());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownResidue() {
+		aligner().align("ACGU", "ACGT");
+	}
+
+	private static String randomSequence(Random random, int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.biojava.bio.structure.Atom;
+import org.biojava.bio.structure.AtomImpl;
+import org.biojava.bio.structure.align.model.AFPChain;
+import org.biojava.bio.structure.align.util.AFPChainScorer;
+import org.junit.Test;
+
+public class PrimitiveTmScorerTest {
+
+	private static final double PRECISION = 0.000001;
+
+	private static int[] range(int n) {
+		int[] range = new int[n];
+		for (int i = 0; i < n; i++) {
+			range[i] = i;
+		}
+		return range;
+	}
+
+	/**
+	 * Rotates {@code xyz} by a quarter turn about z and moves it, then adds noise.
+	 */
+	private static double[] move(double[] xyz, Random random, double noise) {
+		double[] moved = new double[xyz.length];
+		for (int i = 0; i < xyz.length; i += 3) {
+			moved[i] = -xyz[i + 1] + 10 + noise * random.nextGaussian();
+			moved[i + 1] = xyz[i] - 4 + noise * random.nextGaussian();
+			moved[i + 2] = xyz[i + 2] + 7 + noise * random.nextGaussian();
+		}
+		return moved;
+	}
+
+	private static double[] randomChain(int length, Random random) {
+		double[] xyz = new double[3 * length];
+		for (int i = 0; i < xyz.length; i++) {
+			xyz[i] = 10 * random.nextGaussian();
+		}
+		return xyz;
+	}
+
+	private static Atom[] toAtoms(double[] xyz) {
+		Atom[] ca = new Atom[xyz.length / 3];
+		for (int i = 0; i < ca.length; i++) {
+			ca[i] = new AtomImpl();
+			ca[i].setCoords(new double[] { xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2] });
+		}
+		return ca;
+	}
+
+	@Test
+	public void testKnown() {
+		// superposed, each point is off by 1
+		double[] xyz1 = new double[3 * 20];
+		double[] xyz2 = new double[3 * 25];
+		xyz1[3] = 5;
+		xyz2[3] = 7;
+		double d0 = 1.24 * Math.cbrt(20 - 15.0) - 1.8;
+		double expected = 2 / (1 + 1 / (d0 * d0)) / 20;
+		assertEquals(expected, PrimitiveTmScorer.getTMScore(xyz1, xyz2, range(2), range(2), 2), PRECISION);
+	}
+
+	@Test
+	public void testMatchesBiojava() throws Exception {
+		Random random = new Random(0);
+		double[] xyz1 = randomChain(80, random);
+		double[] xyz2 = Arrays.copyOf(move(xyz1, random, 2), 3 * 70); // noisy, and shorter
+		int[] aligned1 = new int[50];
+		int[] aligned2 = new int[50];
+		for (int i = 0; i < 50; i++) {
+			aligned1[i] = i + 5;
+			aligned2[i] = i < 40 ? i + 5 : i + 10;
+		}
+		AFPChain afpChain = new AFPChain();
+		afpChain.setBlockNum(1);
+		afpChain.setOptLen(new int[] { 50 });
+		afpChain.setOptLength(50);
+		afpChain.setOptAln(new int[][][] { { aligned1, aligned2 } });
+		Atom[] ca1 = toAtoms(xyz1);
+		Atom[] ca2 = toAtoms(xyz2);
+		double[] xyz2Copy = xyz2.clone();
+		double fromAtoms = PrimitiveTmScorer.getTMScore(afpChain, ca1, ca2);
+		double fromCoordinates = PrimitiveTmScorer.getTMScore(xyz1, xyz2, aligned1, aligned2, 50);
+		// the second chain is the one superimposed, but neither its atoms nor its coordinates are moved
+		for (int i = 0; i < ca2.length; i++) {
+			assertEquals(xyz2Copy[3 * i], ca2[i].getX(), PRECISION);
+			assertEquals(xyz2Copy[3 * i + 1], ca2[i].getY(), PRECISION);
+			assertEquals(xyz2Copy[3 * i + 2], ca2[i].getZ(), PRECISION);
+		}
+		assertArrayEquals(xyz2Copy, xyz2, PRECISION);
+		double expected = AFPChainScorer.getTMScore(afpChain, ca1, ca2);
+		assertEquals(expected, fromAtoms, PRECISION);
+		assertEquals(expected, fromCoordinates, PRECISION);
+	}
+
+	@Test
+	public void testNothingAligned() {
+		assertEquals(-1, PrimitiveTmScorer.getTMScore(new double[30], new double[30], new int[0], new int[0], 0),
+				PRECISION);
+	}
+
+	@Test
+	public void testRigid() {
+		Random random = new Random(0);
+		double[] xyz1 = randomChain(100, random);
+		double[] xyz2 = move(xyz1, random, 0);
+		assertEquals(1, PrimitiveTmScorer.getTMScore(xyz1, xyz2, range(100), range(100), 100), PRECISION);
+		// normalized by the shorter chain
+		assertEquals(0.6, PrimitiveTmScorer.getTMScore(xyz1, xyz2, range(60), range(60), 60), PRECISION);
+	}
+
+}
@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+
+
+public class ScopBucketPairGeneratorTest {
+
+	private static Set<Pair<Integer>> collect(Iterator<Pair<Integer>> iter) {
+		Set<Pair<Integer>> pairs = new HashSet<>();
+		int n = 0;
+		while (iter.hasNext()) {
+			Pair<Integer> pair = iter.next();
+			assertEquals("Pair is not ordered", true, pair.getFirst() < pair.getSecond());
+			pairs.add(pair);
+			n++;
+		}
+		assertEquals("A pair was generated twice", n, pairs.size());
+		return pairs;
+	}
+
+	@Test
+	public void testAllPairs() {
+		Map<Integer, String> uniProtIds = new HashMap<>();
+		Set<Pair<Integer>> pairs = collect(new AllPairsGenerator().generate(Arrays.asList(4, 1, 3, 2), uniProtIds));
+		assertEquals(6, pairs.size());
+		assertEquals(0, collect(new AllPairsGenerator().generate(Arrays.asList(1), uniProtIds)).size());
+	}
+
+	@Test
+	public void testBuckets() {
+		final Map<String, Integer> folds = new HashMap<>();
+		folds.put("A", 10);
+		folds.put("B", 10);
+		folds.put("C", 10);
+		folds.put("D", 20);
+		folds.put("E", 20);
+		folds.put("F", 30);
+		Map<Integer, String> uniProtIds = new HashMap<>();
+		uniProtIds.put(1, "A");
+		uniProtIds.put(2, "B");
+		uniProtIds.put(3, "C");
+		uniProtIds.put(4, "D");
+		uniProtIds.put(5, "E");
+		uniProtIds.put(6, "F");
+		uniProtIds.put(7, "X"); // unmapped
+		uniProtIds.put(8, "Y"); // unmapped
+		ScopBucketPairGenerator generator = new ScopBucketPairGenerator() {
+			@Override
+			protected Integer bucketOf(String uniProtId) {
+				return folds.get(uniProtId);
+			}
+		};
+		Set<Pair<Integer>> pairs = collect(generator.generate(uniProtIds.keySet(), uniProtIds));
+		// 3 in the first bucket, 1 in the second, and 7 + 6 involving the unmapped vertices
+		assertEquals(17, pairs.size());
+		assertEquals(true, pairs.contains(new Pair<Integer>(1, 3)));
+		assertEquals(true, pairs.contains(new Pair<Integer>(4, 5)));
+		assertEquals(true, pairs.contains(new Pair<Integer>(6, 7)));
+		assertEquals(true, pairs.contains(new Pair<Integer>(7, 8)));
+		assertEquals(false, pairs.contains(new Pair<Integer>(1, 4)));
+		assertEquals(false, pairs.contains(new Pair<Integer>(5, 6)));
+	}
+
+}
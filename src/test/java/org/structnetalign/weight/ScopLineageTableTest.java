@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.biojava.bio.structure.scop.ScopCategory;
+import org.junit.Test;
+
+public class ScopLineageTableTest {
+
+	private static final double PRECISION = 0.0000001;
+
+	/**
+	 * Vertices 2 and 3 share a fold but not a superfamily; vertex 5 shares only a class with them.
+	 */
+	private static ScopLineageTable table() {
+		int[] vertices = new int[] { 2, 3, 5 };
+		int[] lineages = new int[vertices.length * ScopLineageTable.N_CATEGORIES];
+		int[][] sunIds = new int[][] { { 10, 20, 30 }, { 10, 20, 31 }, { 10, 21, 32 } };
+		for (int i = 0; i < vertices.length; i++) {
+			for (ScopCategory category : ScopCategory.values()) {
+				int sunId;
+				if (category == ScopCategory.Class) {
+					sunId = sunIds[i][0];
+				} else if (category == ScopCategory.Fold) {
+					sunId = sunIds[i][1];
+				} else if (category == ScopCategory.Superfamily) {
+					sunId = sunIds[i][2];
+				} else {
+					sunId = 1000 * (i + 1) + category.ordinal(); // unique
+				}
+				lineages[i * ScopLineageTable.N_CATEGORIES + category.ordinal()] = sunId;
+			}
+		}
+		return new ScopLineageTable(vertices, lineages);
+	}
+
+	@Test
+	public void testLookup() {
+		ScopLineageTable table = table();
+		assertEquals(3, table.size());
+		assertEquals(-1, table.indexOf(4));
+		assertEquals(1, table.indexOf(3));
+		assertEquals(31, table.getSunId(table.indexOf(3), ScopCategory.Superfamily));
+	}
+
+	@Test
+	public void testWeight() throws Exception {
+		Map<ScopCategory, Double> weights = new HashMap<>();
+		weights.put(ScopCategory.Class, 0.1);
+		weights.put(ScopCategory.Fold, 0.5);
+		weights.put(ScopCategory.Superfamily, 0.9);
+		ScopLineageTable table = table();
+		// none of these UniProt Ids need to be mapped
+		assertEquals(0.5, new ScopWeight(weights, table).assignWeight(2, 3, "X1", "X2"), PRECISION);
+		assertEquals(0.1, new ScopWeight(weights, table).assignWeight(3, 5, "X2", "X3"), PRECISION);
+		weights.remove(ScopCategory.Class);
+		assertEquals(0.0, new ScopWeight(weights, table).assignWeight(3, 5, "X2", "X3"), PRECISION);
+	}
+
+	@Test
+	public void testTableWeight() throws Exception {
+		Map<ScopCategory, Double> weights = new HashMap<>();
+		weights.put(ScopCategory.Fold, 0.5);
+		ScopLineageTable table = table();
+		ScopWeight weight = new ScopWeight(weights, table);
+		assertNull(weight.getTableWeight());
+		weight.setIds(2, 3, "X1", "X2");
+		assertEquals(0.5, weight.getTableWeight(), PRECISION);
+		weight.setIds(3, 5, "X2", "X3"); // only the class is shared
+		assertEquals(0.0, weight.getTableWeight(), PRECISION);
+	}
+
+}
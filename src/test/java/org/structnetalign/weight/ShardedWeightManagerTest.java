@@ -0,0 +1,251 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.structnetalign.CleverGraph;
+import org.structnetalign.HomologyEdge;
+
+import edu.uci.ics.jung.graph.UndirectedGraph;
+
+public class ShardedWeightManagerTest {
+
+	/**
+	 * Weights a pair by the last digit of the product of its Ids.
+	 */
+	public static class DigitWeightCreator implements WeightCreator {
+		protected long delay;
+		@Override
+		public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+			DigitWeight weight = new DigitWeight(delay);
+			weight.setIds(a, b, uniProtIdA, uniProtIdB);
+			List<Weight> weights = new ArrayList<Weight>(1);
+			weights.add(weight);
+			return weights;
+		}
+		@Override
+		public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+			return null;
+		}
+	}
+
+	private static class DigitWeight implements Weight {
+		private final long delay;
+		private int a;
+		private int b;
+		private String uniProtIdA;
+		private String uniProtIdB;
+		public DigitWeight(long delay) {
+			this.delay = delay;
+		}
+		@Override
+		public WeightResult call() throws Exception {
+			if (delay > 0) Thread.sleep(delay);
+			return new WeightResult(weightOf(a, b), a, b, uniProtIdA, uniProtIdB, this.getClass());
+		}
+		@Override
+		public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+			setIds(v1, v2, uniProtId1, uniProtId2);
+			return call().getWeight();
+		}
+		@Override
+		public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) {
+			a = v1;
+			b = v2;
+			uniProtIdA = uniProtId1;
+			uniProtIdB = uniProtId2;
+		}
+	}
+
+	private static final int N_VERTICES = 30;
+
+	private static final double PRECISION = 0.0000001;
+
+	private static double weightOf(int a, int b) {
+		return a * b % 10 / 10.0;
+	}
+
+	/**
+	 * Runs each worker on a thread instead, but still over a socket.
+	 */
+	private static class ThreadLauncher implements ShardedWeightManager.WorkerLauncher {
+		protected final AtomicInteger nLaunched = new AtomicInteger();
+		@Override
+		public Closeable launch(String host, int port) throws IOException {
+			nLaunched.incrementAndGet();
+			new Thread(new ShardWorker(new DigitWeightCreator(), 1, host, port)).start();
+			return new Closeable() {
+				@Override
+				public void close() {
+				}
+			};
+		}
+	}
+
+	private static void check(UndirectedGraph<Integer, HomologyEdge> homology) {
+		int nExpected = 0;
+		for (int a = 1; a <= N_VERTICES; a++) {
+			for (int b = a + 1; b <= N_VERTICES; b++) {
+				double weight = weightOf(a, b);
+				if (weight == 0) {
+					assertNull(homology.findEdge(a, b));
+				} else {
+					assertEquals(weight, homology.findEdge(a, b).getWeight(), PRECISION);
+					nExpected++;
+				}
+			}
+		}
+		assertEquals(nExpected, homology.getEdgeCount());
+	}
+
+	private static CleverGraph run(ShardedWeightManager manager) {
+		CleverGraph graph = new CleverGraph();
+		Map<Integer, String> uniProtIds = new HashMap<>();
+		for (int v = 1; v <= N_VERTICES; v++) {
+			graph.addVertex(v);
+			uniProtIds.put(v, "P" + v);
+		}
+		manager.assignWeights(graph, uniProtIds);
+		return graph;
+	}
+
+	@Test
+	public void testSharded() {
+		ThreadLauncher launcher = new ThreadLauncher();
+		ShardedWeightManager manager = new ShardedWeightManager(launcher, 3);
+		manager.setTileWidth(7); // 5 blocks, the last one partial
+		check(run(manager).getHomology());
+		assertEquals(3, launcher.nLaunched.get());
+	}
+
+	@Test
+	public void testFailingWorker() {
+		ThreadLauncher launcher = new ThreadLauncher() {
+			@Override
+			public Closeable launch(final String host, final int port) throws IOException {
+				if (nLaunched.get() > 0) return super.launch(host, port);
+				nLaunched.incrementAndGet();
+				// a worker that dies after starting to read its first tile
+				new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try (Socket socket = new Socket(host, port)) {
+							new DataInputStream(socket.getInputStream()).readInt();
+						} catch (IOException e) {
+							throw new RuntimeException(e);
+						}
+					}
+				}).start();
+				return new Closeable() {
+					@Override
+					public void close() {
+					}
+				};
+			}
+		};
+		ShardedWeightManager manager = new ShardedWeightManager(launcher, 2);
+		manager.setTileWidth(10);
+		check(run(manager).getHomology());
+	}
+
+	@Test(timeout = 30000)
+	public void testHungWorker() {
+		ThreadLauncher launcher = new ThreadLauncher() {
+			@Override
+			public Closeable launch(final String host, final int port) throws IOException {
+				if (nLaunched.get() > 0) return super.launch(host, port);
+				nLaunched.incrementAndGet();
+				// a worker that reads its first tile but never replies
+				new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try (Socket socket = new Socket(host, port)) {
+							while (socket.getInputStream().read() != -1);
+						} catch (IOException e) {
+							throw new RuntimeException(e);
+						}
+					}
+				}).start();
+				return new Closeable() {
+					@Override
+					public void close() {
+					}
+				};
+			}
+		};
+		ShardedWeightManager manager = new ShardedWeightManager(launcher, 2);
+		manager.setTileWidth(10);
+		manager.setProgressTimeout(1000);
+		check(run(manager).getHomology());
+	}
+
+	/**
+	 * Each tile takes longer than the progress timeout, but sends heartbeats.
+	 */
+	@Test(timeout = 30000)
+	public void testSlowWorker() {
+		ThreadLauncher launcher = new ThreadLauncher() {
+			@Override
+			public Closeable launch(String host, int port) throws IOException {
+				nLaunched.incrementAndGet();
+				DigitWeightCreator creator = new DigitWeightCreator();
+				creator.delay = 20;
+				ShardWorker worker = new ShardWorker(creator, 1, host, port);
+				worker.setHeartbeatInterval(50);
+				new Thread(worker).start();
+				return new Closeable() {
+					@Override
+					public void close() {
+					}
+				};
+			}
+		};
+		ShardedWeightManager manager = new ShardedWeightManager(launcher, 2);
+		manager.setTileWidth(10); // 45 pairs or more, each taking 20ms
+		manager.setProgressTimeout(500);
+		check(run(manager).getHomology());
+		assertEquals(2, launcher.nLaunched.get());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testNoWorkers() {
+		ShardedWeightManager manager = new ShardedWeightManager(new ShardedWeightManager.WorkerLauncher() {
+			@Override
+			public Closeable launch(String host, int port) {
+				return new Closeable() {
+					@Override
+					public void close() {
+					}
+				};
+			}
+		}, 1);
+		manager.setConnectTimeout(100);
+		run(manager);
+	}
+
+}
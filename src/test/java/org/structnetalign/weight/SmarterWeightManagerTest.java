@@ -15,17 +15,25 @@
 package org.structnetalign.weight;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.biojava.bio.structure.scop.ScopCategory;
 import org.junit.Test;
+import org.structnetalign.CleverGraph;
 import org.structnetalign.HomologyEdge;
 
 import edu.uci.ics.jung.graph.UndirectedGraph;
@@ -168,7 +176,642 @@ public class SmarterWeightManagerTest {
 		assertEquals(0.55, hom.findEdge(3, 4).getWeight(), PRECISION);
 		assertEquals(0.55, hom.findEdge(3, 5).getWeight(), PRECISION);
 		assertEquals(0.4, hom.findEdge(2, 3).getWeight(), PRECISION);
-		assertEquals(null, hom.findEdge(4, 5));
+		assertNull(hom.findEdge(4, 5));
+	}
+
+	@Test
+	public void testWithBatches() {
+		final AtomicInteger nBlocks = new AtomicInteger();
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				if (n == 1) {
+					Set<Pair<Integer>> failOn = new HashSet<>();
+					failOn.add(new Pair<Integer>(4,5));
+					Weight weight = reallySimpleWeight(0.4, failOn);
+					try {
+						weight.setIds(a, b, uniProtIdA, uniProtIdB);
+					} catch (WeightException e) {
+						throw new RuntimeException(e);
+					}
+					return weight;
+				}
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Set<Pair<Integer>> failOn = new HashSet<>();
+				failOn.add(new Pair<Integer>(2,3));
+				failOn.add(new Pair<Integer>(4,5));
+				Weight weight = reallySimpleBatchWeight(0.25, failOn, nBlocks);
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		// the same as testWithFailure
+		assertEquals("Wrong number of homology edges", 14, hom.getEdgeCount());
+		assertEquals(0.55, hom.findEdge(1, 2).getWeight(), PRECISION);
+		assertEquals(0.55, hom.findEdge(3, 5).getWeight(), PRECISION);
+		assertEquals(0.4, hom.findEdge(2, 3).getWeight(), PRECISION);
+		assertNull(hom.findEdge(4, 5));
+		// one block per query vertex, not one per pair
+		assertEquals(5, nBlocks.get());
+	}
+
+	@Test
+	public void testWithTimeBudget() {
+		final Set<Class<? extends Weight>> failed = Collections.synchronizedSet(new HashSet<Class<? extends Weight>>());
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failedClass) {
+				if (n == 1 && isFail) {
+					failed.add(failedClass);
+					Weight weight = reallySimpleWeight(0.4, null);
+					try {
+						weight.setIds(a, b, uniProtIdA, uniProtIdB);
+					} catch (WeightException e) {
+						throw new RuntimeException(e);
+					}
+					return weight;
+				}
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Set<Pair<Integer>> hangOn = new HashSet<>();
+				hangOn.add(new Pair<Integer>(1,2));
+				Weight weight = reallySlowWeight(0.25, hangOn, 50);
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+		long start = System.currentTimeMillis();
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertTrue("The slow weight wasn't cancelled", System.currentTimeMillis() - start < 30 * 1000);
+		// the cancelled pair gets the fallback instead
+		assertEquals(0.4, hom.findEdge(1, 2).getWeight(), PRECISION);
+		assertEquals(0.25, hom.findEdge(1, 3).getWeight(), PRECISION);
+		assertEquals(1, failed.size());
+		assertTrue(BudgetedWeight.class.isAssignableFrom(failed.iterator().next()));
+	}
+
+	/**
+	 * Both cores get stuck in jobs that ignore their interrupts, so the rest only run if the stuck threads are replaced.
+	 */
+	@Test(timeout = 30000)
+	public void testIgnoresInterrupts() {
+		final CountDownLatch release = new CountDownLatch(1);
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Set<Pair<Integer>> hangOn = new HashSet<>();
+				hangOn.add(new Pair<Integer>(1, 2));
+				hangOn.add(new Pair<Integer>(1, 3));
+				Weight weight = stuckWeight(0.25, hangOn, release, 50);
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+		manager.setBatchSize(1);
+		UndirectedGraph<Integer,HomologyEdge> hom;
+		try {
+			hom = WeightManagerTest.testSimple(manager);
+		} finally {
+			release.countDown();
+		}
+		assertNull(hom.findEdge(1, 2));
+		assertNull(hom.findEdge(1, 3));
+		assertEquals(0.25, hom.findEdge(1, 4).getWeight(), PRECISION);
+		assertEquals(0.25, hom.findEdge(5, 6).getWeight(), PRECISION);
+	}
+
+	@Test
+	public void testDuplicates() {
+		CleverGraph graph = new CleverGraph();
+		Map<Integer, String> uniProtIds = new HashMap<>();
+		uniProtIds.put(1, "A");
+		uniProtIds.put(2, "B");
+		uniProtIds.put(3, "A");
+		uniProtIds.put(4, "C");
+		uniProtIds.put(5, "B");
+		uniProtIds.put(6, "A");
+		for (int v : uniProtIds.keySet()) {
+			graph.addVertex(v);
+		}
+		final List<Pair<Integer>> weighted = new ArrayList<>();
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				synchronized (weighted) {
+					weighted.add(new Pair<Integer>(a, b));
+				}
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Weight weight = reallySimpleWeight(uniProtIdA.equals(uniProtIdB) ? 0.9 : 0.5, null);
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+		manager.assignWeights(graph, uniProtIds);
+
+		// A-B, A-C, B-C, A-A, and B-B
+		assertEquals(5, weighted.size());
+		UndirectedGraph<Integer, HomologyEdge> homology = graph.getHomology();
+		assertEquals(15, homology.getEdgeCount());
+		assertEquals(0.5, homology.findEdge(3, 5).getWeight(), PRECISION);
+		assertEquals(0.5, homology.findEdge(4, 6).getWeight(), PRECISION);
+		assertEquals(0.9, homology.findEdge(3, 6).getWeight(), PRECISION);
+		assertEquals(0.9, homology.findEdge(2, 5).getWeight(), PRECISION);
+	}
+
+	@Test
+	public void testKeyed() {
+		final AtomicInteger nCalled = new AtomicInteger();
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				// pretend that 1, 2, and 3 map to one PDB chain, and 4, 5, and 6 to another
+				Weight weight = reallySimpleKeyedWeight(0.25, (a - 1) / 3 + "\t" + (b - 1) / 3, nCalled);
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+		manager.setMaxInFlight(1); // so that no two pairs with the same key run at once
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertEquals("Wrong number of homology edges", 15, hom.getEdgeCount());
+		assertEquals(3, nCalled.get());
+		assertEquals(0.25, hom.findEdge(5, 6).getWeight(), PRECISION);
+	}
+
+	/**
+	 * Many pairs through few permits: no more than the limit may be outstanding, follow-up weights must inherit their
+	 * permits rather than deadlocking, and every result must still arrive.
+	 */
+	@Test
+	public void testMaxInFlight() {
+		final int maxInFlight = 3;
+		final AtomicInteger nOutstanding = new AtomicInteger();
+		final AtomicInteger maxOutstanding = new AtomicInteger();
+		final AtomicInteger nRunning = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final AtomicInteger nCalled = new AtomicInteger();
+		WeightCreator creator = new WeightCreator() {
+			private Weight countingWeight(final double value, int a, int b, String uniProtIdA, String uniProtIdB) {
+				final Weight single = reallySimpleWeight(value, null);
+				Weight weight = new Weight() {
+					@Override
+					public WeightResult call() throws Exception {
+						int running = nRunning.incrementAndGet();
+						synchronized (maxRunning) {
+							maxRunning.set(Math.max(maxRunning.get(), running));
+						}
+						Thread.sleep(1);
+						nRunning.decrementAndGet();
+						nCalled.incrementAndGet();
+						nOutstanding.decrementAndGet();
+						return single.call();
+					}
+					@Override
+					public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+						return value;
+					}
+					@Override
+					public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
+						single.setIds(v1, v2, uniProtId1, uniProtId2);
+					}
+				};
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				int outstanding = nOutstanding.incrementAndGet();
+				synchronized (maxOutstanding) {
+					maxOutstanding.set(Math.max(maxOutstanding.get(), outstanding));
+				}
+				return weight;
+			}
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				if (n == 1 && a % 2 == 0) return countingWeight(0.5, a, b, uniProtIdA, uniProtIdB);
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				weights.add(countingWeight(0.5, a, b, uniProtIdA, uniProtIdB));
+				return weights;
+			}
+		};
+		CleverGraph graph = new CleverGraph();
+		Map<Integer, String> uniProtIds = new HashMap<>();
+		for (int v = 0; v < 30; v++) {
+			graph.addVertex(v);
+			uniProtIds.put(v, "P" + v);
+		}
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 16);
+		manager.setMaxInFlight(maxInFlight);
+		manager.assignWeights(graph, uniProtIds);
+
+		assertTrue("Ran " + maxRunning.get() + " at once", maxRunning.get() <= maxInFlight);
+		// the producer makes a pair's weight just before it waits for a permit for it
+		assertTrue(maxOutstanding.get() + " outstanding at once", maxOutstanding.get() <= maxInFlight + 1);
+		assertEquals(30 * 29 / 2 + 15 * 15, nCalled.get()); // pairs whose first vertex is even get a second weight
+		UndirectedGraph<Integer, HomologyEdge> homology = graph.getHomology();
+		assertEquals(30 * 29 / 2, homology.getEdgeCount());
+		assertEquals(0.75, homology.findEdge(2, 7).getWeight(), PRECISION); // with a follow-up
+		assertEquals(0.5, homology.findEdge(3, 7).getWeight(), PRECISION);
+	}
+
+	/**
+	 * If the pair generator fails part way, assignWeights must fail rather than wait forever for the rest.
+	 */
+	@Test(timeout = 30000)
+	public void testProducerError() {
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Weight weight = reallySimpleWeight(0.5, null);
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+		manager.setMaxInFlight(2);
+		manager.setPairGenerator(new CandidatePairGenerator() {
+			@Override
+			public Iterator<Pair<Integer>> generate(Collection<Integer> vertices, Map<Integer, String> uniProtIds) {
+				final Iterator<Pair<Integer>> pairs = new AllPairsGenerator().generate(vertices, uniProtIds);
+				return new Iterator<Pair<Integer>>() {
+					private int n;
+					@Override
+					public boolean hasNext() {
+						return true;
+					}
+					@Override
+					public Pair<Integer> next() {
+						if (++n > 5) throw new IllegalStateException("The generator broke");
+						return pairs.next();
+					}
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		});
+		try {
+			WeightManagerTest.testSimple(manager);
+			fail("The generator's error was swallowed");
+		} catch (RuntimeException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	private static abstract class BoundedWeightCreator implements WeightCreator, UpperBoundEstimator {
+	}
+
+	@Test
+	public void testThreshold() {
+		final AtomicInteger nFetched = new AtomicInteger();
+		WeightCreator creator = new BoundedWeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				if (n == 1 && isFail) {
+					Weight weight = reallySimpleWeight(0.9, null);
+					try {
+						weight.setIds(a, b, uniProtIdA, uniProtIdB);
+					} catch (WeightException e) {
+						throw new RuntimeException(e);
+					}
+					return weight;
+				}
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Set<Pair<Integer>> failOn = new HashSet<>();
+				failOn.add(new Pair<Integer>(2,3));
+				Weight weight = reallySimpleFetchingWeight(0.25, failOn, nFetched);
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+			@Override
+			public double estimateUpperBound(Weight weight, String uniProtIdA, String uniProtIdB) {
+				return weight instanceof FetchingWeight ? 0.3 : 1;
+			}
+		};
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+		manager.setThreshold(0.5);
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		// every pair is still fetched, but only the one that failed to fetch is weighted
+		assertEquals(15, nFetched.get());
+		assertEquals("Wrong number of homology edges", 1, hom.getEdgeCount());
+		assertEquals(0.9, hom.findEdge(2, 3).getWeight(), PRECISION);
+	}
+
+	@Test
+	public void testThresholdAfterFailure() {
+		final AtomicInteger nFetched = new AtomicInteger();
+		WeightCreator creator = new BoundedWeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				if (n == 1 && isFail) {
+					Weight weight = reallySimpleWeight(0.9, null);
+					try {
+						weight.setIds(a, b, uniProtIdA, uniProtIdB);
+					} catch (WeightException e) {
+						throw new RuntimeException(e);
+					}
+					return weight;
+				}
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Set<Pair<Integer>> failOn = new HashSet<>();
+				failOn.add(new Pair<Integer>(2,3));
+				Weight weight = reallySimpleFetchingWeight(0.75, failOn, nFetched);
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+			@Override
+			public double estimateUpperBound(Weight weight, String uniProtIdA, String uniProtIdB) {
+				return weight instanceof FetchingWeight ? 1 : 0.3;
+			}
+		};
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+		manager.setThreshold(0.5);
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		// the weight in place of the failed one can't reach the threshold either
+		assertEquals("Wrong number of homology edges", 14, hom.getEdgeCount());
+		assertNull(hom.findEdge(2, 3));
+		assertEquals(0.75, hom.findEdge(1, 2).getWeight(), PRECISION);
+	}
+
+	@Test
+	public void testWithFetching() {
+		final AtomicInteger nFetched = new AtomicInteger();
+		WeightCreator creator = new WeightCreator() {
+			@Override
+			public Weight nextWeight(int a, int b, String uniProtIdA, String uniProtIdB, int n, boolean isFail, Class<? extends Weight> failed) {
+				if (n == 1 && isFail) {
+					Weight weight = reallySimpleWeight(0.4, null);
+					try {
+						weight.setIds(a, b, uniProtIdA, uniProtIdB);
+					} catch (WeightException e) {
+						throw new RuntimeException(e);
+					}
+					return weight;
+				}
+				return null;
+			}
+			@Override
+			public List<Weight> initialWeights(int a, int b, String uniProtIdA, String uniProtIdB) {
+				List<Weight> weights = new ArrayList<Weight>(1);
+				Set<Pair<Integer>> failOn = new HashSet<>();
+				failOn.add(new Pair<Integer>(2,3));
+				Weight weight = reallySimpleFetchingWeight(0.25, failOn, nFetched);
+				try {
+					weight.setIds(a, b, uniProtIdA, uniProtIdB);
+				} catch (WeightException e) {
+					throw new RuntimeException(e);
+				}
+				weights.add(weight);
+				return weights;
+			}
+		};
+		SmarterWeightManager manager = new SmarterWeightManager(creator, 2);
+		manager.setnFetchThreads(4);
+		UndirectedGraph<Integer,HomologyEdge> hom = WeightManagerTest.testSimple(manager);
+		assertEquals("Wrong number of homology edges", 15, hom.getEdgeCount());
+		assertEquals(15, nFetched.get());
+		// a failed fetch is a failed weight
+		assertEquals(0.4, hom.findEdge(2, 3).getWeight(), PRECISION);
+		assertEquals(0.25, hom.findEdge(1, 2).getWeight(), PRECISION);
+	}
+
+	/**
+	 * A {@link FetchingWeight} whose fetch fails on the pairs in {@code failOn}, and which fails if it's run without being
+	 * fetched.
+	 */
+	static FetchingWeight reallySimpleFetchingWeight(final double value, final Collection<Pair<Integer>> failOn, final AtomicInteger nFetched) {
+		final Weight single = reallySimpleWeight(value, null);
+		return new FetchingWeight() {
+			private int a;
+			private int b;
+			private boolean isFetched;
+			@Override
+			public WeightResult call() throws Exception {
+				if (!isFetched) throw new IllegalStateException("Not fetched");
+				return single.call();
+			}
+			@Override
+			public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+				return value;
+			}
+			@Override
+			public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
+				a = v1;
+				b = v2;
+				single.setIds(v1, v2, uniProtId1, uniProtId2);
+			}
+			@Override
+			public void fetch() throws WeightException {
+				nFetched.incrementAndGet();
+				if (failOn.contains(new Pair<Integer>(a, b))) throw new WeightException("", a, b, null, null, false, false);
+				isFetched = true;
+			}
+			@Override
+			public void fetchAll(String uniProtId, String[] targetUniProtIds) {
+			}
+		};
+	}
+
+	/**
+	 * A {@link BudgetedWeight} that sleeps for a minute on the pairs in {@code hangOn}.
+	 */
+	static BudgetedWeight reallySlowWeight(final double value, final Collection<Pair<Integer>> hangOn, final long timeBudget) {
+		final Weight single = reallySimpleWeight(value, null);
+		return new BudgetedWeight() {
+			private boolean isSlow;
+			@Override
+			public WeightResult call() throws Exception {
+				if (isSlow) Thread.sleep(60 * 1000);
+				return single.call();
+			}
+			@Override
+			public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+				return value;
+			}
+			@Override
+			public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
+				isSlow = hangOn.contains(new Pair<Integer>(v1, v2));
+				single.setIds(v1, v2, uniProtId1, uniProtId2);
+			}
+			@Override
+			public long getTimeBudget() {
+				return timeBudget;
+			}
+		};
+	}
+
+	/**
+	 * A {@link BudgetedWeight} that waits for {@code release} on the pairs in {@code hangOn}, ignoring interrupts, as
+	 * BioJava's structural aligners do.
+	 */
+	static BudgetedWeight stuckWeight(final double value, final Collection<Pair<Integer>> hangOn,
+			final CountDownLatch release, final long timeBudget) {
+		final Weight single = reallySimpleWeight(value, null);
+		return new BudgetedWeight() {
+			private boolean isStuck;
+			@Override
+			public WeightResult call() throws Exception {
+				while (isStuck) {
+					try {
+						release.await();
+						break;
+					} catch (InterruptedException e) {
+						// keep waiting
+					}
+				}
+				return single.call();
+			}
+			@Override
+			public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+				return value;
+			}
+			@Override
+			public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
+				isStuck = hangOn.contains(new Pair<Integer>(v1, v2));
+				single.setIds(v1, v2, uniProtId1, uniProtId2);
+			}
+			@Override
+			public long getTimeBudget() {
+				return timeBudget;
+			}
+		};
+	}
+
+	static BatchWeight reallySimpleBatchWeight(final double value, final Collection<Pair<Integer>> failOn, final AtomicInteger nBlocks) {
+		final Weight single = reallySimpleWeight(value, failOn);
+		return new BatchWeight() {
+			@Override
+			public WeightResult call() throws Exception {
+				return single.call();
+			}
+			@Override
+			public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+				return value;
+			}
+			@Override
+			public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
+				single.setIds(v1, v2, uniProtId1, uniProtId2);
+			}
+			@Override
+			public double[] assignWeights(int v, String uniProtId, int[] targets, String[] targetUniProtIds) {
+				nBlocks.incrementAndGet();
+				double[] weights = new double[targets.length];
+				for (int i = 0; i < targets.length; i++) {
+					weights[i] = failOn.contains(new Pair<Integer>(v, targets[i])) ? Double.NaN : value;
+				}
+				return weights;
+			}
+		};
+	}
+
+	/**
+	 * A {@link KeyedWeight} that counts how many times it's run.
+	 */
+	static KeyedWeight reallySimpleKeyedWeight(final double value, final String key, final AtomicInteger nCalled) {
+		final Weight single = reallySimpleWeight(value, null);
+		return new KeyedWeight() {
+			@Override
+			public WeightResult call() throws Exception {
+				nCalled.incrementAndGet();
+				return single.call();
+			}
+			@Override
+			public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+				return value;
+			}
+			@Override
+			public String getResultKey() {
+				return key;
+			}
+			@Override
+			public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
+				single.setIds(v1, v2, uniProtId1, uniProtId2);
+			}
+		};
 	}
 
 	static Weight reallySimpleWeight(final double value, final Collection<Pair<Integer>> failOn) {
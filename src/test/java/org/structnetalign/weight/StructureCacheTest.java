@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.biojava.bio.structure.Atom;
+import org.biojava.bio.structure.StructureException;
+import org.junit.Test;
+
+public class StructureCacheTest {
+
+	/**
+	 * Returns an array of (null) atoms whose length is given by the part of the Id after the dot.
+	 */
+	private static class CountingLoader implements StructureCache.Loader {
+		private final AtomicInteger nCalls = new AtomicInteger();
+		private final CountDownLatch latch;
+		public CountingLoader(CountDownLatch latch) {
+			this.latch = latch;
+		}
+		@Override
+		public Atom[] load(String pdbIdAndChain) throws IOException, StructureException {
+			nCalls.incrementAndGet();
+			if (latch != null) {
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			if (pdbIdAndChain.startsWith("bad")) throw new StructureException("Can't parse " + pdbIdAndChain);
+			return new Atom[Integer.parseInt(pdbIdAndChain.substring(pdbIdAndChain.indexOf('.') + 1))];
+		}
+	}
+
+	@Test
+	public void testSingleFlight() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		CountingLoader loader = new CountingLoader(latch);
+		final StructureCache cache = new StructureCache(loader, 1000);
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		List<Future<Atom[]>> futures = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			futures.add(pool.submit(new Callable<Atom[]>() {
+				@Override
+				public Atom[] call() throws Exception {
+					return cache.getAtoms("1abc.100");
+				}
+			}));
+		}
+		Thread.sleep(100); // let them all queue up on the load
+		latch.countDown();
+		Atom[] first = futures.get(0).get();
+		for (Future<Atom[]> future : futures) {
+			assertSame(first, future.get());
+		}
+		pool.shutdown();
+		assertEquals(1, loader.nCalls.get());
+		assertEquals(1, cache.getLoadCount());
+		assertEquals(7, cache.getHitCount());
+		assertSame(first, cache.getAtoms("1abc.100"));
+		assertEquals(1, loader.nCalls.get());
+	}
+
+	@Test
+	public void testMaxLoads() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		CountingLoader loader = new CountingLoader(latch);
+		final StructureCache cache = new StructureCache(loader, 1000);
+		cache.setMaxLoads(2);
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		List<Future<Atom[]>> futures = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			final String id = i + ".10";
+			futures.add(pool.submit(new Callable<Atom[]>() {
+				@Override
+				public Atom[] call() throws Exception {
+					return cache.getAtoms(id);
+				}
+			}));
+		}
+		Thread.sleep(100); // let them all ask
+		assertEquals(8, cache.getLoadCount());
+		assertEquals(2, loader.nCalls.get()); // the rest are waiting for a permit
+		latch.countDown();
+		for (Future<Atom[]> future : futures) {
+			assertEquals(10, future.get().length);
+		}
+		pool.shutdown();
+		assertEquals(8, loader.nCalls.get());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		CountingLoader loader = new CountingLoader(null);
+		StructureCache cache = new StructureCache(loader, 100);
+		cache.getAtoms("a.40");
+		cache.getAtoms("b.40");
+		cache.getAtoms("a.40"); // b is now least-recently used
+		cache.getAtoms("c.40");
+		assertEquals(2, cache.size());
+		assertEquals(80, cache.getNAtoms());
+		assertEquals(3, loader.nCalls.get());
+		cache.getAtoms("a.40");
+		assertEquals(3, loader.nCalls.get());
+		cache.getAtoms("b.40");
+		assertEquals(4, loader.nCalls.get());
+		cache.getAtoms("big.500"); // over budget by itself, but kept
+		assertEquals(1, cache.size());
+		assertEquals(500, cache.getNAtoms());
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		CountingLoader loader = new CountingLoader(null);
+		StructureCache cache = new StructureCache(loader, 100);
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.getAtoms("bad.1");
+				throw new AssertionError("Should have thrown");
+			} catch (StructureException e) {
+				assertTrue(e.getMessage().contains("bad.1"));
+			}
+		}
+		assertEquals("Failures aren't cached", 2, loader.nCalls.get());
+		assertEquals(0, cache.size());
+	}
+
+}
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ * @author dmyersturnbull
+ */
+package org.structnetalign.weight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+
+
+public class WeightCacheTest {
+
+	private static final double PRECISION = 0.0000001;
+
+	private static class FakeWeight implements FingerprintedWeight {
+		private final String fingerprint;
+		public FakeWeight(String fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+		@Override
+		public WeightResult call() throws Exception {
+			return null;
+		}
+		@Override
+		public double assignWeight(int v1, int v2, String uniProtId1, String uniProtId2) throws Exception {
+			return 0;
+		}
+		@Override
+		public void setIds(int v1, int v2, String uniProtId1, String uniProtId2) throws WeightException {
+		}
+		@Override
+		public String getParameterFingerprint() {
+			return fingerprint;
+		}
+	}
+
+	@Test
+	public void testPersistence() throws Exception {
+		File file = File.createTempFile("weight_cache", ".bin");
+		file.delete();
+		file.deleteOnExit();
+		FakeWeight weight = new FakeWeight("abc");
+		try (WeightCache cache = new WeightCache(file)) {
+			assertNull(cache.get(weight, "P1", "P2"));
+			cache.put(weight, "P1", "P2", 0.25);
+			cache.put(weight, "P1", "P3", 0.5);
+			assertEquals(0.25, cache.get(weight, "P1", "P2"), PRECISION);
+			cache.put(weight, "P2", "P1", 0.75); // the same pair
+			assertEquals(0.25, cache.get(weight, "P2", "P1"), PRECISION);
+		}
+		try (WeightCache cache = new WeightCache(file)) {
+			assertEquals(2, cache.size());
+			assertEquals(0.25, cache.get(weight, "P1", "P2"), PRECISION);
+			assertEquals(0.5, cache.get(weight, "P1", "P3"), PRECISION);
+			assertEquals("Either order", 0.5, cache.get(weight, "P3", "P1"), PRECISION);
+			assertNull("Parameters changed", cache.get(new FakeWeight("def"), "P1", "P2"));
+			assertNull("Not cacheable", cache.get(new FakeWeight(null), "P1", "P2"));
+		}
+	}
+
+	@Test
+	public void testIncompleteRecord() throws Exception {
+		File file = File.createTempFile("weight_cache", ".bin");
+		file.delete();
+		file.deleteOnExit();
+		FakeWeight weight = new FakeWeight("abc");
+		try (WeightCache cache = new WeightCache(file)) {
+			cache.put(weight, "P1", "P2", 0.25);
+		}
+		long length = file.length();
+		try (FileOutputStream fos = new FileOutputStream(file, true)) {
+			fos.write(new byte[] {0, 0, 0, 40, 'x'}); // a record cut off mid-write
+		}
+		try (WeightCache cache = new WeightCache(file)) {
+			assertEquals(1, cache.size());
+			assertEquals(length, file.length());
+			cache.put(weight, "P1", "P3", 0.5);
+		}
+		try (WeightCache cache = new WeightCache(file)) {
+			assertEquals(2, cache.size());
+			assertEquals(0.5, cache.get(weight, "P1", "P3"), PRECISION);
+		}
+	}
+
+	@Test
+	public void testHugeKeyLength() throws Exception {
+		File file = File.createTempFile("weight_cache", ".bin");
+		file.delete();
+		file.deleteOnExit();
+		FakeWeight weight = new FakeWeight("abc");
+		try (WeightCache cache = new WeightCache(file)) {
+			cache.put(weight, "P1", "P2", 0.25);
+		}
+		long length = file.length();
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true))) {
+			out.writeInt(Integer.MAX_VALUE - 8); // would be allocated before reading
+			out.write(new byte[100]);
+		}
+		try (WeightCache cache = new WeightCache(file)) {
+			assertEquals(1, cache.size());
+			assertEquals(length, file.length());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testLongKey() throws Exception {
+		File file = File.createTempFile("weight_cache", ".bin");
+		file.delete();
+		file.deleteOnExit();
+		char[] fingerprint = new char[WeightCache.MAX_KEY_LENGTH];
+		Arrays.fill(fingerprint, 'f');
+		try (WeightCache cache = new WeightCache(file)) {
+			cache.put(new FakeWeight(new String(fingerprint)), "P1", "P2", 0.25);
+		}
+	}
+
+}